@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.ConnectionPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * Cost of taking a connection from the pool and giving it back (what every ConnectionManager.get() call
+ * with try-with-resources does), by one thread and by 8 threads competing for 4 connections.
+ * An in-memory H2 database is used instead of PostgreSQL
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ConnectionPool("jdbc:h2:mem:pool_benchmark;DB_CLOSE_DELAY=-1", "sa", "",
+                4, 4, 30_000, 600_000, 1_800_000, 5);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public boolean borrowAndRelease() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean borrowAndReleaseContended() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            return connection.getAutoCommit();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.PooledConnection;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * Compares the cost of JDBC calls through the reflective Proxy connection wrapper, which ConnectionManager
+ * used before, with the hand-written PooledConnection. An in-memory H2 connection is used as the physical one
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectionProxyBenchmark {
+    private static final String INSERT_SQL = "INSERT INTO history (version) VALUES (?)";
+
+    private Connection physicalConnection;
+    private Connection proxyConnection;
+    private Connection pooledConnection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        physicalConnection = DriverManager.getConnection("jdbc:h2:mem:proxy_benchmark;DB_CLOSE_DELAY=-1");
+        try (Statement statement = physicalConnection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS history (version INT)");
+        }
+        // Та же обертка, что создавалась в ConnectionManager.initConnectionPool до перехода на PooledConnection
+        proxyConnection = (Connection) Proxy.newProxyInstance(ConnectionProxyBenchmark.class.getClassLoader(),
+                new Class[]{Connection.class},
+                (proxy, method, args) -> method.getName().equals("close") ?
+                        null : method.invoke(physicalConnection, args));
+        pooledConnection = new PooledConnection(physicalConnection, connection -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        physicalConnection.close();
+    }
+
+    @Benchmark
+    public boolean proxyGetAutoCommit() throws SQLException {
+        return proxyConnection.getAutoCommit();
+    }
+
+    @Benchmark
+    public boolean pooledGetAutoCommit() throws SQLException {
+        return pooledConnection.getAutoCommit();
+    }
+
+    @Benchmark
+    public int proxyCreateStatement() throws SQLException {
+        try (Statement statement = proxyConnection.createStatement()) {
+            return statement.getFetchSize();
+        }
+    }
+
+    @Benchmark
+    public int pooledCreateStatement() throws SQLException {
+        try (Statement statement = pooledConnection.createStatement()) {
+            return statement.getFetchSize();
+        }
+    }
+
+    @Benchmark
+    public int proxyPrepareStatement() throws SQLException {
+        try (PreparedStatement statement = proxyConnection.prepareStatement(INSERT_SQL)) {
+            statement.setInt(1, 1);
+            return statement.getFetchSize();
+        }
+    }
+
+    @Benchmark
+    public int pooledPrepareStatement() throws SQLException {
+        try (PreparedStatement statement = pooledConnection.prepareStatement(INSERT_SQL)) {
+            statement.setInt(1, 1);
+            return statement.getFetchSize();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reader.MigrationFileReader;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/** *
+ * Reading of small (10 statements), large (10 000) and huge (200 000, ~20 MB) migration files:
+ * the whole file at once with readDbMigrationFile and statement by statement with streamDbMigrationStatements
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MigrationFileReaderBenchmark {
+
+    @Param({"10", "10000", "200000"})
+    private int statements;
+
+    private final MigrationFileReader reader = new MigrationFileReader();
+    private Path directory;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = MigrationFiles.createDirectory();
+        file = MigrationFiles.writeMigration(directory, 1, "benchmark_table", statements);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MigrationFiles.delete(directory);
+    }
+
+    @Benchmark
+    public List<String> readDbMigrationFile() {
+        return reader.readDbMigrationFile(file);
+    }
+
+    @Benchmark
+    public void streamDbMigrationStatements(Blackhole blackhole) {
+        try (Stream<String> statementStream = reader.streamDbMigrationStatements(file)) {
+            statementStream.forEach(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public String readDbMigrationHeader() {
+        return reader.readDbMigrationHeader(file);
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/** *
+ * Generating migration files used as input data by the benchmarks
+ * */
+final class MigrationFiles {
+    static final String HEADER = "-- benchmark -- generated migration\n";
+
+    /** *
+     * Creating a temporary directory for generated files
+     *
+     * @return path to the created directory
+     * */
+    static Path createDirectory() {
+        try {
+            return Files.createTempDirectory("migration_benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** *
+     * Writing a migration file with the given number of INSERT statements into the table
+     *
+     * @param directory target directory
+     * @param version migration version
+     * @param table table the statements insert into
+     * @param statements number of statements
+     * @return written file
+     * */
+    static File writeMigration(Path directory, int version, String table, int statements) {
+        Path file = directory.resolve("V" + version + "__generated_migration.sql");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            for (int i = 0; i < statements; i++) {
+                writer.write("INSERT INTO " + table + " (version, name) VALUES (" + version + ", 'row ''" + i
+                        + "'' of the migration; with a separator inside');\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file.toFile();
+    }
+
+    /** *
+     * Deleting the directory with all generated files
+     *
+     * @param directory directory created by createDirectory()
+     * */
+    static void delete(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MigrationFiles() {
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
+
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * Parsing of migration headers: a plain author/description line, a header with directives
+ * and a header followed by a large migration body, which must not be scanned
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MigrationMetadataParserBenchmark {
+    private static final String DIRECTIVES_HEADER = """
+            -- benchmark -- migration with directives
+            -- @depends: 3, 4, 5
+            -- @transaction: per_migration
+            """;
+
+    private String withBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder sql = new StringBuilder(MigrationFiles.HEADER);
+        for (int i = 0; i < 10_000; i++) {
+            sql.append("INSERT INTO benchmark_table (version, name) VALUES (1, 'row ").append(i).append("');\n");
+        }
+        withBody = sql.toString();
+    }
+
+    @Benchmark
+    public MigrationMetadata plainHeader() {
+        return MigrationMetadataParser.parseMigrationMetadata(MigrationFiles.HEADER);
+    }
+
+    @Benchmark
+    public MigrationMetadata headerWithDirectives() {
+        return MigrationMetadataParser.parseMigrationMetadata(DIRECTIVES_HEADER);
+    }
+
+    @Benchmark
+    public MigrationMetadata headerWithBody() {
+        return MigrationMetadataParser.parseMigrationMetadata(withBody);
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import executor.MigrationExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reader.MigrationFileReader;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * End-to-end applying of pending migrations in the way processMigrationFiles does it: the files are found,
+ * validated and sorted, then every migration is read, executed in JDBC batches and recorded
+ * in schema_history_table within one shared transaction. An in-memory H2 database stands in for PostgreSQL,
+ * so the lock and the PostgreSQL-specific history table setup are left out; the transaction is rolled back
+ * after every invocation to keep the database state the same. The error about the unconfigured database,
+ * logged once by MigrationExecutor while creating the history table, is expected
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MigrationPipelineBenchmark {
+    // Колонки schema_history_table повторяют SchemaHistoryUtil - его частичный индекс H2 не поддерживает
+    private static final String CREATE_TABLES_SQL = """
+            CREATE TABLE IF NOT EXISTS benchmark_table (version INTEGER, name VARCHAR(200));
+            CREATE TABLE IF NOT EXISTS schema_history_table (
+                            id SERIAL PRIMARY KEY,
+                            version INTEGER,
+                            description VARCHAR(200),
+                            script VARCHAR(200) NOT NULL,
+                            checksum INTEGER,
+                            installed_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                            installed_by VARCHAR(100) NOT NULL,
+                            execution_time INTEGER,
+                            success BOOLEAN NOT NULL,
+                            status VARCHAR(50) DEFAULT 'applied',
+                            kind VARCHAR(10),
+                            lock_wait_time INTEGER DEFAULT 0
+                            );
+            """;
+
+    @Param({"100"})
+    private int migrations;
+
+    @Param({"10", "1000"})
+    private int statements;
+
+    private Path directory;
+    private Connection connection;
+    private MigrationManager migrationManager;
+    private MigrationExecutor migrationExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        directory = MigrationFiles.createDirectory();
+        for (int version = 1; version <= migrations; version++) {
+            MigrationFiles.writeMigration(directory, version, "benchmark_table", statements);
+        }
+        connection = DriverManager.getConnection("jdbc:h2:mem:pipeline_benchmark;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLES_SQL);
+        }
+        MigrationFileReader reader = new MigrationFileReader();
+        migrationManager = new MigrationManager(reader, null);
+        migrationExecutor = new MigrationExecutor(reader, migrationManager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        MigrationFiles.delete(directory);
+    }
+
+    @Benchmark
+    public int processMigrationFiles() throws SQLException {
+        List<File> migrationFiles = migrationManager.findAndSortMigrationFiles(directory.toString());
+        connection.setAutoCommit(false);
+        int applied = 0;
+        try {
+            for (File file : migrationFiles) {
+                Integer version = migrationManager.extractVersionFromFilename(file);
+                if (!migrationExecutor.executeMigrationFile(connection, file, version)) {
+                    throw new IllegalStateException("Migration failed: " + file.getName());
+                }
+                applied++;
+            }
+        } finally {
+            connection.rollback();
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reader.MigrationFileReader;
+import reader.MigrationPlanCache;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * Searching, validating and sorting of a directory with 10 000 migration files, without the plan cache
+ * and with a warmed-up one (db.migration.plan.cache)
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MigrationSortBenchmark {
+
+    @Param({"10000"})
+    private int files;
+
+    private Path directory;
+    private MigrationManager migrationManager;
+    private MigrationManager cachedMigrationManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = MigrationFiles.createDirectory();
+        // Файлы создаются в обратном порядке, чтобы порядок каталога не совпадал с порядком версий
+        for (int version = files; version > 0; version--) {
+            MigrationFiles.writeMigration(directory, version, "benchmark_table", 1);
+        }
+        MigrationFileReader reader = new MigrationFileReader();
+        migrationManager = new MigrationManager(reader, null);
+        MigrationPlanCache planCache = MigrationPlanCache.load(directory.resolve("plan-cache.json"));
+        cachedMigrationManager = new MigrationManager(reader, planCache);
+        cachedMigrationManager.findAndSortMigrationFiles(directory.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MigrationFiles.delete(directory);
+    }
+
+    @Benchmark
+    public List<File> findAndSortMigrationFiles() {
+        return migrationManager.findAndSortMigrationFiles(directory.toString());
+    }
+
+    @Benchmark
+    public List<File> findAndSortMigrationFilesWithPlanCache() {
+        return cachedMigrationManager.findAndSortMigrationFiles(directory.toString());
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.Validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * Checking of migration and rollback file names with Validator.checkMigrationFileFormat
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidatorBenchmark {
+    private Path directory;
+    private File migrationFile;
+    private File rollbackFile;
+    private File invalidFile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = MigrationFiles.createDirectory();
+        migrationFile = MigrationFiles.writeMigration(directory, 42, "benchmark_table", 1);
+        rollbackFile = createFile("U42__rollback_V42__generated_migration.sql");
+        invalidFile = createFile("42_generated_migration.sql");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MigrationFiles.delete(directory);
+    }
+
+    @Benchmark
+    public File migrationFileName() {
+        Validator.checkMigrationFileFormat(migrationFile);
+        return migrationFile;
+    }
+
+    @Benchmark
+    public File rollbackFileName() {
+        Validator.checkMigrationFileFormat(rollbackFile);
+        return rollbackFile;
+    }
+
+    @Benchmark
+    public boolean invalidFileName() {
+        try {
+            Validator.checkMigrationFileFormat(invalidFile);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private File createFile(String name) {
+        try {
+            return Files.createFile(directory.resolve(name)).toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
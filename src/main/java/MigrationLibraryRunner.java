@@ -1,9 +1,11 @@
-import exception.LockException;
 import executor.MigrationExecutor;
+import executor.MigrationResult;
 import executor.RollbackExecutor;
 import reader.MigrationFileReader;
 import utils.MigrationManager;
 
+import java.util.concurrent.CompletableFuture;
+
 /** *
  * This class provides the application runner method
  * */
@@ -20,25 +22,13 @@ public class MigrationLibraryRunner {
         MigrationExecutor migrationExecutor = new MigrationExecutor(migrationFileReader, migrationManager);
         RollbackExecutor rollbackExecutor = new RollbackExecutor(migrationFileReader, migrationManager);
 
-        Runnable migrationTask = () -> {
-            try {
-                migrationExecutor.processMigrationFiles(MIGRATIONS_DIRECTORY_PATH);
-//                rollbackExecutor.rollbackToVersion(ROLLBACK_DIRECTORY_PATH, 1);
-            } catch (LockException e) {
-                System.out.println("Caught exception: " + e.getMessage());
-            }
-        };
-
-        Thread thread1 = new Thread(migrationTask);
-        Thread thread2 = new Thread(migrationTask);
-        Thread thread3 = new Thread(migrationTask);
-        Thread thread4 = new Thread(migrationTask);
-        Thread thread5 = new Thread(migrationTask);
-
-        thread1.start();
-        thread2.start();
-        thread3.start();
-        thread4.start();
-        thread5.start();
+        // Несколько одновременных запусков соревнуются за блокировку миграций
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<MigrationResult> migration =
+                    migrationExecutor.processMigrationFilesAsync(MIGRATIONS_DIRECTORY_PATH);
+//            rollbackExecutor.rollbackToVersionAsync(ROLLBACK_DIRECTORY_PATH, 1, null);
+            migration.whenComplete((result, error) -> System.out.println(
+                    error != null ? "Caught exception: " + error.getMessage() : "Migration result: " + result));
+        }
     }
 }
\ No newline at end of file
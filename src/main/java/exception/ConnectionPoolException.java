@@ -0,0 +1,17 @@
+package exception;
+
+/** *
+ * This custom exception is used when a connection can't be provided by the connection pool
+ * (acquire timeout, interruption or failure to open a new connection)
+ * */
+public class ConnectionPoolException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ConnectionPoolException(String message) {
+        super(message);
+    }
+
+    public ConnectionPoolException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,308 @@
+package executor;
+
+import exception.ConnectionPoolException;
+import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+import parser.MigrationChecksum;
+import parser.MigrationMetadata;
+import utils.MigrationProgress;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static utils.SchemaHistoryUtil.finishSchemaHistoryRecord;
+import static utils.SchemaHistoryUtil.startSchemaHistoryRecord;
+import static utils.Validator.checkNotNullMigrationAuthorAndDescription;
+
+/** *
+ * Executes a data migration declaring "-- @chunk-key: table.column" in key range chunks on a dedicated connection.
+ * Statements of the migration use :chunk_start and :chunk_end placeholders (key >= :chunk_start AND
+ * key < :chunk_end), and every chunk is committed in its own transaction together with the start of the next
+ * range (see {@link MigrationProgress}), so a paused or failed migration is resumed from the next chunk.
+ * The speed is limited by "-- @rows-per-second" and "-- @max-replication-lag" (milliseconds): before
+ * every chunk the runner waits until replicas catch up
+ * */
+@Slf4j
+public class ChunkedMigrationRunner {
+    private static final String CHUNK_START = ":chunk_start";
+    private static final String CHUNK_END = ":chunk_end";
+    private static final String REPLICATION_LAG_SQL = """
+            SELECT COALESCE(MAX(EXTRACT(EPOCH FROM replay_lag)) * 1000, 0) FROM pg_stat_replication
+            """;
+    private static final long REPLICATION_LAG_POLL_MILLIS = 1_000;
+
+    private final Supplier<Connection> connectionSupplier;
+    private final int defaultChunkSize;
+    private final int defaultRowsPerSecond;
+    private final int defaultMaxReplicationLagMillis;
+
+    /** *
+     * @param connectionSupplier source of dedicated connections for chunked migrations
+     * @param defaultChunkSize key range size used when the migration doesn't declare @chunk-size
+     * @param defaultRowsPerSecond rows per second limit used when the migration doesn't declare it, 0 - no limit
+     * @param defaultMaxReplicationLagMillis replication lag limit used when the migration doesn't declare it,
+     *                                       0 - not checked
+     * */
+    public ChunkedMigrationRunner(Supplier<Connection> connectionSupplier, int defaultChunkSize,
+                                  int defaultRowsPerSecond, int defaultMaxReplicationLagMillis) {
+        this.connectionSupplier = connectionSupplier;
+        this.defaultChunkSize = defaultChunkSize;
+        this.defaultRowsPerSecond = defaultRowsPerSecond;
+        this.defaultMaxReplicationLagMillis = defaultMaxReplicationLagMillis;
+    }
+
+    /** *
+     * Executing the migration chunk by chunk
+     *
+     * @param script file name of the migration
+     * @param version the version of the migration
+     * @param metadata metadata of the migration with @chunk-key
+     * @param statements statements of the migration
+     * @param pauseRequested pause state of the run, checked before every chunk: true stops the migration
+     *                       after the committed chunk
+     * @return true if all chunks were processed, false if the migration failed or was paused
+     * */
+    public boolean run(String script, int version, MigrationMetadata metadata, List<String> statements,
+                       BooleanSupplier pauseRequested) {
+        int chunkSize = valueOrDefault(metadata.getChunkSize(), defaultChunkSize);
+        int rowsPerSecond = valueOrDefault(metadata.getRowsPerSecond(), defaultRowsPerSecond);
+        int maxReplicationLagMillis = valueOrDefault(metadata.getMaxReplicationLagMillis(),
+                defaultMaxReplicationLagMillis);
+        int checksum = MigrationChecksum.of(statements.iterator());
+        long startTime = System.currentTimeMillis();
+
+        try (Connection connection = connectionSupplier.get()) {
+            checkNotNullMigrationAuthorAndDescription(metadata.getInstalledBy(), metadata.getDescription());
+            connection.setAutoCommit(true);
+            startSchemaHistoryRecord(connection, version, metadata.getDescription(), script,
+                    metadata.getInstalledBy());
+            try (MigrationProgress progress = MigrationProgress.load(connection, version, script)) {
+                Long resumeKey = progress.getNextChunkKey();
+                if (resumeKey != null && progress.getCompletedChecksum() != checksum) {
+                    throw new IllegalStateException("Migration " + script + " was changed after some of its chunks"
+                            + " had been committed. Delete its row from schema_migration_progress to apply it"
+                            + " from the beginning");
+                }
+                long[] keyRange = keyRange(connection, metadata.getChunkKey());
+                connection.setAutoCommit(false);
+                if (keyRange != null && !processChunks(connection, progress, statements, keyRange, resumeKey,
+                        chunkSize, rowsPerSecond, maxReplicationLagMillis, checksum, script, pauseRequested)) {
+                    connection.rollback();
+                    return false;
+                }
+                progress.complete();
+                finishSchemaHistoryRecord(connection, version, script, checksum,
+                        (int) (System.currentTimeMillis() - startTime), true);
+                connection.commit();
+                log.info("Successfully applied chunked migration {}", script);
+                return true;
+            } catch (SQLException | IllegalArgumentException | IllegalStateException e) {
+                log.error("Chunked migration {} failed, committed chunks are kept: ", script, e);
+                markFailed(connection, version, script, startTime);
+                return false;
+            }
+        } catch (SQLException | ConnectionPoolException | IllegalArgumentException e) {
+            log.error("Chunked migration {} failed: ", script, e);
+            return false;
+        }
+    }
+
+    private boolean processChunks(Connection connection, MigrationProgress progress, List<String> statements,
+                                  long[] keyRange, Long resumeKey, int chunkSize, int rowsPerSecond,
+                                  int maxReplicationLagMillis, int checksum, String script,
+                                  BooleanSupplier pauseRequested) throws SQLException {
+        List<ChunkStatement> chunkStatements = new ArrayList<>();
+        try {
+            for (String sql : statements) {
+                chunkStatements.add(ChunkStatement.prepare(connection, sql));
+            }
+            long start = resumeKey != null ? resumeKey : keyRange[0];
+            if (resumeKey != null) {
+                log.info("Resuming chunked migration {} from key {}", script, start);
+            }
+            long rows = 0;
+            long startNanos = System.nanoTime();
+            while (start <= keyRange[1]) {
+                if (pauseRequested.getAsBoolean()) {
+                    log.info("Chunked migration {} is paused at key {}, it will be resumed on the next run",
+                            script, start);
+                    return false;
+                }
+                if (!waitForReplicas(connection, maxReplicationLagMillis)) {
+                    return false;
+                }
+                long end = start > Long.MAX_VALUE - chunkSize ? Long.MAX_VALUE : start + chunkSize;
+                for (ChunkStatement statement : chunkStatements) {
+                    rows += statement.execute(start, end);
+                }
+                progress.checkpointChunk(end, checksum);
+                connection.commit();
+                log.debug("Chunked migration {}: keys [{}, {}) committed, {} rows processed", script, start, end,
+                        rows);
+                if (end == Long.MAX_VALUE) {
+                    break;
+                }
+                if (!throttle(rows, startNanos, rowsPerSecond)) {
+                    return false;
+                }
+                start = end;
+            }
+            return true;
+        } finally {
+            for (ChunkStatement statement : chunkStatements) {
+                statement.close();
+            }
+        }
+    }
+
+    // Минимальный и максимальный ключи определяются один раз: строки, добавленные позже, не обрабатываются
+    private long[] keyRange(Connection connection, String chunkKey) throws SQLException {
+        int separator = chunkKey.lastIndexOf('.');
+        String table = chunkKey.substring(0, separator);
+        String column = chunkKey.substring(separator + 1);
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + table)) {
+            if (!resultSet.next()) {
+                return null;
+            }
+            long min = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+                return null;
+            }
+            return new long[]{min, resultSet.getLong(2)};
+        }
+    }
+
+    // Статистика репликации читается в отдельной транзакции, чтобы не удерживать снимок во время ожидания
+    private boolean waitForReplicas(Connection connection, int maxReplicationLagMillis) throws SQLException {
+        if (maxReplicationLagMillis <= 0) {
+            return true;
+        }
+        while (true) {
+            double lagMillis;
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(REPLICATION_LAG_SQL)) {
+                lagMillis = resultSet.next() ? resultSet.getDouble(1) : 0;
+            }
+            connection.commit();
+            if (lagMillis <= maxReplicationLagMillis) {
+                return true;
+            }
+            log.info("Replication lag is {} ms, waiting before the next chunk", (long) lagMillis);
+            if (!sleep(REPLICATION_LAG_POLL_MILLIS)) {
+                return false;
+            }
+        }
+    }
+
+    private boolean throttle(long rows, long startNanos, int rowsPerSecond) {
+        if (rowsPerSecond <= 0) {
+            return true;
+        }
+        long expectedNanos = TimeUnit.SECONDS.toNanos(rows) / rowsPerSecond;
+        long aheadMillis = TimeUnit.NANOSECONDS.toMillis(expectedNanos - (System.nanoTime() - startNanos));
+        return aheadMillis <= 0 || sleep(aheadMillis);
+    }
+
+    // Прерывание потока останавливает миграцию так же, как пауза
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Chunked migration is interrupted, it will be resumed on the next run");
+            return false;
+        }
+    }
+
+    private void markFailed(Connection connection, int version, String script, long startTime) {
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+            finishSchemaHistoryRecord(connection, version, script, null,
+                    (int) (System.currentTimeMillis() - startTime), false);
+        } catch (SQLException e) {
+            log.error("Error! Failed to mark migration {} as failed: ", script, e);
+        }
+    }
+
+    private static int valueOrDefault(Integer value, int defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    /** *
+     * Statement of the chunked migration with :chunk_start and :chunk_end replaced by parameters
+     * */
+    private static final class ChunkStatement {
+        private final PreparedStatement statement;
+        // true - параметр начала диапазона, false - конца
+        private final boolean[] parameters;
+
+        private ChunkStatement(PreparedStatement statement, boolean[] parameters) {
+            this.statement = statement;
+            this.parameters = parameters;
+        }
+
+        private static ChunkStatement prepare(Connection connection, String sql) throws SQLException {
+            StringBuilder prepared = new StringBuilder(sql.length());
+            List<Boolean> parameters = new ArrayList<>();
+            boolean hasStart = false;
+            boolean hasEnd = false;
+            int position = 0;
+            while (position < sql.length()) {
+                boolean start = isPlaceholder(sql, position, CHUNK_START);
+                if (start || isPlaceholder(sql, position, CHUNK_END)) {
+                    prepared.append('?');
+                    parameters.add(start);
+                    hasStart |= start;
+                    hasEnd |= !start;
+                    position += start ? CHUNK_START.length() : CHUNK_END.length();
+                } else {
+                    prepared.append(sql.charAt(position++));
+                }
+            }
+            if (!hasStart || !hasEnd) {
+                throw new IllegalArgumentException("Every statement of a chunked migration must restrict the key"
+                        + " with :chunk_start and :chunk_end: " + sql);
+            }
+            boolean[] parameterKinds = new boolean[parameters.size()];
+            for (int i = 0; i < parameterKinds.length; i++) {
+                parameterKinds[i] = parameters.get(i);
+            }
+            return new ChunkStatement(connection.prepareStatement(prepared.toString()), parameterKinds);
+        }
+
+        // Приведение типов "::name" не считается параметром
+        private static boolean isPlaceholder(String sql, int position, String placeholder) {
+            if (!sql.startsWith(placeholder, position) || (position > 0 && sql.charAt(position - 1) == ':')) {
+                return false;
+            }
+            int end = position + placeholder.length();
+            return end == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(end));
+        }
+
+        private int execute(long start, long end) throws SQLException {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setLong(i + 1, parameters[i] ? start : end);
+            }
+            long startTime = System.nanoTime();
+            int rows = Math.max(0, statement.executeUpdate());
+            MigrationMetrics.statementExecuted(System.nanoTime() - startTime, rows);
+            return rows;
+        }
+
+        private void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
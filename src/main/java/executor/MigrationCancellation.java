@@ -0,0 +1,122 @@
+package executor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/** *
+ * Cancellation state of one migration or rollback run. Cancelling the future returned by the async methods
+ * of the executors stops the run: no new migrations are started, the running statement is cancelled
+ * on the server, uncommitted changes are rolled back and chunked migrations are paused after the current chunk.
+ * A pause of chunked migrations can also be requested without cancelling the run
+ * */
+@Slf4j
+final class MigrationCancellation {
+    static final MigrationCancellation NONE = new MigrationCancellation();
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private volatile boolean cancelled;
+    private volatile boolean pauseRequested;
+    // Соединение, на котором выполняется запуск, - запрос на нем отменяется при отмене запуска
+    private volatile Connection connection;
+
+    private MigrationCancellation() {
+    }
+
+    /** *
+     * Creating the state of a synchronous run, which can't be cancelled but can be paused
+     *
+     * @return state of a new run
+     * */
+    static MigrationCancellation newRun() {
+        return new MigrationCancellation();
+    }
+
+    /** *
+     * Starting the run on the executor
+     *
+     * @param executor executor running the migration, a new thread is started for the run if null
+     * @param run the run, checking the cancellation state between migrations
+     * @return future of the run result, completed exceptionally if the run throws an exception
+     * */
+    static CompletableFuture<MigrationResult> supplyAsync(java.util.concurrent.Executor executor,
+                                                          Function<MigrationCancellation, MigrationResult> run) {
+        MigrationCancellation cancellation = new MigrationCancellation();
+        CompletableFuture<MigrationResult> future = new CompletableFuture<>();
+        future.whenComplete((result, error) -> {
+            if (error instanceof CancellationException) {
+                cancellation.cancel();
+            }
+        });
+        Runnable task = () -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(run.apply(cancellation));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        };
+        try {
+            if (executor != null) {
+                executor.execute(task);
+            } else {
+                // Поток не демон: миграция не должна прерываться при завершении основного потока приложения
+                new Thread(task, "migration-async-" + THREAD_COUNTER.incrementAndGet()).start();
+            }
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void requestPause() {
+        pauseRequested = true;
+    }
+
+    // Отмененный запуск останавливает миграцию, выполняемую частями, так же, как пауза
+    boolean isPauseRequested() {
+        return pauseRequested || cancelled;
+    }
+
+    void register(Connection connection) {
+        this.connection = connection;
+        if (cancelled) {
+            cancelQuery(connection);
+        }
+    }
+
+    void unregister() {
+        this.connection = null;
+    }
+
+    private void cancel() {
+        cancelled = true;
+        log.info("Migration run is cancelled");
+        Connection running = connection;
+        if (running != null) {
+            cancelQuery(running);
+        }
+    }
+
+    private static void cancelQuery(Connection connection) {
+        try {
+            if (connection.isWrapperFor(PGConnection.class)) {
+                connection.unwrap(PGConnection.class).cancelQuery();
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to cancel the running statement: {}", e.getMessage());
+        }
+    }
+}
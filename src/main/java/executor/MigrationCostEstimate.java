@@ -0,0 +1,46 @@
+package executor;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/** *
+ * Estimated cost of one pending migration, produced by {@link MigrationExecutor#plan(String)}: rows the DML
+ * statements are expected to touch (from the planner estimates of EXPLAIN) and rows of the tables
+ * locked by the DDL statements for the whole statement (from pg_class.reltuples)
+ * */
+@Getter
+public class MigrationCostEstimate {
+    private final String script;
+    private final int version;
+    private final int statementCount;
+    private final long estimatedRows;
+    private final long lockedRows;
+    // Большие блокируемые таблицы и выражения, которые не удалось оценить
+    private final List<String> warnings;
+
+    public MigrationCostEstimate(String script, int version, int statementCount, long estimatedRows,
+                                 long lockedRows, List<String> warnings) {
+        this.script = script;
+        this.version = version;
+        this.statementCount = statementCount;
+        this.estimatedRows = estimatedRows;
+        this.lockedRows = lockedRows;
+        this.warnings = List.copyOf(warnings);
+    }
+
+    /** *
+     * Getting the rank of the migration in the plan
+     *
+     * @return rows touched by DML statements plus rows of the tables locked by DDL statements
+     * */
+    public long getRowsTouched() {
+        return estimatedRows + lockedRows;
+    }
+
+    @Override
+    public String toString() {
+        return script + ": ~" + getRowsTouched() + " rows (DML " + estimatedRows + ", locked " + lockedRows
+                + "), " + statementCount + " statements" + (warnings.isEmpty() ? "" : ", warnings: " + warnings);
+    }
+}
@@ -0,0 +1,199 @@
+package executor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import parser.MigrationFileDescriptor;
+import reader.MigrationFileReader;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static parser.SqlStatementSplitter.leadingKeyword;
+
+/** *
+ * Estimates the cost of pending migrations without applying them. DML statements are explained
+ * (EXPLAIN without ANALYZE, so nothing is executed) and DDL statements are checked for locks blocking
+ * the table for the whole statement: ACCESS EXCLUSIVE (ALTER TABLE, DROP, TRUNCATE, CLUSTER, VACUUM FULL,
+ * LOCK, REFRESH MATERIALIZED VIEW) and SHARE (CREATE INDEX without CONCURRENTLY). DDL is never executed,
+ * so statements depending on objects created earlier in the same run can't be explained and are reported
+ * in the warnings. Everything runs in one transaction that is rolled back
+ * */
+@Slf4j
+public class MigrationCostPlanner {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> DML_KEYWORDS = Set.of("INSERT", "UPDATE", "DELETE", "MERGE", "SELECT", "WITH");
+    private static final String NAME = "((?:\"[^\"]+\"|[\\w$]+)(?:\\.(?:\"[^\"]+\"|[\\w$]+))?)";
+    private static final List<LockRule> LOCK_RULES = List.of(
+            // Часть подкоманд ALTER TABLE берет более слабые блокировки и не останавливает чтение таблицы
+            new LockRule("ACCESS EXCLUSIVE", "^ALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?(?:ONLY\\s+)?" + NAME,
+                    "\\b(?:VALIDATE\\s+CONSTRAINT|SET\\s+STATISTICS|ATTACH\\s+PARTITION)\\b"),
+            new LockRule("ACCESS EXCLUSIVE", "^DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?" + NAME, null),
+            new LockRule("ACCESS EXCLUSIVE", "^DROP\\s+INDEX\\s+(?!CONCURRENTLY\\b)(?:IF\\s+EXISTS\\s+)?" + NAME, null),
+            new LockRule("ACCESS EXCLUSIVE", "^TRUNCATE\\s+(?:TABLE\\s+)?(?:ONLY\\s+)?" + NAME, null),
+            new LockRule("ACCESS EXCLUSIVE", "^CLUSTER\\s+(?:VERBOSE\\s+)?" + NAME, null),
+            new LockRule("ACCESS EXCLUSIVE", "^VACUUM\\s+FULL\\s+(?:VERBOSE\\s+)?(?:ANALYZE\\s+)?" + NAME, null),
+            new LockRule("ACCESS EXCLUSIVE", "^LOCK\\s+(?:TABLE\\s+)?(?:ONLY\\s+)?" + NAME,
+                    "\\bIN\\s+(?!ACCESS\\s+EXCLUSIVE)\\w+(?:\\s+\\w+)?\\s+MODE\\b"),
+            new LockRule("ACCESS EXCLUSIVE", "^REFRESH\\s+MATERIALIZED\\s+VIEW\\s+(?!CONCURRENTLY\\b)" + NAME, null),
+            new LockRule("SHARE", "^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(?!CONCURRENTLY\\b).*?\\bON\\s+(?:ONLY\\s+)?"
+                    + NAME, null));
+    private static final String TABLE_ROWS_SQL = """
+            SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = to_regclass(?)
+            """;
+    // Оценка не должна долго ждать блокировок, которые держит приложение
+    private static final String LOCK_TIMEOUT_SQL = "SET LOCAL lock_timeout = '5s'";
+
+    private final MigrationFileReader migrationFileReader;
+    private final long largeTableRows;
+
+    /** *
+     * @param fileReader reader of migration statements
+     * @param largeTableRows number of rows from which a locked table is reported in the warnings
+     * */
+    public MigrationCostPlanner(MigrationFileReader fileReader, long largeTableRows) {
+        this.migrationFileReader = fileReader;
+        this.largeTableRows = largeTableRows;
+    }
+
+    /** *
+     * Estimating the cost of the migrations
+     *
+     * @param connection the database connection, its transaction is rolled back
+     * @param migrations pending migrations
+     * @return estimates ranked by the rows touched, the most expensive migration first
+     * @throws SQLException if a database access error occurs
+     * @throws java.io.UncheckedIOException if a migration file can't be read
+     * */
+    public List<MigrationCostEstimate> plan(Connection connection, List<MigrationFileDescriptor> migrations)
+            throws SQLException {
+        List<MigrationCostEstimate> estimates = new ArrayList<>(migrations.size());
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(LOCK_TIMEOUT_SQL);
+            }
+            for (MigrationFileDescriptor migration : migrations) {
+                estimates.add(estimate(connection, migration));
+            }
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        }
+        estimates.sort(Comparator.comparingLong(MigrationCostEstimate::getRowsTouched).reversed());
+        return estimates;
+    }
+
+    private MigrationCostEstimate estimate(Connection connection, MigrationFileDescriptor migration)
+            throws SQLException {
+        long estimatedRows = 0;
+        long lockedRows = 0;
+        int statementNumber = 0;
+        List<String> warnings = new ArrayList<>();
+        try (Stream<String> statements = migrationFileReader.streamDbMigrationStatements(migration.getFile())) {
+            for (Iterator<String> iterator = statements.iterator(); iterator.hasNext(); ) {
+                String sql = iterator.next();
+                statementNumber++;
+                if (DML_KEYWORDS.contains(leadingKeyword(sql))) {
+                    try {
+                        estimatedRows += explain(connection, sql);
+                    } catch (SQLException | JsonProcessingException e) {
+                        warnings.add("statement " + statementNumber + " can't be estimated: " + e.getMessage());
+                    }
+                    continue;
+                }
+                LockedTable lockedTable = findLockedTable(sql);
+                if (lockedTable == null) {
+                    continue;
+                }
+                long tableRows = tableRows(connection, lockedTable.name());
+                lockedRows += tableRows;
+                if (tableRows >= largeTableRows) {
+                    warnings.add("statement " + statementNumber + " takes " + lockedTable.lockMode()
+                            + " lock on " + lockedTable.name() + " (~" + tableRows + " rows)");
+                }
+            }
+        }
+        MigrationCostEstimate estimate = new MigrationCostEstimate(migration.getName(), migration.getVersion(),
+                statementNumber, estimatedRows, lockedRows, warnings);
+        log.debug("Estimated {}", estimate);
+        return estimate;
+    }
+
+    // Ошибка выражения прерывает транзакцию, поэтому каждое выражение оценивается в своей точке сохранения
+    private long explain(Connection connection, String sql) throws SQLException, JsonProcessingException {
+        Savepoint savepoint = connection.setSavepoint();
+        String plan;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("EXPLAIN (FORMAT JSON) " + sql)) {
+            resultSet.next();
+            plan = resultSet.getString(1);
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            connection.rollback(savepoint);
+            throw e;
+        }
+        return planRows(MAPPER.readTree(plan).path(0).path("Plan"));
+    }
+
+    // Узел ModifyTable без RETURNING оценивается в 0 строк, затрагиваемые строки оценивает его дочерний узел
+    private static long planRows(JsonNode plan) {
+        if ("ModifyTable".equals(plan.path("Node Type").asText()) && plan.path("Plans").size() > 0) {
+            return plan.path("Plans").path(0).path("Plan Rows").asLong();
+        }
+        return plan.path("Plan Rows").asLong();
+    }
+
+    private long tableRows(Connection connection, String table) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try (PreparedStatement statement = connection.prepareStatement(TABLE_ROWS_SQL)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                long rows = resultSet.next() ? resultSet.getLong(1) : 0;
+                connection.releaseSavepoint(savepoint);
+                return rows;
+            }
+        } catch (SQLException e) {
+            // Таблица создается в этом же запуске или имя не удалось разобрать
+            connection.rollback(savepoint);
+            log.debug("Failed to get the size of {}: {}", table, e.getMessage());
+            return 0;
+        }
+    }
+
+    private static LockedTable findLockedTable(String sql) {
+        for (LockRule rule : LOCK_RULES) {
+            Matcher matcher = rule.pattern().matcher(sql);
+            if (matcher.find()) {
+                boolean weakerLock = rule.weakerLock() != null && rule.weakerLock().matcher(sql).find();
+                return weakerLock ? null : new LockedTable(matcher.group(1), rule.lockMode());
+            }
+        }
+        return null;
+    }
+
+    // weakerLock - выражения, которые при совпадении с pattern берут более слабую блокировку
+    private record LockRule(String lockMode, Pattern pattern, Pattern weakerLock) {
+        LockRule(String lockMode, String regex, String weakerLockRegex) {
+            this(lockMode, Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL),
+                    weakerLockRegex == null ? null : Pattern.compile(weakerLockRegex, Pattern.CASE_INSENSITIVE));
+        }
+    }
+
+    private record LockedTable(String name, String lockMode) {
+    }
+}
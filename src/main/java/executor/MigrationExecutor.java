@@ -1,88 +1,450 @@
 package executor;
 
+import exception.ConnectionPoolException;
 import exception.LockException;
+import lock.LockProvider;
 import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+import parser.MigrationChecksum;
+import parser.MigrationFileDescriptor;
 import parser.MigrationMetadata;
 import parser.MigrationMetadataParser;
+import parser.SqlStatementSplitter;
+import parser.TransactionMode;
 import reader.MigrationFileReader;
 import utils.ConnectionManager;
 import utils.MigrationManager;
+import utils.MigrationProgress;
+import utils.PropertiesUtils;
+import utils.SchemaHistoryWriter;
+import utils.SchemaStateCache;
 
 import java.io.File;
+import java.io.UncheckedIOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static utils.MigrationLockUtil.*;
+import static utils.MigrationLockUtil.ensureMigrationLockTable;
 import static utils.SchemaHistoryUtil.createSchemaHistoryTable;
-import static utils.SchemaHistoryUtil.updateSchemaHistoryTable;
+import static utils.SchemaHistoryUtil.finishSchemaHistoryRecord;
+import static utils.SchemaHistoryUtil.startSchemaHistoryRecord;
 import static utils.Validator.checkNotNull;
+import static utils.Validator.checkNotNullMigrationAuthorAndDescription;
 
 /** *
  * This class executes .sql files for db migrations
  * */
 @Slf4j
 public class MigrationExecutor implements Executor {
+    private static final String PARALLELISM_KEY = "db.migration.parallelism";
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final String CHUNK_SIZE_KEY = "db.migration.chunk.size";
+    private static final String CHUNK_ROWS_PER_SECOND_KEY = "db.migration.chunk.rows.per.second";
+    private static final String CHUNK_MAX_REPLICATION_LAG_KEY = "db.migration.chunk.max.replication.lag";
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final String LARGE_TABLE_ROWS_KEY = "db.migration.cost.large.table.rows";
+    private static final int DEFAULT_LARGE_TABLE_ROWS = 1_000_000;
+
     private final MigrationFileReader migrationFileReader;
     private final MigrationManager migrationManager;
+    private final LockProvider lockProvider;
+    private final SqlBatchExecutor sqlBatchExecutor = new SqlBatchExecutor();
+    // Запуски, выполняемые сейчас, - пауза запрашивается у каждого из них
+    private final Set<MigrationCancellation> runningRuns = ConcurrentHashMap.newKeySet();
+    private final ChunkedMigrationRunner chunkedMigrationRunner;
+    private final MigrationCostPlanner migrationCostPlanner;
+    private final MigrationTimeouts migrationTimeouts = MigrationTimeouts.fromProperties();
 
     static {
         try (Connection connection = ConnectionManager.get()) {
             createSchemaHistoryTable(connection);
             // Создание таблицы блокировки
             ensureMigrationLockTable(connection);
-        } catch (SQLException e) {
+            MigrationProgress.createMigrationProgressTable(connection);
+        } catch (SQLException | ConnectionPoolException e) {
             log.error("Error! Failed to create Schema History table: ", e);
         }
     }
 
     public MigrationExecutor(MigrationFileReader fileReader, MigrationManager migrationManager) {
+        this(fileReader, migrationManager, LockProvider.fromProperties());
+    }
+
+    public MigrationExecutor(MigrationFileReader fileReader, MigrationManager migrationManager,
+                             LockProvider lockProvider) {
+        this(fileReader, migrationManager, lockProvider, ConnectionManager::get);
+    }
+
+    // Соединения для миграций, выполняемых частями, берутся из пула той базы, к которой применяются миграции
+    MigrationExecutor(MigrationFileReader fileReader, MigrationManager migrationManager, LockProvider lockProvider,
+                      Supplier<Connection> connectionSupplier) {
         this.migrationFileReader = fileReader;
         this.migrationManager = migrationManager;
+        this.lockProvider = lockProvider;
+        this.chunkedMigrationRunner = new ChunkedMigrationRunner(connectionSupplier,
+                PropertiesUtils.getInt(CHUNK_SIZE_KEY, DEFAULT_CHUNK_SIZE),
+                PropertiesUtils.getInt(CHUNK_ROWS_PER_SECOND_KEY, 0),
+                PropertiesUtils.getInt(CHUNK_MAX_REPLICATION_LAG_KEY, 0));
+        this.migrationCostPlanner = new MigrationCostPlanner(fileReader,
+                PropertiesUtils.getInt(LARGE_TABLE_ROWS_KEY, DEFAULT_LARGE_TABLE_ROWS));
     }
 
     /** *
-     * Processes migration files and applies them to the database.
+     * Pausing the running chunked migrations ("-- @chunk-key") of the runs in progress after their current chunks
+     * are committed. These runs stop, and the next run resumes the migrations from the next chunk.
+     * Runs started later are not affected
+     * */
+    public void pauseChunkedMigrations() {
+        runningRuns.forEach(MigrationCancellation::requestPause);
+    }
+
+    /** *
+     * Processes migration files and applies them to the database. Migrations are applied in one shared
+     * transaction, except the ones declaring "-- @transaction: per_migration" or "-- @transaction: none"
+     * in the header: the shared transaction is committed before them.
      *
      * @param directoryPath the directory containing migration files
      * @throws LockException if a lock on migration cannot be acquired
      * */
     public void processMigrationFiles(String directoryPath) {
-        List<File> migrationFiles = migrationManager.findAndSortMigrationFiles(directoryPath);
+        migrate(directoryPath);
+    }
+
+    /** *
+     * Processes migration files like {@link #processMigrationFiles(String)} and reports the result
+     *
+     * @param directoryPath the directory containing migration files
+     * @return applied versions, duration of the run and the cause of the failure, if any
+     * */
+    public MigrationResult migrate(String directoryPath) {
+        return migrate(directoryPath, MigrationCancellation.newRun());
+    }
+
+    /** *
+     * Processes migration files in a new thread, so the application can do other startup work meanwhile.
+     * Cancelling the returned future stops the run (see {@link #processMigrationFilesAsync(String,
+     * java.util.concurrent.Executor)})
+     *
+     * @param directoryPath the directory containing migration files
+     * @return future of the run result
+     * */
+    public CompletableFuture<MigrationResult> processMigrationFilesAsync(String directoryPath) {
+        return processMigrationFilesAsync(directoryPath, null);
+    }
+
+    /** *
+     * Processes migration files on the given executor. Cancelling the returned future stops the run:
+     * no new migrations are started, the running statement is cancelled, uncommitted changes are rolled back
+     * and chunked migrations are paused after the current chunk
+     *
+     * @param directoryPath the directory containing migration files
+     * @param executor executor running the migration, a new thread is started if null
+     * @return future of the run result, completed exceptionally if migration files can't be found
+     * */
+    public CompletableFuture<MigrationResult> processMigrationFilesAsync(String directoryPath,
+                                                                         java.util.concurrent.Executor executor) {
+        return MigrationCancellation.supplyAsync(executor, cancellation -> migrate(directoryPath, cancellation));
+    }
+
+    private MigrationResult migrate(String directoryPath, MigrationCancellation cancellation) {
+        long startNanos = System.nanoTime();
+        MigrationResult result;
+        runningRuns.add(cancellation);
+        try {
+            result = migrateDirectory(directoryPath, cancellation);
+        } finally {
+            runningRuns.remove(cancellation);
+        }
+        MigrationMetrics.runFinished(result.getTarget(), System.nanoTime() - startNanos, result.isSuccess());
+        return result;
+    }
+
+    private MigrationResult migrateDirectory(String directoryPath, MigrationCancellation cancellation) {
+        long startTime = System.currentTimeMillis();
+        List<MigrationFileDescriptor> migrations = migrationManager.findAndSortMigrations(directoryPath);
         try (Connection connection = ConnectionManager.get()) {
+            cancellation.register(connection);
+            try {
+                lockProvider.acquire(connection);
+                try {
+                    Set<Integer> appliedBefore = migrationManager.getAppliedVersions(connection);
+                    MigrationFileDescriptor failed = applyPendingMigrations(connection, migrations, cancellation);
+                    List<Integer> applied = migrationManager.getVersionsChangedSince(connection, appliedBefore,
+                            false);
+                    long duration = System.currentTimeMillis() - startTime;
+                    if (failed != null) {
+                        return MigrationResult.failed(MigrationResult.DEFAULT_TARGET, applied, duration,
+                                failureCause(failed, cancellation));
+                    }
+                    log.info("Migration executed successfully");
+                    return MigrationResult.succeeded(MigrationResult.DEFAULT_TARGET, applied, duration);
+                } finally {
+                    releaseLock(connection);
+                    migrationManager.savePlanCache();
+                    // Часть миграций могла быть зафиксирована даже при ошибке
+                    SchemaStateCache.getInstance().invalidate();
+                }
+            } finally {
+                cancellation.unregister();
+            }
+        } catch (SQLException | LockException e) {
+            log.error("Error! Failed to process migration files: ", e);
+            return failedRun(startTime, e, cancellation);
+        } catch (IllegalArgumentException e) {
+            log.error(e.getMessage());
+            return failedRun(startTime, e, cancellation);
+        }
+    }
 
-            checkLock(connection);
+    private MigrationResult failedRun(long startTime, Exception e, MigrationCancellation cancellation) {
+        Throwable cause = cancellation.isCancelled() ? new CancellationException("Migration run is cancelled") : e;
+        return MigrationResult.failed(MigrationResult.DEFAULT_TARGET, List.of(),
+                System.currentTimeMillis() - startTime, cause);
+    }
 
-            connection.setAutoCommit(false);
+    private Throwable failureCause(MigrationFileDescriptor failed, MigrationCancellation cancellation) {
+        if (cancellation.isCancelled()) {
+            return new CancellationException("Migration run is cancelled before " + failed.getName() + " completed");
+        }
+        if (cancellation.isPauseRequested()) {
+            return new IllegalStateException("Migration " + failed.getName() + " is paused");
+        }
+        return new IllegalStateException("Migration " + failed.getName() + " failed");
+    }
 
-            lockMigration(connection, true);
+    /** *
+     * Applying migrations newer than the current version of the schema the connection works with.
+     * The caller must hold the migration lock
+     *
+     * @param connection the database connection
+     * @param migrations migrations sorted by version
+     * @return the migration that failed (or was paused), null if all the migrations were applied
+     * @throws SQLException if a database access error occurs
+     * */
+    MigrationFileDescriptor applyPendingMigrations(Connection connection, List<MigrationFileDescriptor> migrations)
+            throws SQLException {
+        return applyPendingMigrations(connection, migrations, MigrationCancellation.NONE);
+    }
 
-            int currentVersion = migrationManager.getCurrentVersion(connection);
-            for (File file : migrationFiles) {
-                List<String> sqlCommands = migrationFileReader.readDbMigrationFile(file);
+    private MigrationFileDescriptor applyPendingMigrations(Connection connection,
+                                                           List<MigrationFileDescriptor> migrations,
+                                                           MigrationCancellation cancellation) throws SQLException {
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+            connection.setAutoCommit(false);
 
-                Integer scriptVersion = migrationManager.extractVersionFromFilename(file);
+            int currentVersion = migrationManager.getCurrentVersion(connection);
+            for (MigrationFileDescriptor migration : migrations) {
+                File file = migration.getFile();
+                Integer scriptVersion = migration.getVersion();
 
+                // Уже примененные файлы не читаются вовсе
                 if (migrationManager.shouldApplyMigration(currentVersion, scriptVersion)) {
-                    if (!executeSql(connection, sqlCommands, file.getName(), scriptVersion)) {
+                    if (cancellation.isCancelled()
+                            || !applyMigration(connection, historyWriter, file, scriptVersion, cancellation)) {
                         connection.rollback();
-                        lockMigration(connection, false);
-                        log.error("Migration failed, rolling back all changes.");
-                        return;
+                        if (cancellation.isCancelled()) {
+                            log.info("Migration run is cancelled, rolling back all uncommitted changes");
+                        } else if (cancellation.isPauseRequested()) {
+                            log.info("Migration is paused, remaining migrations will be applied on the next run");
+                        } else {
+                            log.error("Migration failed, rolling back all uncommitted changes.");
+                        }
+                        return migration;
                     }
                 }
             }
-            lockMigration(connection, false);
+            // Записи истории всех миграций общей транзакции отправляются одним пакетом
+            historyWriter.flush();
             connection.commit();
-            log.info("Migration executed successfully");
-        } catch (SQLException | LockException e) {
-            log.error("Error! Failed to process migration files: ", e);
-            try (Connection connection = ConnectionManager.get()) {
-                lockMigration(connection, false);
-            } catch (SQLException ex) {
-                log.error("Error! Failed to release lock: ", ex);
+            return null;
+        }
+    }
+
+    /** *
+     * Processes migration files and applies independent ones concurrently (see {@link ParallelMigrationScheduler}).
+     * The number of workers is taken from the db.migration.parallelism property
+     *
+     * @param directoryPath the directory containing migration files
+     * */
+    public void processMigrationFilesInParallel(String directoryPath) {
+        processMigrationFilesInParallel(directoryPath, PropertiesUtils.getInt(PARALLELISM_KEY, DEFAULT_PARALLELISM));
+    }
+
+    /** *
+     * Processes migration files and applies independent ones concurrently. Each migration is applied
+     * in its own transaction, so migrations applied before a failure stay applied
+     *
+     * @param directoryPath the directory containing migration files
+     * @param parallelism maximum number of migrations applied at the same time
+     * */
+    public void processMigrationFilesInParallel(String directoryPath, int parallelism) {
+        long startNanos = System.nanoTime();
+        MigrationCancellation run = MigrationCancellation.newRun();
+        boolean success;
+        runningRuns.add(run);
+        try {
+            success = applyMigrationsInParallel(directoryPath, parallelism, run);
+        } finally {
+            runningRuns.remove(run);
+        }
+        MigrationMetrics.runFinished(MigrationResult.DEFAULT_TARGET, System.nanoTime() - startNanos, success);
+    }
+
+    private boolean applyMigrationsInParallel(String directoryPath, int parallelism, MigrationCancellation run) {
+        List<MigrationFileDescriptor> migrations = migrationManager.findAndSortMigrations(directoryPath);
+        try (Connection connection = ConnectionManager.get()) {
+
+            // Блокировку держит координирующее соединение, миграции выполняются на соединениях воркеров
+            lockProvider.acquire(connection);
+            try {
+                Set<Integer> appliedVersions = migrationManager.getAppliedVersions(connection);
+                List<ParallelMigrationScheduler.MigrationNode> pendingMigrations = new ArrayList<>();
+                for (MigrationFileDescriptor migration : migrations) {
+                    File file = migration.getFile();
+                    Integer scriptVersion = migration.getVersion();
+                    if (!appliedVersions.contains(scriptVersion)) {
+                        MigrationMetadata metadata = readMetadata(file);
+                        pendingMigrations.add(new ParallelMigrationScheduler.MigrationNode(file, scriptVersion, metadata));
+                    }
+                }
+                if (pendingMigrations.isEmpty()) {
+                    log.info("Schema is up to date");
+                    return true;
+                }
+
+                ParallelMigrationScheduler scheduler = new ParallelMigrationScheduler(effectiveParallelism(parallelism),
+                        (workerConnection, file, version) -> executeMigrationFile(workerConnection, file, version, run),
+                        ConnectionManager::get);
+                if (scheduler.run(pendingMigrations, appliedVersions)) {
+                    log.info("Migration executed successfully");
+                    return true;
+                }
+                log.error("Migration failed, changes of the failed migrations were rolled back.");
+                return false;
+            } finally {
+                releaseLock(connection);
+                migrationManager.savePlanCache();
+                // Часть миграций могла быть зафиксирована даже при ошибке
+                SchemaStateCache.getInstance().invalidate();
             }
+        } catch (SQLException | LockException | UncheckedIOException e) {
+            log.error("Error! Failed to process migration files: ", e);
         } catch (IllegalArgumentException e) {
             log.error(e.getMessage());
+        } catch (IllegalStateException e) {
+            // Непредвиденная ошибка воркера не должна прерывать запуск мимо метрик
+            log.error("Error! Migration worker failed: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while applying migrations");
+        }
+        return false;
+    }
+
+    // Одно соединение пула занято координатором, поэтому воркеров не больше, чем оставшихся соединений
+    private int effectiveParallelism(int parallelism) {
+        int availableConnections = ConnectionManager.getPoolMetrics().getMaxConnections() - 1;
+        return Math.max(1, Math.min(parallelism, availableConnections));
+    }
+
+    /** *
+     * Checks that applied migrations were not changed after they had been applied: checksums of the files
+     * are compared with the ones stored in schema_history_table (loaded with a single query). Files are
+     * hashed in parallel, and with the plan cache enabled unchanged files are not read at all.
+     * Migrations applied before checksums of the content were recorded (the checksum equals the hash of
+     * the file name) are skipped
+     *
+     * @param directoryPath the directory containing migration files
+     * @return descriptions of found problems, empty if all applied migrations match the files
+     * */
+    public List<String> validate(String directoryPath) {
+        List<MigrationFileDescriptor> migrations = migrationManager.findAndSortMigrations(directoryPath);
+        Map<Integer, Integer> appliedChecksums;
+        try (Connection connection = ConnectionManager.get()) {
+            appliedChecksums = migrationManager.getAppliedChecksums(connection);
+        } catch (SQLException | ConnectionPoolException e) {
+            log.error("Error! Failed to read applied migrations: ", e);
+            return List.of("Failed to read applied migrations: " + e.getMessage());
+        }
+
+        Map<Integer, File> filesByVersion = new HashMap<>();
+        for (MigrationFileDescriptor migration : migrations) {
+            filesByVersion.put(migration.getVersion(), migration.getFile());
+        }
+        List<String> problems = new ArrayList<>();
+        for (Integer version : appliedChecksums.keySet()) {
+            if (!filesByVersion.containsKey(version)) {
+                problems.add("Applied migration V" + version + " is missing in " + directoryPath);
+            }
+        }
+
+        List<String> mismatches = filesByVersion.entrySet().parallelStream()
+                .filter(entry -> appliedChecksums.get(entry.getKey()) != null)
+                .map(entry -> checkChecksum(entry.getValue(), appliedChecksums.get(entry.getKey())))
+                .filter(Objects::nonNull)
+                .sorted()
+                .toList();
+        problems.addAll(mismatches);
+        migrationManager.savePlanCache();
+
+        problems.forEach(problem -> log.error("Validation failed: {}", problem));
+        if (problems.isEmpty()) {
+            log.info("Validated {} applied migrations", appliedChecksums.size());
+        }
+        return problems;
+    }
+
+    private String checkChecksum(File file, int appliedChecksum) {
+        // Миграции, примененные до появления контрольных сумм содержимого, хранят хеш имени файла
+        if (appliedChecksum == file.getName().hashCode()) {
+            return null;
+        }
+        try {
+            int checksum = migrationManager.calculateChecksum(file);
+            return checksum == appliedChecksum ? null : file.getName()
+                    + " was changed after it had been applied (checksum " + appliedChecksum + ", on disk " + checksum + ")";
+        } catch (UncheckedIOException e) {
+            return file.getName() + " can't be read: " + e.getMessage();
+        }
+    }
+
+    /** *
+     * Dry run: estimates the cost of pending migrations without applying them (see {@link MigrationCostPlanner}).
+     * DML statements are explained with EXPLAIN (not ANALYZE) in a transaction that is rolled back,
+     * DDL statements locking tables with more than db.migration.cost.large.table.rows rows are reported
+     *
+     * @param directoryPath the directory containing migration files
+     * @return estimates of pending migrations, the most expensive migration first
+     * @throws IllegalStateException if the database can't be accessed
+     * */
+    public List<MigrationCostEstimate> plan(String directoryPath) {
+        List<MigrationFileDescriptor> migrations = migrationManager.findAndSortMigrations(directoryPath);
+        try (Connection connection = ConnectionManager.get()) {
+            int currentVersion = migrationManager.getCurrentVersion(connection);
+            List<MigrationFileDescriptor> pendingMigrations = migrations.stream()
+                    .filter(migration -> migrationManager.shouldApplyMigration(currentVersion, migration.getVersion()))
+                    .toList();
+            List<MigrationCostEstimate> plan = migrationCostPlanner.plan(connection, pendingMigrations);
+            if (plan.isEmpty()) {
+                log.info("Schema is up to date");
+            }
+            plan.forEach(estimate -> log.info("Plan: {}", estimate));
+            return plan;
+        } catch (SQLException | ConnectionPoolException e) {
+            log.error("Error! Failed to plan migrations: ", e);
+            throw new IllegalStateException("Failed to plan migrations", e);
         }
     }
 
@@ -96,16 +458,17 @@ public class MigrationExecutor implements Executor {
      * */
     @Override
     public boolean executeSql(Connection connection, List<String> sqlCommands, String script, Integer version) {
-        try {
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
             validateExecuteSqlParams(connection, sqlCommands, script, version);
             log.info("Started executing migration");
 
             for (String sql : sqlCommands) {
-                if (!executeSingleMigration(connection, sql, script, version)) {
+                if (!executeSingleMigration(connection, historyWriter, sql, script, version)) {
                     return false;
                 }
             }
 
+            historyWriter.flush();
             return true;
         } catch (SQLException | IllegalArgumentException e) {
             log.error("Migration execution failed: ", e);
@@ -121,26 +484,270 @@ public class MigrationExecutor implements Executor {
         checkNotNull(version, "Provided db version");
     }
 
-    private boolean executeSingleMigration(Connection connection, String sql, String script,
-                                           Integer version) throws SQLException {
+    // Общая транзакция фиксируется перед миграциями, которые управляют транзакциями сами
+    private boolean applyMigration(Connection connection, SchemaHistoryWriter historyWriter, File file,
+                                   Integer version, MigrationCancellation run) throws SQLException {
+        MigrationMetadata metadata;
+        try {
+            metadata = readMetadata(file);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            log.error("Migration execution failed: ", e);
+            return false;
+        }
+        if (metadata.getTransactionMode() == TransactionMode.SHARED && metadata.getChunkKey() == null) {
+            return executeMigrationFile(connection, historyWriter, file, version, metadata, run);
+        }
+        historyWriter.flush();
+        connection.commit();
+        if (!executeMigrationFile(connection, historyWriter, file, version, metadata, run)) {
+            return false;
+        }
+        historyWriter.flush();
+        connection.commit();
+        return true;
+    }
+
+    /**
+     * Executes SQL statements of the migration file, reading them lazily, and updates the schema history table.
+     * Migrations declaring "-- @transaction: none" are executed statement by statement in autocommit mode,
+     * the caller must not have uncommitted changes in this case
+     * @param connection the database connection
+     * @param file the migration file
+     * @param version the version of the migration
+     * @return true if the SQL execution was successful, false otherwise
+     * */
+    public boolean executeMigrationFile(Connection connection, File file, Integer version) {
+        return executeMigrationFile(connection, file, version, MigrationCancellation.NONE);
+    }
+
+    private boolean executeMigrationFile(Connection connection, File file, Integer version,
+                                         MigrationCancellation run) {
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+            if (!executeMigrationFile(connection, historyWriter, file, version, readMetadata(file), run)) {
+                return false;
+            }
+            historyWriter.flush();
+            return true;
+        } catch (SQLException | IllegalArgumentException | UncheckedIOException e) {
+            log.error("Migration execution failed: ", e);
+            return false;
+        }
+    }
+
+    private boolean executeMigrationFile(Connection connection, SchemaHistoryWriter historyWriter, File file,
+                                         Integer version, MigrationMetadata metadata, MigrationCancellation run) {
+        long startTime = System.nanoTime();
+        boolean success = executeMigrationFileInMode(connection, historyWriter, file, version, metadata, run);
+        MigrationMetrics.migrationExecuted(file.getName(), System.nanoTime() - startTime, success);
+        return success;
+    }
+
+    private boolean executeMigrationFileInMode(Connection connection, SchemaHistoryWriter historyWriter, File file,
+                                               Integer version, MigrationMetadata metadata,
+                                               MigrationCancellation run) {
+        if (metadata.getChunkKey() != null) {
+            return executeChunkedMigrationFile(file, version, metadata, run);
+        }
+        if (metadata.getTransactionMode() == TransactionMode.NONE
+                || metadata.getTransactionMode() == TransactionMode.PER_STATEMENT) {
+            return executeResumableMigrationFile(connection, file, version, metadata);
+        }
+        try (Stream<String> statements = migrationFileReader.streamDbMigrationStatements(file)) {
+            checkNotNull(connection);
+            checkNotNull(version, "Provided db version");
+            log.info("Started executing migration");
+
+            return applyStatements(connection, historyWriter, statements.iterator(), metadata, file.getName(),
+                    version);
+        } catch (SQLException | IllegalArgumentException | UncheckedIOException e) {
+            log.error("Migration execution failed: ", e);
+            return false;
+        }
+    }
+
+    // Миграция выполняется частями на отдельном соединении пула, каждая часть фиксируется сама
+    private boolean executeChunkedMigrationFile(File file, Integer version, MigrationMetadata metadata,
+                                                MigrationCancellation run) {
+        List<String> statements;
+        try (Stream<String> statementStream = migrationFileReader.streamDbMigrationStatements(file)) {
+            statements = statementStream.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            log.error("Migration execution failed: ", e);
+            return false;
+        }
+        log.info("Started executing migration {} in chunks", file.getName());
+        return chunkedMigrationRunner.run(file.getName(), version, metadata, statements, run::isPauseRequested);
+    }
+
+    // Выражения выполняются по одному: пакет JDBC выполняется сервером как одна неявная транзакция.
+    // После каждого выражения сохраняется контрольная точка, и повторный запуск продолжает с первого
+    // невыполненного выражения. В режиме 'none' выражение и точка фиксируются отдельно, поэтому после сбоя
+    // между ними последнее выражение может быть выполнено повторно
+    private boolean executeResumableMigrationFile(Connection connection, File file, Integer version,
+                                                  MigrationMetadata metadata) {
+        String script = file.getName();
+        try {
+            checkNotNull(connection);
+            checkNotNull(version, "Provided db version");
+            checkNotNullMigrationAuthorAndDescription(metadata.getInstalledBy(), metadata.getDescription());
+        } catch (IllegalArgumentException e) {
+            log.error("Migration execution failed: ", e);
+            return false;
+        }
+
+        boolean perStatement = metadata.getTransactionMode() == TransactionMode.PER_STATEMENT;
+        MigrationTimeouts timeouts = migrationTimeouts.forMigration(metadata);
+        boolean recordStarted = false;
+        long startTime = System.currentTimeMillis();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            try (Stream<String> statements = migrationFileReader.streamDbMigrationStatements(file);
+                 MigrationProgress progress = MigrationProgress.load(connection, version, script)) {
+                // Вне транзакции значения действуют до конца сессии и сбрасываются в finally
+                timeouts.apply(connection);
+                log.info("Started executing migration {} {}", script,
+                        perStatement ? "committing every statement" : "without transaction");
+                startSchemaHistoryRecord(connection, version, metadata.getDescription(), script,
+                        metadata.getInstalledBy());
+                recordStarted = true;
+
+                MigrationChecksum checksum = new MigrationChecksum();
+                Iterator<String> iterator = checksum.track(statements.iterator());
+                int executed = skipCompletedStatements(iterator, checksum, progress, script);
+                connection.setAutoCommit(!perStatement);
+                while (iterator.hasNext()) {
+                    try (Statement statement = connection.createStatement()) {
+                        long statementStartTime = System.nanoTime();
+                        timeouts.execute(connection, statement, iterator.next());
+                        MigrationMetrics.statementExecuted(System.nanoTime() - statementStartTime,
+                                Math.max(0, statement.getUpdateCount()));
+                    }
+                    progress.checkpoint(++executed, checksum.getValue());
+                    if (perStatement) {
+                        connection.commit();
+                    }
+                }
+                progress.complete();
+                finishSchemaHistoryRecord(connection, version, script, checksum.getValue(),
+                        (int) (System.currentTimeMillis() - startTime), (int) timeouts.getLockWaitMillis(), true);
+                if (perStatement) {
+                    connection.commit();
+                }
+                log.info("Successfully applied migration {} ({} statements)", script, executed);
+                log.info("Migrating current schema to version {}", version);
+                return true;
+            } finally {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+                if (timeouts.isEnabled()) {
+                    connection.setAutoCommit(true);
+                    timeouts.reset(connection);
+                }
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | UncheckedIOException | IllegalStateException e) {
+            log.error("Migration execution failed, already executed statements of {} are kept: ", script, e);
+            if (recordStarted) {
+                markFailed(connection, version, script, startTime, timeouts.getLockWaitMillis());
+            }
+            return false;
+        }
+    }
+
+    // Выражения, выполненные при предыдущем запуске, пропускаются, если файл с тех пор не изменился
+    private int skipCompletedStatements(Iterator<String> statements, MigrationChecksum checksum,
+                                        MigrationProgress progress, String script) {
+        int completed = progress.getCompletedStatements();
+        int skipped = 0;
+        while (skipped < completed && statements.hasNext()) {
+            statements.next();
+            skipped++;
+        }
+        if (completed > 0) {
+            if (skipped < completed || checksum.getValue() != progress.getCompletedChecksum()) {
+                throw new IllegalStateException("Migration " + script + " was changed after " + completed
+                        + " of its statements had been executed. Delete its row from schema_migration_progress"
+                        + " to apply it from the beginning");
+            }
+            log.info("Resuming migration {} from statement {}", script, completed + 1);
+        }
+        return skipped;
+    }
+
+    private void markFailed(Connection connection, Integer version, String script, long startTime,
+                            long lockWaitMillis) {
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            try {
+                finishSchemaHistoryRecord(connection, version, script, null,
+                        (int) (System.currentTimeMillis() - startTime), (int) lockWaitMillis, false);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            log.error("Error! Failed to mark migration {} as failed: ", script, e);
+        }
+    }
+
+    private MigrationMetadata readMetadata(File file) {
+        return migrationManager.readMigrationMetadata(file);
+    }
+
+    private boolean executeSingleMigration(Connection connection, SchemaHistoryWriter historyWriter, String sql,
+                                           String script, Integer version) throws SQLException {
         MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata(sql);
+        return applyStatements(connection, historyWriter, SqlStatementSplitter.split(sql).iterator(), metadata,
+                script, version);
+    }
+
+    private boolean applyStatements(Connection connection, SchemaHistoryWriter historyWriter,
+                                    Iterator<String> statements, MigrationMetadata metadata, String script,
+                                    Integer version) throws SQLException {
+        // Метаданные проверяются до выполнения, чтобы не откатывать долгую миграцию из-за их отсутствия
+        checkNotNullMigrationAuthorAndDescription(metadata.getInstalledBy(), metadata.getDescription());
         long startTime = System.currentTimeMillis();
 
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(sql);
-            log.info("Successfully applied 1 migration: {}", sql);
+        // Контрольная сумма считается по ходу выполнения, без повторного чтения файла
+        MigrationChecksum checksum = new MigrationChecksum();
+        MigrationTimeouts timeouts = migrationTimeouts.forMigration(metadata);
+        timeouts.apply(connection);
+        int executed;
+        try {
+            executed = sqlBatchExecutor.execute(connection, checksum.track(statements), timeouts);
+        } catch (SQLException e) {
+            // Откат транзакции отменяет и SET, в режиме autocommit значения сбрасываются явно
+            if (connection.getAutoCommit()) {
+                timeouts.reset(connection);
+            }
+            throw e;
+        }
+        timeouts.reset(connection);
+        log.info("Successfully applied migration {} ({} statements)", script, executed);
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        historyWriter.addRecord(version,
+                metadata.getDescription(),
+                script,
+                checksum.getValue(),
+                metadata.getInstalledBy(),
+                (int) executionTime,
+                (int) timeouts.getLockWaitMillis(),
+                true,
+                "applied");
 
-            long executionTime = System.currentTimeMillis() - startTime;
-            updateSchemaHistoryTable(connection, version,
-                    metadata.getDescription(),
-                    script,
-                    metadata.getInstalledBy(),
-                    (int) executionTime,
-                    true,
-                    "applied");
+        log.info("Migrating current schema to version {}", version);
+        return true;
+    }
 
-            log.info("Migrating current schema to version {}", version);
-            return true;
+    // Блокировка снимается в той же сессии, в которой была получена; если снять не удалось, сессия прерывается
+    private void releaseLock(Connection connection) {
+        try {
+            LockProvider.releaseOrAbort(lockProvider, connection);
+        } catch (SQLException e) {
+            log.error("Error! Failed to release lock, the connection is discarded: ", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package executor;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/** *
+ * Result of applying migrations to one target (a schema or a database): versions applied by the run
+ * (or rolled back, for rollbacks), its duration and the cause of the failure, if any
+ * */
+@Getter
+public class MigrationResult {
+    // Цель запусков на основном источнике данных (db.url)
+    public static final String DEFAULT_TARGET = "default";
+
+    private final String target;
+    private final List<Integer> appliedVersions;
+    private final long durationMillis;
+    // null, если миграции применены успешно
+    private final Throwable failureCause;
+
+    private MigrationResult(String target, List<Integer> appliedVersions, long durationMillis,
+                            Throwable failureCause) {
+        this.target = target;
+        this.appliedVersions = List.copyOf(appliedVersions);
+        this.durationMillis = durationMillis;
+        this.failureCause = failureCause;
+    }
+
+    public static MigrationResult succeeded(String target, List<Integer> appliedVersions, long durationMillis) {
+        return new MigrationResult(target, appliedVersions, durationMillis, null);
+    }
+
+    public static MigrationResult failed(String target, List<Integer> appliedVersions, long durationMillis,
+                                         Throwable failureCause) {
+        return new MigrationResult(target, appliedVersions, durationMillis, failureCause);
+    }
+
+    public boolean isSuccess() {
+        return failureCause == null;
+    }
+
+    @Override
+    public String toString() {
+        return target + ": " + (isSuccess() ? "success" : "failed (" + failureCause.getMessage() + ")")
+                + ", applied " + appliedVersions + " in " + durationMillis + " ms";
+    }
+}
@@ -0,0 +1,218 @@
+package executor;
+
+import lock.LockProvider;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+import parser.MigrationFileDescriptor;
+import reader.MigrationFileReader;
+import reader.PreloadedMigrationFileReader;
+import utils.MigrationManager;
+import utils.MigrationProgress;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static utils.SchemaHistoryUtil.createSchemaHistoryTable;
+
+/** *
+ * Migrations of a directory read into memory once and applied to several targets (schemas or databases)
+ * */
+@Slf4j
+final class MigrationSet {
+    @Getter
+    private final List<MigrationFileDescriptor> migrations;
+    private final PreloadedMigrationFileReader reader;
+    @Getter
+    private final MigrationManager manager;
+
+    private MigrationSet(List<MigrationFileDescriptor> migrations, PreloadedMigrationFileReader reader) {
+        this.migrations = migrations;
+        this.reader = reader;
+        this.manager = new MigrationManager(reader, null);
+    }
+
+    /** *
+     * Reading migrations of the directory
+     *
+     * @param fileReader reader of migration files
+     * @param migrationManager manager used to find and validate migration files
+     * @param directoryPath the directory containing migration files
+     * @return migrations read into memory
+     * @throws java.io.UncheckedIOException if migration files can't be read
+     * */
+    static MigrationSet load(MigrationFileReader fileReader, MigrationManager migrationManager,
+                             String directoryPath) {
+        List<MigrationFileDescriptor> migrations = migrationManager.findAndSortMigrations(directoryPath);
+        return new MigrationSet(migrations, PreloadedMigrationFileReader.load(fileReader, migrations));
+    }
+
+    /** *
+     * Getting the first migration executed in key range chunks ("-- @chunk-key")
+     *
+     * @return chunked migration or null if there are no such migrations
+     * */
+    MigrationFileDescriptor findChunkedMigration() {
+        for (MigrationFileDescriptor migration : migrations) {
+            if (manager.readMigrationMetadata(migration.getFile()).getChunkKey() != null) {
+                return migration;
+            }
+        }
+        return null;
+    }
+
+    /** *
+     * Creating the executor of the migrations
+     *
+     * @param connectionSupplier source of dedicated connections of the target for chunked migrations
+     * @return executor reading the migrations from memory
+     * */
+    MigrationExecutor newExecutor(Supplier<Connection> connectionSupplier) {
+        // Блокировку цели берет вызывающий код, блокировка исполнителя не используется
+        return new MigrationExecutor(reader, manager, null, connectionSupplier);
+    }
+
+    /** *
+     * Applying pending migrations to the target under its lock. History tables are created if they don't exist
+     *
+     * @param target name of the target
+     * @param connection connection to the target
+     * @param executor executor of the migrations
+     * @param lockProvider lock of the target
+     * @param startTime time the target processing started at
+     * @return result of the target
+     * @throws SQLException if a database access error occurs
+     * */
+    MigrationResult applyTo(String target, Connection connection, MigrationExecutor executor,
+                            LockProvider lockProvider, long startTime) throws SQLException {
+        createSchemaHistoryTable(connection);
+        MigrationProgress.createMigrationProgressTable(connection);
+        lockProvider.acquire(connection);
+        try {
+            Set<Integer> appliedBefore = manager.getAppliedVersions(connection);
+            MigrationFileDescriptor failed = executor.applyPendingMigrations(connection, migrations);
+            List<Integer> applied = manager.getVersionsChangedSince(connection, appliedBefore, false);
+            long duration = System.currentTimeMillis() - startTime;
+            if (failed != null) {
+                return MigrationResult.failed(target, applied, duration,
+                        new IllegalStateException("Migration " + failed.getName() + " failed"));
+            }
+            log.info("{} is migrated, applied {} migrations", target, applied.size());
+            return MigrationResult.succeeded(target, applied, duration);
+        } finally {
+            LockProvider.releaseOrAbort(lockProvider, connection);
+        }
+    }
+
+    /** *
+     * Migrating the targets concurrently. Workers are virtual threads when the JVM provides them (Java 21+),
+     * platform daemon threads of a fixed pool otherwise; a semaphore keeps at most parallelism targets in progress
+     *
+     * @param targets names of the targets
+     * @param parallelism maximum number of targets migrated at the same time
+     * @param threadNamePrefix prefix of the worker thread names
+     * @param migration migrates one target, handling expected errors itself
+     * @return results of the targets in the order of the given names
+     * @throws InterruptedException if the current thread is interrupted while waiting for targets
+     * */
+    static List<MigrationResult> migrateAll(List<String> targets, int parallelism, String threadNamePrefix,
+                                            Function<String, MigrationResult> migration)
+            throws InterruptedException {
+        if (targets.isEmpty()) {
+            return List.of();
+        }
+        int workerCount = Math.min(parallelism, targets.size());
+        ExecutorService workers = newWorkers(workerCount, threadNamePrefix);
+        // Виртуальные потоки создаются на каждую цель, одновременно мигрируются не больше workerCount целей
+        Semaphore permits = new Semaphore(workerCount);
+        try {
+            List<Callable<MigrationResult>> tasks = new ArrayList<>(targets.size());
+            for (String target : targets) {
+                tasks.add(() -> {
+                    permits.acquire();
+                    try {
+                        return migration.apply(target);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            List<Future<MigrationResult>> futures = workers.invokeAll(tasks);
+            List<MigrationResult> results = new ArrayList<>(targets.size());
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(getResult(futures.get(i), targets.get(i)));
+            }
+            return results;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Библиотека собирается под Java 16, поэтому API виртуальных потоков вызывается через рефлексию
+    private static ExecutorService newWorkers(int workerCount, String threadNamePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            // Java 17 или виртуальные потоки в режиме preview не включены
+            log.debug("Virtual threads are not available, using a fixed thread pool: {}", e.toString());
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Ожидаемые ошибки обрабатываются при миграции цели, сюда попадают только непредвиденные
+    private static MigrationResult getResult(Future<MigrationResult> future, String target)
+            throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            log.error("Error! Failed to migrate {}: ", target, e.getCause());
+            return MigrationResult.failed(target, List.of(), 0, e.getCause());
+        }
+    }
+
+    /** *
+     * Writing the summary of the results to the log and reporting the runs to migration metrics
+     *
+     * @param results results of the targets
+     * @param targetKind kind of the targets for the log, e.g. "schemas"
+     * */
+    static void logSummary(List<MigrationResult> results, String targetKind) {
+        for (MigrationResult result : results) {
+            MigrationMetrics.runFinished(result.getTarget(), TimeUnit.MILLISECONDS.toNanos(result.getDurationMillis()),
+                    result.isSuccess());
+        }
+        long failed = results.stream().filter(result -> !result.isSuccess()).count();
+        if (failed == 0) {
+            log.info("All {} {} are migrated successfully", results.size(), targetKind);
+            return;
+        }
+        log.error("Migration failed for {} of {} {}", failed, results.size(), targetKind);
+        results.stream()
+                .filter(result -> !result.isSuccess())
+                .forEach(result -> log.error("{}", result));
+    }
+}
@@ -0,0 +1,200 @@
+package executor;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import parser.MigrationMetadata;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Set;
+
+import static parser.SqlStatementSplitter.leadingKeyword;
+
+/** *
+ * lock_timeout and statement_timeout guards of one migration. Global values are taken from
+ * db.migration.lock.timeout and db.migration.statement.timeout (milliseconds, 0 - the server default),
+ * "-- @lock-timeout" and "-- @statement-timeout" header directives override them for one migration.
+ * A DDL statement failing with a lock timeout (SQLSTATE 55P03) is retried alone, inside a savepoint when
+ * the migration runs in a transaction, up to db.migration.lock.retries times with exponential backoff
+ * starting at db.migration.lock.retry.backoff milliseconds. Time lost to lock timeouts and backoff
+ * is recorded in the lock_wait_time column of schema_history_table
+ * */
+@Slf4j
+@Getter
+public class MigrationTimeouts {
+    private static final String LOCK_TIMEOUT_KEY = "db.migration.lock.timeout";
+    private static final String STATEMENT_TIMEOUT_KEY = "db.migration.statement.timeout";
+    private static final String LOCK_RETRIES_KEY = "db.migration.lock.retries";
+    private static final String RETRY_BACKOFF_KEY = "db.migration.lock.retry.backoff";
+    private static final int DEFAULT_LOCK_RETRIES = 3;
+    private static final int DEFAULT_RETRY_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    // DML пакетируется и не повторяется: повтор защищает DDL, которому нужна блокировка всей таблицы
+    private static final Set<String> DML_KEYWORDS = Set.of("INSERT", "UPDATE", "DELETE", "MERGE");
+
+    static final MigrationTimeouts NONE = new MigrationTimeouts(0, 0, 0, 0);
+
+    private final int lockTimeoutMillis;
+    private final int statementTimeoutMillis;
+    private final int lockRetries;
+    private final int retryBackoffMillis;
+    // Время, потерянное на ожидание блокировок: неудачные попытки и паузы между ними
+    private long lockWaitMillis;
+
+    /** *
+     * @param lockTimeoutMillis lock_timeout of the statements, 0 - the server default
+     * @param statementTimeoutMillis statement_timeout of the statements, 0 - the server default
+     * @param lockRetries number of retries of a statement failed with a lock timeout
+     * @param retryBackoffMillis pause before the first retry, doubled before every next one
+     * */
+    public MigrationTimeouts(int lockTimeoutMillis, int statementTimeoutMillis, int lockRetries,
+                             int retryBackoffMillis) {
+        if (lockTimeoutMillis < 0 || statementTimeoutMillis < 0 || lockRetries < 0 || retryBackoffMillis < 0) {
+            throw new IllegalArgumentException("Timeouts, retries and backoff must not be negative");
+        }
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.statementTimeoutMillis = statementTimeoutMillis;
+        this.lockRetries = lockRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    /** *
+     * Creating the global timeouts from application properties
+     * */
+    public static MigrationTimeouts fromProperties() {
+        return new MigrationTimeouts(PropertiesUtils.getInt(LOCK_TIMEOUT_KEY, 0),
+                PropertiesUtils.getInt(STATEMENT_TIMEOUT_KEY, 0),
+                PropertiesUtils.getInt(LOCK_RETRIES_KEY, DEFAULT_LOCK_RETRIES),
+                PropertiesUtils.getInt(RETRY_BACKOFF_KEY, DEFAULT_RETRY_BACKOFF_MILLIS));
+    }
+
+    /** *
+     * Getting the timeouts of one migration
+     *
+     * @param metadata metadata of the migration, its @lock-timeout and @statement-timeout override global values
+     * @return new timeouts with no lock wait time counted yet
+     * */
+    public MigrationTimeouts forMigration(MigrationMetadata metadata) {
+        return new MigrationTimeouts(
+                metadata.getLockTimeoutMillis() != null ? metadata.getLockTimeoutMillis() : lockTimeoutMillis,
+                metadata.getStatementTimeoutMillis() != null
+                        ? metadata.getStatementTimeoutMillis() : statementTimeoutMillis,
+                lockRetries, retryBackoffMillis);
+    }
+
+    public boolean isEnabled() {
+        return lockTimeoutMillis > 0 || statementTimeoutMillis > 0;
+    }
+
+    /** *
+     * Setting the timeouts for the session. Inside a transaction the values are reverted by its rollback,
+     * otherwise {@link #reset(Connection)} must be called
+     *
+     * @param connection the database connection
+     * */
+    public void apply(Connection connection) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            if (lockTimeoutMillis > 0) {
+                statement.execute("SET lock_timeout = " + lockTimeoutMillis);
+            }
+            if (statementTimeoutMillis > 0) {
+                statement.execute("SET statement_timeout = " + statementTimeoutMillis);
+            }
+        }
+    }
+
+    /** *
+     * Restoring the server defaults changed by {@link #apply(Connection)}, so the pooled connection
+     * doesn't keep the timeouts of the migration
+     *
+     * @param connection the database connection
+     * */
+    public void reset(Connection connection) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            if (lockTimeoutMillis > 0) {
+                statement.execute("RESET lock_timeout");
+            }
+            if (statementTimeoutMillis > 0) {
+                statement.execute("RESET statement_timeout");
+            }
+        }
+    }
+
+    /** *
+     * Checking whether the statement is retried after a lock timeout. Such statements are not batched
+     *
+     * @param sql single sql statement
+     * @return true for DDL statements when the lock timeout and retries are set
+     * */
+    public boolean isRetried(String sql) {
+        return lockTimeoutMillis > 0 && lockRetries > 0 && !DML_KEYWORDS.contains(leadingKeyword(sql));
+    }
+
+    /** *
+     * Executing the statement, retrying it after lock timeouts (see {@link #isRetried(String)}).
+     * Only the failed statement is retried: in a transaction it is executed inside a savepoint
+     *
+     * @param connection the database connection
+     * @param statement statement object of the connection
+     * @param sql single sql statement
+     * @throws SQLException if the statement fails, or still times out after all retries
+     * */
+    public void execute(Connection connection, Statement statement, String sql) throws SQLException {
+        if (!isRetried(sql)) {
+            statement.execute(sql);
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            long startTime = System.currentTimeMillis();
+            try {
+                statement.execute(sql);
+                if (savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                }
+                return;
+            } catch (SQLException e) {
+                if (!LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                    throw e;
+                }
+                lockWaitMillis += System.currentTimeMillis() - startTime;
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+                if (attempt > lockRetries) {
+                    log.error("Lock timeout ({} ms), giving up after {} attempts: {}", lockTimeoutMillis, attempt,
+                            sql);
+                    throw e;
+                }
+                long backoff = backoffMillis(attempt);
+                log.warn("Lock timeout ({} ms) on attempt {} of {}, retrying in {} ms: {}", lockTimeoutMillis,
+                        attempt, lockRetries + 1, backoff, sql);
+                pause(backoff, e);
+                lockWaitMillis += backoff;
+            }
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        return Math.min(MAX_BACKOFF_MILLIS, (long) retryBackoffMillis << Math.min(attempt - 1, 20));
+    }
+
+    private static void pause(long millis, SQLException cause) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
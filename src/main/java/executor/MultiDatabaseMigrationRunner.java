@@ -0,0 +1,133 @@
+package executor;
+
+import exception.ConnectionPoolException;
+import exception.LockException;
+import lock.LockProvider;
+import lock.TableLockProvider;
+import lombok.extern.slf4j.Slf4j;
+import reader.MigrationFileReader;
+import utils.ConnectionManager;
+import utils.MigrationManager;
+import utils.PropertiesUtils;
+
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static utils.MigrationLockUtil.ensureMigrationLockTable;
+
+/** *
+ * Applies one migration set to every data source listed in db.datasources (e.g. database shards),
+ * each one through its own connection pool (see {@link ConnectionManager#get(String)}) and under its own
+ * migration lock. Migration files are read once, data sources are migrated concurrently, no more than
+ * db.migration.datasource.parallelism at a time. With db.migration.canary.first=true the first listed data
+ * source is migrated alone before the others, and the others are not migrated if it fails.
+ * A failure of one data source doesn't stop the others, the result of every data source is reported
+ * (see utils.MigrationReportGenerator#generateCsvSummary)
+ * */
+@Slf4j
+public class MultiDatabaseMigrationRunner {
+    private static final String PARALLELISM_KEY = "db.migration.datasource.parallelism";
+    private static final String CANARY_FIRST_KEY = "db.migration.canary.first";
+
+    private final MigrationFileReader migrationFileReader;
+    private final MigrationManager migrationManager;
+    private final List<String> dataSources;
+    private final int parallelism;
+    private final boolean canaryFirst;
+    private final Function<String, Connection> connections;
+    private final LockProvider lockProvider;
+
+    /** *
+     * Creating the runner for the data sources from application properties. All data sources
+     * are migrated at the same time unless db.migration.datasource.parallelism is set
+     * */
+    public MultiDatabaseMigrationRunner(MigrationFileReader fileReader, MigrationManager migrationManager) {
+        this(fileReader, migrationManager, ConnectionManager.getDataSourceNames(),
+                PropertiesUtils.getInt(PARALLELISM_KEY, Math.max(1, ConnectionManager.getDataSourceNames().size())),
+                PropertiesUtils.getBoolean(CANARY_FIRST_KEY, false), ConnectionManager::get,
+                LockProvider.fromProperties());
+    }
+
+    /** *
+     * @param dataSources names of the data sources in the order they are migrated
+     * @param parallelism maximum number of data sources migrated at the same time
+     * @param canaryFirst true to migrate the first data source before the others
+     * @param connections source of connections by the data source name
+     * @param lockProvider migration lock, taken in every data source
+     * */
+    public MultiDatabaseMigrationRunner(MigrationFileReader fileReader, MigrationManager migrationManager,
+                                        List<String> dataSources, int parallelism, boolean canaryFirst,
+                                        Function<String, Connection> connections, LockProvider lockProvider) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, but was: " + parallelism);
+        }
+        this.migrationFileReader = fileReader;
+        this.migrationManager = migrationManager;
+        this.dataSources = List.copyOf(dataSources);
+        this.parallelism = parallelism;
+        this.canaryFirst = canaryFirst;
+        this.connections = connections;
+        this.lockProvider = lockProvider;
+    }
+
+    /** *
+     * Applying pending migrations of the directory to every data source
+     *
+     * @param directoryPath the directory containing migration files
+     * @return results of the data sources in the order they are listed
+     * @throws IllegalArgumentException if no data sources are configured
+     * @throws UncheckedIOException if migration files can't be read
+     * @throws InterruptedException if the current thread is interrupted while waiting for data sources
+     * */
+    public List<MigrationResult> migrate(String directoryPath) throws InterruptedException {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("No data sources are listed in db.datasources");
+        }
+        MigrationSet migrationSet = MigrationSet.load(migrationFileReader, migrationManager, directoryPath);
+        log.info("Migrating {} data sources with {} migrations, parallelism {}", dataSources.size(),
+                migrationSet.getMigrations().size(), parallelism);
+
+        List<MigrationResult> results = new ArrayList<>(dataSources.size());
+        List<String> remaining = dataSources;
+        if (canaryFirst && dataSources.size() > 1) {
+            String canary = dataSources.get(0);
+            log.info("Migrating canary data source {}", canary);
+            MigrationResult canaryResult = migrateDataSource(migrationSet, canary);
+            results.add(canaryResult);
+            remaining = dataSources.subList(1, dataSources.size());
+            if (!canaryResult.isSuccess()) {
+                log.error("Canary data source {} failed, other data sources are not migrated", canary);
+                for (String dataSource : remaining) {
+                    results.add(MigrationResult.failed(dataSource, List.of(), 0,
+                            new IllegalStateException("Not started: canary data source " + canary + " failed")));
+                }
+                MigrationSet.logSummary(results, "data sources");
+                return results;
+            }
+        }
+        results.addAll(MigrationSet.migrateAll(remaining, parallelism, "datasource-migration-worker-",
+                dataSource -> migrateDataSource(migrationSet, dataSource)));
+        MigrationSet.logSummary(results, "data sources");
+        return results;
+    }
+
+    private MigrationResult migrateDataSource(MigrationSet migrationSet, String dataSource) {
+        long startTime = System.currentTimeMillis();
+        try (Connection connection = connections.apply(dataSource)) {
+            if (lockProvider instanceof TableLockProvider) {
+                ensureMigrationLockTable(connection);
+            }
+            // Миграции, выполняемые частями, берут соединения из пула того же источника данных
+            MigrationExecutor executor = migrationSet.newExecutor(() -> connections.apply(dataSource));
+            return migrationSet.applyTo(dataSource, connection, executor, lockProvider, startTime);
+        } catch (SQLException | LockException | ConnectionPoolException | IllegalArgumentException
+                 | UncheckedIOException e) {
+            log.error("Error! Failed to migrate data source {}: ", dataSource, e);
+            return MigrationResult.failed(dataSource, List.of(), System.currentTimeMillis() - startTime, e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package executor;
+
+import exception.ConnectionPoolException;
+import exception.LockException;
+import lock.LockProvider;
+import lombok.extern.slf4j.Slf4j;
+import parser.MigrationFileDescriptor;
+import reader.MigrationFileReader;
+import reader.PreloadedMigrationFileReader;
+import utils.ConnectionManager;
+import utils.MigrationManager;
+import utils.PropertiesUtils;
+
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** *
+ * Applies one migration set to many schemas of the database (e.g. one schema per tenant). Migration files
+ * are read and split into statements once (see {@link PreloadedMigrationFileReader}), then schemas are
+ * migrated concurrently on a bounded thread pool, each one on its own pooled connection with search_path
+ * switched to the schema and under its own lock (see {@link LockProvider#forTarget(String)}).
+ * The search_path contains only the migrated schema, so objects of other schemas must be schema-qualified.
+ * A failure of one schema doesn't stop the others, the result of every schema is reported
+ * */
+@Slf4j
+public class MultiSchemaMigrationRunner {
+    private static final String SCHEMA_PARALLELISM_KEY = "db.migration.schema.parallelism";
+    private static final String RESET_SEARCH_PATH_SQL = "RESET search_path";
+
+    private final MigrationFileReader migrationFileReader;
+    private final MigrationManager migrationManager;
+    private final int parallelism;
+    private final Supplier<Connection> connectionSupplier;
+    private final Function<String, LockProvider> lockProviders;
+
+    /** *
+     * Creating the runner with the number of concurrently migrated schemas taken from
+     * the db.migration.schema.parallelism property (the size of the connection pool by default)
+     * */
+    public MultiSchemaMigrationRunner(MigrationFileReader fileReader, MigrationManager migrationManager) {
+        this(fileReader, migrationManager, PropertiesUtils.getInt(SCHEMA_PARALLELISM_KEY, maxConnections()));
+    }
+
+    /** *
+     * @param parallelism maximum number of schemas migrated at the same time, limited by the size
+     *                    of the connection pool (every schema is migrated on its own connection)
+     * */
+    public MultiSchemaMigrationRunner(MigrationFileReader fileReader, MigrationManager migrationManager,
+                                      int parallelism) {
+        this(fileReader, migrationManager, Math.max(1, Math.min(parallelism, maxConnections())),
+                ConnectionManager::get, LockProvider::forTarget);
+    }
+
+    public MultiSchemaMigrationRunner(MigrationFileReader fileReader, MigrationManager migrationManager,
+                                      int parallelism, Supplier<Connection> connectionSupplier,
+                                      Function<String, LockProvider> lockProviders) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, but was: " + parallelism);
+        }
+        this.migrationFileReader = fileReader;
+        this.migrationManager = migrationManager;
+        this.parallelism = parallelism;
+        this.connectionSupplier = connectionSupplier;
+        this.lockProviders = lockProviders;
+    }
+
+    /** *
+     * Applying pending migrations of the directory to every schema
+     *
+     * @param directoryPath the directory containing migration files
+     * @param schemas names of the schemas to migrate
+     * @return results of the schemas in the order of the given names
+     * @throws IllegalArgumentException if a schema name is blank or the set contains chunked migrations
+     * @throws UncheckedIOException if migration files can't be read
+     * @throws InterruptedException if the current thread is interrupted while waiting for schemas
+     * */
+    public List<MigrationResult> migrate(String directoryPath, List<String> schemas) throws InterruptedException {
+        for (String schema : schemas) {
+            if (schema == null || schema.isBlank()) {
+                throw new IllegalArgumentException("Schema name must not be blank");
+            }
+        }
+        MigrationSet migrationSet = MigrationSet.load(migrationFileReader, migrationManager, directoryPath);
+        // Части такой миграции выполняются на отдельных соединениях, без переключения search_path
+        MigrationFileDescriptor chunkedMigration = migrationSet.findChunkedMigration();
+        if (chunkedMigration != null) {
+            throw new IllegalArgumentException("Chunked migration " + chunkedMigration.getName()
+                    + " can't be applied to several schemas");
+        }
+        MigrationExecutor executor = migrationSet.newExecutor(connectionSupplier);
+        log.info("Migrating {} schemas with {} migrations, parallelism {}", schemas.size(),
+                migrationSet.getMigrations().size(), parallelism);
+
+        List<MigrationResult> results = MigrationSet.migrateAll(schemas, parallelism, "schema-migration-worker-",
+                schema -> migrateSchema(migrationSet, executor, schema));
+        MigrationSet.logSummary(results, "schemas");
+        return results;
+    }
+
+    private MigrationResult migrateSchema(MigrationSet migrationSet, MigrationExecutor executor, String schema) {
+        long startTime = System.currentTimeMillis();
+        try (Connection connection = connectionSupplier.get()) {
+            setSearchPath(connection, schema);
+            try {
+                return migrationSet.applyTo(schema, connection, executor, lockProviders.apply(schema), startTime);
+            } finally {
+                // Соединение возвращается в пул с исходным search_path
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(RESET_SEARCH_PATH_SQL);
+                }
+            }
+        } catch (SQLException | LockException | ConnectionPoolException | IllegalArgumentException
+                 | UncheckedIOException e) {
+            log.error("Error! Failed to migrate schema {}: ", schema, e);
+            return MigrationResult.failed(schema, List.of(), System.currentTimeMillis() - startTime, e);
+        }
+    }
+
+    private void setSearchPath(Connection connection, String schema) throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET search_path TO " + quoteIdentifier(schema));
+        }
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    private static int maxConnections() {
+        return ConnectionManager.getPoolMetrics().getMaxConnections();
+    }
+}
@@ -0,0 +1,231 @@
+package executor;
+
+import exception.ConnectionPoolException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import parser.MigrationMetadata;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/** *
+ * This class applies pending migrations concurrently, respecting dependencies between them.
+ * By default, a migration depends on the previous pending one (so the order is the same as in serial mode),
+ * "-- @independent" removes this dependency and "-- @depends: 3, 4" replaces it with the listed versions.
+ * Every migration runs in its own transaction on a separate connection. After the first failure no new
+ * migrations are started and the queries of the running ones are cancelled
+ * */
+@Slf4j
+public class ParallelMigrationScheduler {
+    private final int parallelism;
+    private final MigrationRunner migrationRunner;
+    private final Supplier<Connection> connectionSupplier;
+
+    /** *
+     * Applies a single migration file on the given connection (without committing it)
+     * */
+    @FunctionalInterface
+    public interface MigrationRunner {
+        boolean run(Connection connection, File file, Integer version);
+    }
+
+    public ParallelMigrationScheduler(int parallelism, MigrationRunner migrationRunner,
+                                      Supplier<Connection> connectionSupplier) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, but was: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.migrationRunner = migrationRunner;
+        this.connectionSupplier = connectionSupplier;
+    }
+
+    /** *
+     * Applying pending migrations
+     *
+     * @param pendingMigrations pending migrations sorted by version
+     * @param appliedVersions versions that are already applied (they satisfy dependencies)
+     * @return true if all the migrations were applied, false otherwise
+     * @throws InterruptedException if the current thread is interrupted while waiting for migrations
+     * */
+    public boolean run(List<MigrationNode> pendingMigrations, Set<Integer> appliedVersions)
+            throws InterruptedException {
+        buildDependencyGraph(pendingMigrations, appliedVersions);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "migration-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<MigrationStatus> completionService = new ExecutorCompletionService<>(workers);
+        Map<Integer, Connection> runningConnections = new ConcurrentHashMap<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        try {
+            int inFlight = 0;
+            for (MigrationNode node : pendingMigrations) {
+                if (node.remainingDependencies == 0) {
+                    submit(completionService, node, runningConnections, cancelled);
+                    inFlight++;
+                }
+            }
+
+            int applied = 0;
+            while (inFlight > 0) {
+                MigrationStatus status;
+                try {
+                    status = takeStatus(completionService);
+                } catch (IllegalStateException e) {
+                    // Остальные миграции не должны продолжаться после того, как координатор отпустит блокировку
+                    cancelRunning(runningConnections);
+                    throw e;
+                }
+                inFlight--;
+                if (status.applied) {
+                    applied++;
+                    if (cancelled.get()) {
+                        continue;
+                    }
+                    for (MigrationNode dependent : status.node.dependents) {
+                        if (--dependent.remainingDependencies == 0) {
+                            submit(completionService, dependent, runningConnections, cancelled);
+                            inFlight++;
+                        }
+                    }
+                } else if (cancelled.compareAndSet(false, true)) {
+                    log.error("Migration {} failed, cancelling {} running migration(s)",
+                            status.node.file.getName(), runningConnections.size());
+                    cancelRunning(runningConnections);
+                }
+            }
+            log.info("Applied {} of {} pending migrations with parallelism {}",
+                    applied, pendingMigrations.size(), parallelism);
+            return !cancelled.get() && applied == pendingMigrations.size();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void buildDependencyGraph(List<MigrationNode> pendingMigrations, Set<Integer> appliedVersions) {
+        Map<Integer, MigrationNode> nodesByVersion = new HashMap<>();
+        for (MigrationNode node : pendingMigrations) {
+            nodesByVersion.put(node.version, node);
+        }
+
+        MigrationNode previous = null;
+        for (MigrationNode node : pendingMigrations) {
+            MigrationMetadata metadata = node.metadata;
+            if (!metadata.isIndependent() && metadata.getDependsOn().isEmpty() && previous != null) {
+                addDependency(node, previous);
+            }
+            for (Integer dependency : metadata.getDependsOn()) {
+                // Зависимость только от меньших версий исключает циклы в графе
+                if (dependency >= node.version) {
+                    throw new IllegalArgumentException("Migration " + node.file.getName()
+                            + " can only depend on lower versions, but depends on " + dependency);
+                }
+                MigrationNode dependencyNode = nodesByVersion.get(dependency);
+                if (dependencyNode != null) {
+                    addDependency(node, dependencyNode);
+                } else if (!appliedVersions.contains(dependency)) {
+                    throw new IllegalArgumentException("Migration " + node.file.getName()
+                            + " depends on version " + dependency + ", which is neither applied nor pending");
+                }
+            }
+            previous = node;
+        }
+    }
+
+    private void addDependency(MigrationNode node, MigrationNode dependency) {
+        node.remainingDependencies++;
+        dependency.dependents.add(node);
+    }
+
+    private void submit(CompletionService<MigrationStatus> completionService, MigrationNode node,
+                        Map<Integer, Connection> runningConnections, AtomicBoolean cancelled) {
+        completionService.submit(() -> new MigrationStatus(node, apply(node, runningConnections, cancelled)));
+    }
+
+    private boolean apply(MigrationNode node, Map<Integer, Connection> runningConnections, AtomicBoolean cancelled) {
+        try (Connection connection = connectionSupplier.get()) {
+            runningConnections.put(node.version, connection);
+            try {
+                if (cancelled.get()) {
+                    return false;
+                }
+                connection.setAutoCommit(false);
+                long startTime = System.currentTimeMillis();
+                if (migrationRunner.run(connection, node.file, node.version)) {
+                    connection.commit();
+                    log.info("Migration {} applied in {} ms on {}", node.file.getName(),
+                            System.currentTimeMillis() - startTime, Thread.currentThread().getName());
+                    return true;
+                }
+                connection.rollback();
+                return false;
+            } finally {
+                runningConnections.remove(node.version);
+            }
+        } catch (SQLException | ConnectionPoolException e) {
+            log.error("Migration {} failed: ", node.file.getName(), e);
+            return false;
+        }
+    }
+
+    private MigrationStatus takeStatus(CompletionService<MigrationStatus> completionService)
+            throws InterruptedException {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            // apply() перехватывает ожидаемые ошибки, сюда попадают только непредвиденные
+            throw new IllegalStateException("Unexpected error in migration worker", e.getCause());
+        }
+    }
+
+    private void cancelRunning(Map<Integer, Connection> runningConnections) {
+        for (Map.Entry<Integer, Connection> entry : runningConnections.entrySet()) {
+            try {
+                entry.getValue().unwrap(PGConnection.class).cancelQuery();
+            } catch (SQLException e) {
+                log.warn("Failed to cancel migration {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /** *
+     * Pending migration with its dependencies state
+     * */
+    @Getter
+    public static class MigrationNode {
+        private final File file;
+        private final int version;
+        private final MigrationMetadata metadata;
+        private final List<MigrationNode> dependents = new ArrayList<>();
+        private int remainingDependencies;
+
+        public MigrationNode(File file, int version, MigrationMetadata metadata) {
+            this.file = file;
+            this.version = version;
+            this.metadata = metadata;
+        }
+    }
+
+    private record MigrationStatus(MigrationNode node, boolean applied) {
+    }
+}
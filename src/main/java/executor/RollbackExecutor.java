@@ -1,23 +1,30 @@
 package executor;
 
+import exception.LockException;
+import lock.LockProvider;
 import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+import parser.MigrationChecksum;
+import parser.MigrationFileDescriptor;
 import parser.MigrationMetadata;
 import parser.MigrationMetadataParser;
+import parser.SqlStatementSplitter;
 import reader.MigrationFileReader;
 import utils.ConnectionManager;
 import utils.MigrationManager;
+import utils.SchemaHistoryWriter;
+import utils.SchemaStateCache;
 
 import java.io.File;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
-import static utils.MigrationLockUtil.checkLock;
-import static utils.MigrationLockUtil.lockMigration;
-import static utils.SchemaHistoryUtil.updateSchemaHistoryTable;
-import static utils.Validator.checkNotNull;
 
 /** *
  * This class executes .sql files for db rollbacks
@@ -27,23 +34,22 @@ public class RollbackExecutor implements Executor{
 
     // Для определения текущего состояния базы данных после отката до определенной версии идет обновление
     // статуса миграции
-    private final static String UPDATE_MIGRATION_STATUS_SQL = """
-            UPDATE schema_history_table
-            SET status = 'rolled_back'
-            WHERE version = ? AND script LIKE 'V%'
-            """;
-
-    private final static String UPDATE_CHERRY_PICKED_MIGRATION_STATUS_SQL = """
-            UPDATE schema_history_table
-            SET status = 'ignored'
-            WHERE version = ? AND script LIKE 'V%'
-            """;
+    private final static String ROLLED_BACK_STATUS = "rolled_back";
+    private final static String CHERRY_PICKED_STATUS = "ignored";
     private final MigrationFileReader migrationFileReader;
     private final MigrationManager migrationManager;
+    private final LockProvider lockProvider;
+    private final SqlBatchExecutor sqlBatchExecutor = new SqlBatchExecutor();
 
     public RollbackExecutor(MigrationFileReader fileReader, MigrationManager migrationManager) {
+        this(fileReader, migrationManager, LockProvider.fromProperties());
+    }
+
+    public RollbackExecutor(MigrationFileReader fileReader, MigrationManager migrationManager,
+                            LockProvider lockProvider) {
         this.migrationFileReader = fileReader;
         this.migrationManager = migrationManager;
+        this.lockProvider = lockProvider;
     }
 
     /** *
@@ -53,53 +59,108 @@ public class RollbackExecutor implements Executor{
      * @param targetVersion the version user wants rollback db to
      * */
     public void rollbackToVersion(String directoryPath, int targetVersion) {
-        List<File> rollbackFiles = migrationManager.findAndSortMigrationFiles(directoryPath);
+        rollback(directoryPath, targetVersion);
+    }
 
-        // Обратный порядок выполнения rollback-файлов
-        Collections.reverse(rollbackFiles);
+    /** *
+     * Performs a rollback to a specific version like {@link #rollbackToVersion(String, int)} and reports the result
+     *
+     * @param directoryPath the directory containing rollback files
+     * @param targetVersion the version user wants rollback db to
+     * @return rolled back versions, duration of the run and the cause of the failure, if any
+     * */
+    public MigrationResult rollback(String directoryPath, int targetVersion) {
+        return rollback(directoryPath, targetVersion, MigrationCancellation.NONE);
+    }
 
-        try (Connection connection = ConnectionManager.get()) {
-            checkLock(connection);
+    /** *
+     * Performs a rollback to a specific version on the given executor. Cancelling the returned future stops
+     * the rollback: the running statement is cancelled and all changes of the rollback are rolled back
+     *
+     * @param directoryPath the directory containing rollback files
+     * @param targetVersion the version user wants rollback db to
+     * @param executor executor running the rollback, a new thread is started if null
+     * @return future of the rollback result, completed exceptionally if there are no rollback files
+     * */
+    public CompletableFuture<MigrationResult> rollbackToVersionAsync(String directoryPath, int targetVersion,
+                                                                     java.util.concurrent.Executor executor) {
+        return MigrationCancellation.supplyAsync(executor,
+                cancellation -> rollback(directoryPath, targetVersion, cancellation));
+    }
 
-            connection.setAutoCommit(false);
+    private MigrationResult rollback(String directoryPath, int targetVersion, MigrationCancellation cancellation) {
+        long startNanos = System.nanoTime();
+        MigrationResult result = rollbackDirectory(directoryPath, targetVersion, cancellation);
+        MigrationMetrics.runFinished(result.getTarget(), System.nanoTime() - startNanos, result.isSuccess());
+        return result;
+    }
 
-            lockMigration(connection, true);
+    private MigrationResult rollbackDirectory(String directoryPath, int targetVersion,
+                                              MigrationCancellation cancellation) {
+        long startTime = System.currentTimeMillis();
+        List<MigrationFileDescriptor> rollbacks = migrationManager.getRollbackIndex(directoryPath).getRollbacks();
+        if (rollbacks.isEmpty()) {
+            throw new IllegalArgumentException("No rollback files found in the path");
+        }
 
-            int currentVersion = migrationManager.getCurrentVersion(connection);
-            if (targetVersion >= currentVersion) {
-                log.error("Rollback failed. Target version must be less than current version");
-                connection.rollback();
-                lockMigration(connection, false);
-                return;
-            }
+        try (Connection connection = ConnectionManager.get()) {
+            cancellation.register(connection);
+            try {
+                lockProvider.acquire(connection);
+                try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+                    connection.setAutoCommit(false);
 
-            for (File file : rollbackFiles) {
-                Integer scriptVersion = migrationManager.extractVersionFromFilename(file);
-                if (scriptVersion > targetVersion) {
-                    List<String> sqlCommands = migrationFileReader.readDbMigrationFile(file);
-                    if (!executeSqlWithCherryPick(connection, sqlCommands, file.getName(),
-                            scriptVersion, false)) {
+                    int currentVersion = migrationManager.getCurrentVersion(connection);
+                    if (targetVersion >= currentVersion) {
+                        log.error("Rollback failed. Target version must be less than current version");
                         connection.rollback();
-                        lockMigration(connection, false);
-                        log.error("Rollback failed, rolling back all changes");
-                        return;
+                        return failed(startTime, new IllegalArgumentException("Target version " + targetVersion
+                                + " must be less than current version " + currentVersion));
+                    }
+                    Set<Integer> appliedBefore = migrationManager.getAppliedVersions(connection);
+
+                    // Обратный порядок выполнения rollback-файлов, начиная с последней миграции
+                    for (int i = rollbacks.size() - 1; i >= 0; i--) {
+                        MigrationFileDescriptor rollback = rollbacks.get(i);
+                        if (rollback.getTargetVersion() <= targetVersion) {
+                            break;
+                        }
+                        if (cancellation.isCancelled() || !executeFileWithCherryPick(connection, historyWriter,
+                                rollback.getFile(), rollback.getTargetVersion(), false)) {
+                            connection.rollback();
+                            log.error("Rollback failed, rolling back all changes");
+                            return failed(startTime, cancellation.isCancelled()
+                                    ? new CancellationException("Rollback is cancelled")
+                                    : new IllegalStateException("Rollback " + rollback.getName() + " failed"));
+                        }
                     }
+                    // Записи об откатах и смена статусов всех версий отправляются за несколько запросов
+                    historyWriter.flush();
+                    connection.commit();
+                    log.info("Rollback executed successfully");
+                    return MigrationResult.succeeded(MigrationResult.DEFAULT_TARGET,
+                            migrationManager.getVersionsChangedSince(connection, appliedBefore, true),
+                            System.currentTimeMillis() - startTime);
+                } finally {
+                    releaseLock(connection);
+                    SchemaStateCache.getInstance().invalidate();
                 }
+            } finally {
+                cancellation.unregister();
             }
-            lockMigration(connection, false);
-            connection.commit();
-            log.info("Rollback executed successfully");
         }
-        catch (SQLException | IllegalArgumentException e) {
+        catch (SQLException | IllegalArgumentException | LockException e) {
             log.error("Error! Failed to rollback to version: ", e);
-            try (Connection connection = ConnectionManager.get()) {
-                lockMigration(connection, false);
-            } catch (SQLException ex) {
-                log.error("Error! Failed to release lock: ", ex);
-            }
+            return failed(startTime, cancellation.isCancelled()
+                    ? new CancellationException("Rollback is cancelled") : e);
         }
     }
 
+    private MigrationResult failed(long startTime, Throwable cause) {
+        return MigrationResult.failed(MigrationResult.DEFAULT_TARGET, List.of(),
+                System.currentTimeMillis() - startTime, cause);
+    }
+
     /** *
      * Performs cherryPick rollback (one specific file, not everything in reverse order
      *     // up to a certain version)
@@ -109,27 +170,29 @@ public class RollbackExecutor implements Executor{
      * */
     public void cherryPickRollback(String directoryPath, int scriptVersion) {
         try (Connection connection = ConnectionManager.get()) {
-            connection.setAutoCommit(false);
+            lockProvider.acquire(connection);
+            try {
+                connection.setAutoCommit(false);
 
-            lockMigration(connection, true);
-            File file = migrationManager.findRollbackFileByVersion(directoryPath, scriptVersion);
-            if (file == null) {
-                log.error("Rollback file for version {} not found.", scriptVersion);
-                return;
-            }
+                File file = migrationManager.findRollbackFileByVersion(directoryPath, scriptVersion);
+                if (file == null) {
+                    log.error("Rollback file for version {} not found.", scriptVersion);
+                    return;
+                }
 
-            List<String> sqlCommands = migrationFileReader.readDbMigrationFile(file);
-            if (!executeSqlWithCherryPick(connection, sqlCommands, file.getName(), scriptVersion, true)) {
-                connection.rollback();
-                lockMigration(connection, false);
-                log.error("Cherrypick rollback failed, rolling back all changes.");
-                return;
-            }
+                if (!executeFileWithCherryPick(connection, file, scriptVersion, true)) {
+                    connection.rollback();
+                    log.error("Cherrypick rollback failed, rolling back all changes.");
+                    return;
+                }
 
-            lockMigration(connection, false);
-            connection.commit();
-            log.info("Cherrypick rollback for version {} executed successfully", scriptVersion);
-        } catch (SQLException e) {
+                connection.commit();
+                log.info("Cherrypick rollback for version {} executed successfully", scriptVersion);
+            } finally {
+                releaseLock(connection);
+                SchemaStateCache.getInstance().invalidate();
+            }
+        } catch (SQLException | LockException e) {
             log.error("Error! Failed to execute cherrypick rollback: ", e);
         }
     }
@@ -147,13 +210,89 @@ public class RollbackExecutor implements Executor{
     // Обернул executeSql этим методом для правильного установления статуса rollback-а
     public boolean executeSqlWithCherryPick(Connection connection, List<String> sqlCommands,
                                             String script, Integer version, boolean isCherryPick) throws SQLException {
-        boolean success = executeSql(connection, sqlCommands, script, version);
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+            boolean success = executeSql(connection, historyWriter, sqlCommands, script, version);
+            if (success) {
+                updateRolledBackMigrationStatus(historyWriter, version, isCherryPick);
+                historyWriter.flush();
+            }
+            return success;
+        }
+    }
+
+    /** *
+     * Wrapping method for executeRollbackFile() in order to correctly set the rollback status
+     *
+     * @param connection the database connection
+     * @param file the rollback file
+     * @param version the version of the migration
+     * @param isCherryPick defines whether user wants to execute single cherryPick rollback
+     * @return true if the SQL execution was successful, false otherwise
+     * */
+    public boolean executeFileWithCherryPick(Connection connection, File file, Integer version,
+                                             boolean isCherryPick) throws SQLException {
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+            boolean success = executeFileWithCherryPick(connection, historyWriter, file, version, isCherryPick);
+            if (success) {
+                historyWriter.flush();
+            }
+            return success;
+        }
+    }
+
+    private boolean executeFileWithCherryPick(Connection connection, SchemaHistoryWriter historyWriter, File file,
+                                              Integer version, boolean isCherryPick) {
+        boolean success = executeRollbackFile(connection, historyWriter, file, version);
         if (success) {
-            updateRolledBackMigrationStatus(connection, version, isCherryPick);
+            updateRolledBackMigrationStatus(historyWriter, version, isCherryPick);
         }
         return success;
     }
 
+    /**
+     * Executes SQL statements of the rollback file, reading them lazily, and updates the schema history table.
+     * @param connection the database connection
+     * @param file the rollback file
+     * @param version the version of the migration
+     * @return true if the SQL execution was successful, false otherwise
+     * */
+    public boolean executeRollbackFile(Connection connection, File file, Integer version) {
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+            if (!executeRollbackFile(connection, historyWriter, file, version)) {
+                return false;
+            }
+            historyWriter.flush();
+            return true;
+        } catch (SQLException e) {
+            log.error("Execution of rollback script failed: ", e);
+            return false;
+        }
+    }
+
+    private boolean executeRollbackFile(Connection connection, SchemaHistoryWriter historyWriter, File file,
+                                        Integer version) {
+        try (Stream<String> statements = migrationFileReader.streamDbMigrationStatements(file)) {
+            long startTime = System.currentTimeMillis();
+            MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata(
+                    migrationFileReader.readDbMigrationHeader(file));
+            MigrationChecksum checksum = new MigrationChecksum();
+            sqlBatchExecutor.execute(connection, checksum.track(statements.iterator()));
+            long executionTime = System.currentTimeMillis() - startTime;
+            historyWriter.addRecord(version,
+                    metadata.getDescription(),
+                    file.getName(),
+                    checksum.getValue(),
+                    metadata.getInstalledBy(),
+                    (int) executionTime,
+                    true,
+                    "applied");
+            return true;
+        } catch (SQLException | UncheckedIOException e) {
+            log.error("Execution of rollback script failed: ", e);
+            return false;
+        }
+    }
+
     /**
      * Executes SQL commands and updates the schema history table.
      * @param connection the database connection
@@ -164,19 +303,33 @@ public class RollbackExecutor implements Executor{
      * */
     @Override
     public boolean executeSql(Connection connection, List<String> sqlCommands, String script, Integer version) {
+        try (SchemaHistoryWriter historyWriter = new SchemaHistoryWriter(connection)) {
+            if (!executeSql(connection, historyWriter, sqlCommands, script, version)) {
+                return false;
+            }
+            historyWriter.flush();
+            return true;
+        } catch (SQLException e) {
+            log.error("Execution of rollback script failed: ", e);
+            return false;
+        }
+    }
+
+    private boolean executeSql(Connection connection, SchemaHistoryWriter historyWriter, List<String> sqlCommands,
+                               String script, Integer version) {
         try {
             long startTime = System.currentTimeMillis();
             MigrationMetadata metadata = new MigrationMetadata();
+            MigrationChecksum checksum = new MigrationChecksum();
             for (String sql : sqlCommands) {
-                try (Statement statement = connection.createStatement()) {
-                    statement.execute(sql);
-                    metadata = MigrationMetadataParser.parseMigrationMetadata(sql);
-                }
+                sqlBatchExecutor.execute(connection, checksum.track(SqlStatementSplitter.split(sql).iterator()));
+                metadata = MigrationMetadataParser.parseMigrationMetadata(sql);
             }
             long executionTime = System.currentTimeMillis() - startTime;
-            updateSchemaHistoryTable(connection, version,
+            historyWriter.addRecord(version,
                     metadata.getDescription(),
                     script,
+                    checksum.getValue(),
                     metadata.getInstalledBy(),
                     (int) executionTime,
                     true,
@@ -187,14 +340,17 @@ public class RollbackExecutor implements Executor{
             return false;
         }
     }
-    private void updateRolledBackMigrationStatus(Connection connection, Integer version, boolean isCherryPick)
-            throws SQLException {
-        String sql = isCherryPick ? UPDATE_CHERRY_PICKED_MIGRATION_STATUS_SQL : UPDATE_MIGRATION_STATUS_SQL;
-        try (var preparedStatement = connection.prepareStatement(sql)) {
-            checkNotNull(connection);
-            preparedStatement.setInt(1, version);
-            preparedStatement.executeUpdate();
-        }
+    private void updateRolledBackMigrationStatus(SchemaHistoryWriter historyWriter, Integer version,
+                                                 boolean isCherryPick) {
+        historyWriter.updateStatus(version, isCherryPick ? CHERRY_PICKED_STATUS : ROLLED_BACK_STATUS);
     }
 
-}
\ No newline at end of file
+    // Блокировка снимается в той же сессии, в которой была получена; если снять не удалось, сессия прерывается
+    private void releaseLock(Connection connection) {
+        try {
+            LockProvider.releaseOrAbort(lockProvider, connection);
+        } catch (SQLException e) {
+            log.error("Error! Failed to release lock, the connection is discarded: ", e);
+        }
+    }
+}
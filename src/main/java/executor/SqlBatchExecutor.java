@@ -0,0 +1,143 @@
+package executor;
+
+import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+import utils.PropertiesUtils;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static parser.SqlStatementSplitter.leadingKeyword;
+
+/** *
+ * This class executes separate sql statements of migration and rollback files, grouping independent
+ * DML/DDL statements into JDBC batches in order to reduce the number of round trips to the database
+ * */
+@Slf4j
+public class SqlBatchExecutor {
+    private static final String BATCH_SIZE_KEY = "db.batch.size";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    // Выражения, возвращающие результат, нельзя отправлять через addBatch - они выполняются по отдельности
+    private static final Set<String> RESULT_RETURNING_KEYWORDS = Set.of(
+            "SELECT", "WITH", "VALUES", "TABLE", "SHOW", "EXPLAIN", "FETCH", "CALL");
+    private static final Pattern RETURNING_CLAUSE = Pattern.compile("\\bRETURNING\\b", Pattern.CASE_INSENSITIVE);
+
+    private final int batchSize;
+
+    public SqlBatchExecutor() {
+        this(PropertiesUtils.getInt(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE));
+    }
+
+    public SqlBatchExecutor(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, but was: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /** *
+     * Executing statements in the given order, sending consecutive batchable statements
+     * as a single executeBatch round trip
+     *
+     * @param connection the database connection
+     * @param statements statements to execute (without terminating semicolons)
+     * @return number of executed statements
+     * @throws SQLException if any of the statements fails
+     * */
+    public int execute(Connection connection, Iterator<String> statements) throws SQLException {
+        return execute(connection, statements, MigrationTimeouts.NONE);
+    }
+
+    /** *
+     * Executing statements like {@link #execute(Connection, Iterator)}. Statements retried after lock timeouts
+     * (see {@link MigrationTimeouts#isRetried(String)}) are executed on their own
+     *
+     * @param connection the database connection
+     * @param statements statements to execute (without terminating semicolons)
+     * @param timeouts timeouts of the migration, counting the time lost to lock timeouts
+     * @return number of executed statements
+     * @throws SQLException if any of the statements fails
+     * */
+    public int execute(Connection connection, Iterator<String> statements, MigrationTimeouts timeouts)
+            throws SQLException {
+        int executed = 0;
+        int pending = 0;
+        try (Statement statement = connection.createStatement()) {
+            while (statements.hasNext()) {
+                String sql = statements.next();
+                if (batchSize > 1 && isBatchable(sql) && !timeouts.isRetried(sql)) {
+                    statement.addBatch(sql);
+                    if (++pending == batchSize) {
+                        executed += flush(statement, pending);
+                        pending = 0;
+                    }
+                } else {
+                    executed += flush(statement, pending);
+                    pending = 0;
+                    long startTime = System.nanoTime();
+                    timeouts.execute(connection, statement, sql);
+                    MigrationMetrics.statementExecuted(System.nanoTime() - startTime,
+                            Math.max(0, statement.getUpdateCount()));
+                    log.debug("Executed statement in {} ms: {}", elapsedMillis(startTime), sql);
+                    executed++;
+                }
+            }
+            executed += flush(statement, pending);
+        }
+        return executed;
+    }
+
+    /** *
+     * Checking whether the statement can be sent as a part of JDBC batch
+     *
+     * @param sql single sql statement
+     * @return true if the statement doesn't return a result set
+     * */
+    public static boolean isBatchable(String sql) {
+        return !RESULT_RETURNING_KEYWORDS.contains(leadingKeyword(sql))
+                && !RETURNING_CLAUSE.matcher(sql).find();
+    }
+
+    private int flush(Statement statement, int pending) throws SQLException {
+        if (pending == 0) {
+            return 0;
+        }
+        long startTime = System.nanoTime();
+        int[] updateCounts;
+        try {
+            updateCounts = statement.executeBatch();
+        } catch (BatchUpdateException e) {
+            int failedIndex = e.getUpdateCounts() == null ? 0 : e.getUpdateCounts().length;
+            SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+            log.error("Batch execution failed at statement {} of {}: {}", failedIndex + 1, pending,
+                    cause.getMessage());
+            throw e;
+        } finally {
+            statement.clearBatch();
+        }
+        MigrationMetrics.batchExecuted(pending, System.nanoTime() - startTime, rowsAffected(updateCounts));
+        log.debug("Executed batch of {} statements in {} ms", pending, elapsedMillis(startTime));
+        return pending;
+    }
+
+    // Statement.SUCCESS_NO_INFO (-2) не учитывается
+    private static long rowsAffected(int[] updateCounts) {
+        long rows = 0;
+        if (updateCounts != null) {
+            for (int count : updateCounts) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,118 @@
+package lock;
+
+import exception.LockException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/** *
+ * Lock provider based on PostgreSQL session-level advisory locks. The lock is released automatically
+ * when the session ends, so a crashed process can't leave migrations locked forever,
+ * and waiting nodes are queued by the server instead of failing immediately
+ * */
+@Slf4j
+public class AdvisoryLockProvider implements LockProvider {
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(?)";
+    private static final String LOCK_SQL = "SELECT pg_advisory_lock(?)";
+    private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(?)";
+    private static final String SET_LOCK_TIMEOUT_SQL = "SELECT set_config('lock_timeout', ?, false)";
+    private static final String SHOW_LOCK_TIMEOUT_SQL = "SELECT current_setting('lock_timeout')";
+    private static final String LOCK_NOT_AVAILABLE_STATE = "55P03";
+
+    @Getter
+    private final long lockKey;
+    private final long waitTimeoutMillis;
+
+    public AdvisoryLockProvider(String lockName, long waitTimeoutMillis) {
+        this(lockKey(lockName), waitTimeoutMillis);
+    }
+
+    public AdvisoryLockProvider(long lockKey, long waitTimeoutMillis) {
+        this.lockKey = lockKey;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    /** *
+     * Getting the advisory lock key for the lock name (64-bit FNV-1a hash of the name)
+     *
+     * @param lockName name of the lock, e.g. schema name
+     * @return advisory lock key
+     * */
+    public static long lockKey(String lockName) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : lockName.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public void acquire(Connection connection) throws SQLException {
+        long startTime = System.nanoTime();
+        acquireLock(connection);
+        MigrationMetrics.migrationLockAcquired(System.nanoTime() - startTime);
+    }
+
+    private void acquireLock(Connection connection) throws SQLException {
+        // Быстрый путь без ожидания - один round trip, если блокировка свободна
+        if (queryBoolean(connection, TRY_LOCK_SQL)) {
+            return;
+        }
+        if (waitTimeoutMillis <= 0) {
+            throw new LockException("Failed to acquire lock. Another migration is in progress.");
+        }
+
+        log.info("Migration lock is held by another session, waiting up to {} ms", waitTimeoutMillis);
+        String previousLockTimeout = currentLockTimeout(connection);
+        setLockTimeout(connection, waitTimeoutMillis + "ms");
+        try (PreparedStatement statement = connection.prepareStatement(LOCK_SQL)) {
+            statement.setLong(1, lockKey);
+            statement.execute();
+        } catch (SQLException e) {
+            if (LOCK_NOT_AVAILABLE_STATE.equals(e.getSQLState())) {
+                throw new LockException("Failed to acquire lock within " + waitTimeoutMillis
+                        + " ms. Another migration is in progress.");
+            }
+            throw e;
+        } finally {
+            setLockTimeout(connection, previousLockTimeout);
+        }
+    }
+
+    @Override
+    public void release(Connection connection) throws SQLException {
+        if (!queryBoolean(connection, UNLOCK_SQL)) {
+            log.warn("Migration lock {} was not held by the current session", lockKey);
+        }
+    }
+
+    private boolean queryBoolean(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, lockKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private String currentLockTimeout(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SHOW_LOCK_TIMEOUT_SQL);
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getString(1) : "0";
+        }
+    }
+
+    private void setLockTimeout(Connection connection, String value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SET_LOCK_TIMEOUT_SQL)) {
+            statement.setString(1, value);
+            statement.execute();
+        }
+    }
+}
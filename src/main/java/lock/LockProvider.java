@@ -0,0 +1,98 @@
+package lock;
+
+import exception.LockException;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/** *
+ * Provides executors with the methods for eliminating the possibility of different users (nodes)
+ * running migrations simultaneously
+ * */
+public interface LockProvider {
+    String LOCK_PROVIDER_KEY = "db.lock.provider";
+    String LOCK_WAIT_TIMEOUT_KEY = "db.lock.wait.timeout";
+    String LOCK_NAME_KEY = "db.lock.name";
+    String ADVISORY_PROVIDER = "advisory";
+    String TABLE_PROVIDER = "table";
+    String DEFAULT_LOCK_NAME = "schema_history_table";
+    int DEFAULT_LOCK_WAIT_TIMEOUT_MILLIS = 60_000;
+
+    /** *
+     * Acquiring the migration lock, waiting for it no longer than the configured timeout
+     *
+     * @param connection the database connection, which will hold the lock
+     * @throws LockException if the lock is not acquired within the timeout
+     * @throws SQLException if a database access error occurs
+     * */
+    void acquire(Connection connection) throws SQLException;
+
+    /** *
+     * Releasing the migration lock. Must be called on the same connection that acquired the lock
+     *
+     * @param connection the database connection holding the lock
+     * @throws SQLException if a database access error occurs
+     * */
+    void release(Connection connection) throws SQLException;
+
+    /** *
+     * Rolling back an unfinished transaction and releasing the migration lock. If that fails, the connection
+     * is aborted: a pooled session still holding a session-level lock must not go back to the pool,
+     * where it would block all later migrations until it is evicted
+     *
+     * @param lockProvider provider that acquired the lock
+     * @param connection the database connection holding the lock
+     * @throws SQLException if the lock can't be released (the connection is aborted then)
+     * */
+    static void releaseOrAbort(LockProvider lockProvider, Connection connection) throws SQLException {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            lockProvider.release(connection);
+        } catch (SQLException e) {
+            try {
+                connection.abort(Runnable::run);
+            } catch (SQLException abortError) {
+                e.addSuppressed(abortError);
+            }
+            throw e;
+        }
+    }
+
+    /** *
+     * Creating lock provider from application properties (db.lock.provider, db.lock.wait.timeout, db.lock.name)
+     *
+     * @return advisory lock provider by default, table-based one if db.lock.provider=table
+     * */
+    static LockProvider fromProperties() {
+        String provider = PropertiesUtils.get(LOCK_PROVIDER_KEY);
+        int waitTimeoutMillis = PropertiesUtils.getInt(LOCK_WAIT_TIMEOUT_KEY, DEFAULT_LOCK_WAIT_TIMEOUT_MILLIS);
+        if (TABLE_PROVIDER.equalsIgnoreCase(provider)) {
+            return new TableLockProvider(waitTimeoutMillis);
+        }
+        if (provider != null && !provider.isBlank() && !ADVISORY_PROVIDER.equalsIgnoreCase(provider)) {
+            throw new IllegalArgumentException("Unknown lock provider: " + provider);
+        }
+        String lockName = PropertiesUtils.get(LOCK_NAME_KEY);
+        return new AdvisoryLockProvider(lockName == null || lockName.isBlank() ? DEFAULT_LOCK_NAME : lockName,
+                waitTimeoutMillis);
+    }
+
+    /** *
+     * Creating lock provider guarding migrations of one target (e.g. tenant schema) from application properties.
+     * Targets are locked independently with advisory locks named "{db.lock.name}:{target}", so different
+     * targets can be migrated at the same time
+     *
+     * @param target name of the target
+     * @return advisory lock provider of the target
+     * */
+    static LockProvider forTarget(String target) {
+        int waitTimeoutMillis = PropertiesUtils.getInt(LOCK_WAIT_TIMEOUT_KEY, DEFAULT_LOCK_WAIT_TIMEOUT_MILLIS);
+        String lockName = PropertiesUtils.get(LOCK_NAME_KEY);
+        return new AdvisoryLockProvider((lockName == null || lockName.isBlank() ? DEFAULT_LOCK_NAME : lockName)
+                + ":" + target, waitTimeoutMillis);
+    }
+}
@@ -0,0 +1,82 @@
+package lock;
+
+import exception.LockException;
+import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static utils.MigrationLockUtil.lockMigration;
+
+/** *
+ * Fallback lock provider based on the migration_lock table row. The lock is committed immediately,
+ * so it is visible to other nodes, and is polled until the wait timeout expires.
+ * Notice that a crashed process leaves this lock set until it is released manually
+ * */
+@Slf4j
+public class TableLockProvider implements LockProvider {
+    private static final long MIN_POLL_INTERVAL_MILLIS = 10;
+    private static final long MAX_POLL_INTERVAL_MILLIS = 500;
+
+    private final long waitTimeoutMillis;
+
+    public TableLockProvider(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    @Override
+    public void acquire(Connection connection) throws SQLException {
+        long startTime = System.nanoTime();
+        acquireLock(connection);
+        MigrationMetrics.migrationLockAcquired(System.nanoTime() - startTime);
+    }
+
+    private void acquireLock(Connection connection) throws SQLException {
+        long deadline = System.currentTimeMillis() + waitTimeoutMillis;
+        long pollInterval = MIN_POLL_INTERVAL_MILLIS;
+        while (true) {
+            try {
+                // UPDATE ... WHERE is_locked = FALSE атомарен, отдельная проверка checkLock не нужна
+                lockMigration(connection, true);
+                commitIfNeeded(connection);
+                return;
+            } catch (LockException e) {
+                rollbackIfNeeded(connection);
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw e;
+                }
+                sleep(Math.min(pollInterval, remaining));
+                pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    @Override
+    public void release(Connection connection) throws SQLException {
+        lockMigration(connection, false);
+        commitIfNeeded(connection);
+    }
+
+    private void commitIfNeeded(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    private void rollbackIfNeeded(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LockException("Interrupted while waiting for migration lock");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/** *
+ * Micrometer binder of migration metrics. micrometer-core is an optional dependency of the library,
+ * so this class can be used only when the application has it on the classpath:
+ * new MicrometerMigrationMetrics().bindTo(meterRegistry). Migration and run timers are tagged
+ * with the script (the target) and the result, so the cost of every migration can be compared between releases
+ * */
+public class MicrometerMigrationMetrics implements MeterBinder, MigrationMetricsListener, AutoCloseable {
+    private volatile MeterRegistry registry;
+    private Timer statementTimer;
+    private DistributionSummary statementRows;
+    private Timer batchTimer;
+    private Timer lockWaitTimer;
+    private Timer connectionBorrowTimer;
+    private Counter bytesRead;
+
+    /** *
+     * Creating the meters in the registry and subscribing to migration metrics
+     *
+     * @param registry the registry the meters are added to
+     * */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        statementTimer = Timer.builder("migration.statement.duration")
+                .description("Execution time of single migration statements")
+                .register(registry);
+        statementRows = DistributionSummary.builder("migration.statement.rows")
+                .description("Rows affected by migration statements and batches")
+                .baseUnit("rows")
+                .register(registry);
+        batchTimer = Timer.builder("migration.batch.duration")
+                .description("Execution time of JDBC batches of migration statements")
+                .register(registry);
+        lockWaitTimer = Timer.builder("migration.lock.wait")
+                .description("Time spent waiting for the migration lock")
+                .register(registry);
+        connectionBorrowTimer = Timer.builder("migration.connection.borrow.wait")
+                .description("Time spent waiting for a pooled connection")
+                .register(registry);
+        bytesRead = Counter.builder("migration.file.read")
+                .description("Bytes read from migration files")
+                .baseUnit("bytes")
+                .register(registry);
+        this.registry = registry;
+        MigrationMetrics.addListener(this);
+    }
+
+    @Override
+    public void statementExecuted(long durationNanos, long rowsAffected) {
+        if (registry != null) {
+            statementTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+            statementRows.record(rowsAffected);
+        }
+    }
+
+    @Override
+    public void batchExecuted(int statementCount, long durationNanos, long rowsAffected) {
+        if (registry != null) {
+            batchTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+            statementRows.record(rowsAffected);
+        }
+    }
+
+    @Override
+    public void migrationLockAcquired(long waitNanos) {
+        if (registry != null) {
+            lockWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void connectionBorrowed(long waitNanos) {
+        if (registry != null) {
+            connectionBorrowTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void migrationFileRead(long bytes) {
+        if (registry != null) {
+            bytesRead.increment(bytes);
+        }
+    }
+
+    @Override
+    public void migrationExecuted(String script, long durationNanos, boolean success) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry != null) {
+            Timer.builder("migration.duration")
+                    .description("Execution time of migration files")
+                    .tag("script", script)
+                    .tag("result", success ? "success" : "failure")
+                    .register(meterRegistry)
+                    .record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void runFinished(String target, long durationNanos, boolean success) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry != null) {
+            Timer.builder("migration.run.duration")
+                    .description("Total duration of migration and rollback runs")
+                    .tag("target", target)
+                    .tag("result", success ? "success" : "failure")
+                    .register(meterRegistry)
+                    .record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** *
+     * Unsubscribing from migration metrics. The meters stay in the registry
+     * */
+    @Override
+    public void close() {
+        MigrationMetrics.removeListener(this);
+        registry = null;
+    }
+}
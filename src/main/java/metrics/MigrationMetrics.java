@@ -0,0 +1,90 @@
+package metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/** *
+ * Instrumentation SPI of the library: executors, readers, locks and connection pools report their metrics here,
+ * and the registered listeners receive them. Built-in listeners are {@link MigrationStatistics} (JMX MBean,
+ * registered automatically with db.metrics.jmx=true) and {@link MicrometerMigrationMetrics} (Micrometer binder,
+ * requires micrometer-core on the classpath). Without listeners events are dropped before anything is allocated
+ * */
+@Slf4j
+public final class MigrationMetrics {
+    private static final String JMX_ENABLED_KEY = "db.metrics.jmx";
+    private static final List<MigrationMetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    static {
+        if (PropertiesUtils.getBoolean(JMX_ENABLED_KEY, false)) {
+            MigrationStatistics.registerMBean();
+        }
+    }
+
+    private MigrationMetrics() {
+    }
+
+    public static void addListener(MigrationMetricsListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(MigrationMetricsListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    public static void statementExecuted(long durationNanos, long rowsAffected) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.statementExecuted(durationNanos, rowsAffected));
+        }
+    }
+
+    public static void batchExecuted(int statementCount, long durationNanos, long rowsAffected) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.batchExecuted(statementCount, durationNanos, rowsAffected));
+        }
+    }
+
+    public static void migrationLockAcquired(long waitNanos) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.migrationLockAcquired(waitNanos));
+        }
+    }
+
+    public static void connectionBorrowed(long waitNanos) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.connectionBorrowed(waitNanos));
+        }
+    }
+
+    public static void migrationFileRead(long bytes) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.migrationFileRead(bytes));
+        }
+    }
+
+    public static void migrationExecuted(String script, long durationNanos, boolean success) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.migrationExecuted(script, durationNanos, success));
+        }
+    }
+
+    public static void runFinished(String target, long durationNanos, boolean success) {
+        if (!LISTENERS.isEmpty()) {
+            notifyListeners(listener -> listener.runFinished(target, durationNanos, success));
+        }
+    }
+
+    // Ошибка слушателя не должна прерывать миграцию
+    private static void notifyListeners(Consumer<MigrationMetricsListener> event) {
+        for (MigrationMetricsListener listener : LISTENERS) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("Migration metrics listener {} failed: {}", listener, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package metrics;
+
+/** *
+ * Receives execution metrics of migrations (see {@link MigrationMetrics#addListener(MigrationMetricsListener)}).
+ * Methods are called synchronously on the threads doing the work, so implementations must be thread-safe
+ * and fast. All methods do nothing by default
+ * */
+public interface MigrationMetricsListener {
+
+    /** *
+     * A single sql statement of a migration or rollback was executed
+     *
+     * @param durationNanos execution time of the statement, including retries after lock timeouts
+     * @param rowsAffected rows changed by the statement, 0 for statements returning results or DDL
+     * */
+    default void statementExecuted(long durationNanos, long rowsAffected) {
+    }
+
+    /** *
+     * Consecutive sql statements were executed as one JDBC batch
+     *
+     * @param statementCount number of statements in the batch
+     * @param durationNanos execution time of the whole batch
+     * @param rowsAffected rows changed by the statements of the batch
+     * */
+    default void batchExecuted(int statementCount, long durationNanos, long rowsAffected) {
+    }
+
+    /** *
+     * The migration lock (advisory or table-based) was acquired
+     *
+     * @param waitNanos time spent waiting for the lock
+     * */
+    default void migrationLockAcquired(long waitNanos) {
+    }
+
+    /** *
+     * A connection was borrowed from a pool of utils.ConnectionManager
+     *
+     * @param waitNanos time spent waiting for the connection
+     * */
+    default void connectionBorrowed(long waitNanos) {
+    }
+
+    /** *
+     * Reading of a migration file by reader.MigrationFileReader was finished
+     *
+     * @param bytes bytes read from the file
+     * */
+    default void migrationFileRead(long bytes) {
+    }
+
+    /** *
+     * A migration file was executed
+     *
+     * @param script file name of the migration
+     * @param durationNanos execution time of the migration
+     * @param success true if the migration was applied
+     * */
+    default void migrationExecuted(String script, long durationNanos, boolean success) {
+    }
+
+    /** *
+     * A migration or rollback run of one target (see executor.MigrationResult) was finished
+     *
+     * @param target name of the target, e.g. "default", a schema or a data source
+     * @param durationNanos total duration of the run
+     * @param success true if the run succeeded
+     * */
+    default void runFinished(String target, long durationNanos, boolean success) {
+    }
+}
@@ -0,0 +1,232 @@
+package metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** *
+ * Listener accumulating migration metrics in memory and exposing them as the JMX MBean
+ * "migrations:type=MigrationStatistics", e.g. for JConsole or a JMX exporter of the monitoring system
+ * */
+@Slf4j
+public class MigrationStatistics implements MigrationMetricsListener, MigrationStatisticsMBean {
+    public static final String OBJECT_NAME = "migrations:type=MigrationStatistics";
+
+    private static MigrationStatistics registered;
+
+    private final LongAdder statementCount = new LongAdder();
+    private final LongAdder statementTimeNanos = new LongAdder();
+    private final LongAccumulator maxStatementTimeNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder rowsAffected = new LongAdder();
+    private final LongAdder lockAcquisitionCount = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAccumulator maxLockWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder connectionBorrowCount = new LongAdder();
+    private final LongAdder connectionBorrowWaitNanos = new LongAdder();
+    private final LongAccumulator maxConnectionBorrowWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder migrationsApplied = new LongAdder();
+    private final LongAdder migrationsFailed = new LongAdder();
+    private final LongAdder migrationTimeNanos = new LongAdder();
+    private final LongAdder runCount = new LongAdder();
+    private final LongAdder failedRunCount = new LongAdder();
+    private final AtomicLong lastRunDurationNanos = new AtomicLong();
+
+    /** *
+     * Registering the statistics as a metrics listener and as the JMX MBean of the platform MBean server.
+     * Repeated calls return the already registered instance
+     *
+     * @return registered statistics
+     * @throws IllegalStateException if the MBean can't be registered
+     * */
+    public static synchronized MigrationStatistics registerMBean() {
+        if (registered != null) {
+            return registered;
+        }
+        MigrationStatistics statistics = new MigrationStatistics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // MBean могла остаться от другого загрузчика классов (например, после редеплоя приложения)
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(statistics, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register MBean " + OBJECT_NAME, e);
+        }
+        MigrationMetrics.addListener(statistics);
+        registered = statistics;
+        log.info("Migration metrics are exposed as JMX MBean {}", OBJECT_NAME);
+        return statistics;
+    }
+
+    @Override
+    public void statementExecuted(long durationNanos, long rowsAffected) {
+        statementCount.increment();
+        statementTimeNanos.add(durationNanos);
+        maxStatementTimeNanos.accumulate(durationNanos);
+        this.rowsAffected.add(rowsAffected);
+    }
+
+    @Override
+    public void batchExecuted(int statementCount, long durationNanos, long rowsAffected) {
+        batchCount.increment();
+        this.statementCount.add(statementCount);
+        statementTimeNanos.add(durationNanos);
+        this.rowsAffected.add(rowsAffected);
+    }
+
+    @Override
+    public void migrationLockAcquired(long waitNanos) {
+        lockAcquisitionCount.increment();
+        lockWaitNanos.add(waitNanos);
+        maxLockWaitNanos.accumulate(waitNanos);
+    }
+
+    @Override
+    public void connectionBorrowed(long waitNanos) {
+        connectionBorrowCount.increment();
+        connectionBorrowWaitNanos.add(waitNanos);
+        maxConnectionBorrowWaitNanos.accumulate(waitNanos);
+    }
+
+    @Override
+    public void migrationFileRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void migrationExecuted(String script, long durationNanos, boolean success) {
+        (success ? migrationsApplied : migrationsFailed).increment();
+        migrationTimeNanos.add(durationNanos);
+    }
+
+    @Override
+    public void runFinished(String target, long durationNanos, boolean success) {
+        runCount.increment();
+        if (!success) {
+            failedRunCount.increment();
+        }
+        lastRunDurationNanos.set(durationNanos);
+    }
+
+    @Override
+    public long getStatementCount() {
+        return statementCount.sum();
+    }
+
+    @Override
+    public long getStatementTimeNanos() {
+        return statementTimeNanos.sum();
+    }
+
+    @Override
+    public long getMaxStatementTimeNanos() {
+        return maxStatementTimeNanos.get();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    @Override
+    public long getRowsAffected() {
+        return rowsAffected.sum();
+    }
+
+    @Override
+    public long getLockAcquisitionCount() {
+        return lockAcquisitionCount.sum();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    @Override
+    public long getMaxLockWaitNanos() {
+        return maxLockWaitNanos.get();
+    }
+
+    @Override
+    public long getConnectionBorrowCount() {
+        return connectionBorrowCount.sum();
+    }
+
+    @Override
+    public long getConnectionBorrowWaitNanos() {
+        return connectionBorrowWaitNanos.sum();
+    }
+
+    @Override
+    public long getMaxConnectionBorrowWaitNanos() {
+        return maxConnectionBorrowWaitNanos.get();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getMigrationsApplied() {
+        return migrationsApplied.sum();
+    }
+
+    @Override
+    public long getMigrationsFailed() {
+        return migrationsFailed.sum();
+    }
+
+    @Override
+    public long getMigrationTimeNanos() {
+        return migrationTimeNanos.sum();
+    }
+
+    @Override
+    public long getRunCount() {
+        return runCount.sum();
+    }
+
+    @Override
+    public long getFailedRunCount() {
+        return failedRunCount.sum();
+    }
+
+    @Override
+    public long getLastRunDurationNanos() {
+        return lastRunDurationNanos.get();
+    }
+
+    @Override
+    public void reset() {
+        statementCount.reset();
+        statementTimeNanos.reset();
+        maxStatementTimeNanos.reset();
+        batchCount.reset();
+        rowsAffected.reset();
+        lockAcquisitionCount.reset();
+        lockWaitNanos.reset();
+        maxLockWaitNanos.reset();
+        connectionBorrowCount.reset();
+        connectionBorrowWaitNanos.reset();
+        maxConnectionBorrowWaitNanos.reset();
+        bytesRead.reset();
+        migrationsApplied.reset();
+        migrationsFailed.reset();
+        migrationTimeNanos.reset();
+        runCount.reset();
+        failedRunCount.reset();
+        lastRunDurationNanos.set(0);
+    }
+}
@@ -0,0 +1,46 @@
+package metrics;
+
+/** *
+ * JMX view of {@link MigrationStatistics}. Times are in nanoseconds and accumulated since the registration
+ * or the last {@link #reset()}
+ * */
+public interface MigrationStatisticsMBean {
+
+    long getStatementCount();
+
+    long getStatementTimeNanos();
+
+    long getMaxStatementTimeNanos();
+
+    long getBatchCount();
+
+    long getRowsAffected();
+
+    long getLockAcquisitionCount();
+
+    long getLockWaitNanos();
+
+    long getMaxLockWaitNanos();
+
+    long getConnectionBorrowCount();
+
+    long getConnectionBorrowWaitNanos();
+
+    long getMaxConnectionBorrowWaitNanos();
+
+    long getBytesRead();
+
+    long getMigrationsApplied();
+
+    long getMigrationsFailed();
+
+    long getMigrationTimeNanos();
+
+    long getRunCount();
+
+    long getFailedRunCount();
+
+    long getLastRunDurationNanos();
+
+    void reset();
+}
@@ -0,0 +1,71 @@
+package parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.zip.CRC32C;
+
+/** *
+ * This class calculates the checksum of migration's content (CRC32C) over the statements produced by
+ * SqlStatementSplitter, so that changes in leading comments, whitespace between statements and line endings
+ * don't change it, while any change of the sql code does
+ * */
+public class MigrationChecksum {
+    private static final byte STATEMENT_SEPARATOR = ';';
+
+    private final CRC32C crc = new CRC32C();
+
+    /** *
+     * Calculating the checksum of the given statements
+     *
+     * @param statements statements of the migration
+     * @return checksum value
+     * */
+    public static int of(Iterator<String> statements) {
+        MigrationChecksum checksum = new MigrationChecksum();
+        statements.forEachRemaining(checksum::update);
+        return checksum.getValue();
+    }
+
+    /** *
+     * Adding the next statement of the migration to the checksum
+     *
+     * @param statement statement produced by SqlStatementSplitter
+     * */
+    public void update(String statement) {
+        // Перевод строк \r\n и \n не должен влиять на контрольную сумму
+        String normalized = statement.indexOf('\r') >= 0 ? statement.replace("\r", "") : statement;
+        crc.update(normalized.getBytes(StandardCharsets.UTF_8));
+        crc.update(STATEMENT_SEPARATOR);
+    }
+
+    /** *
+     * Wrapping the statements iterator so that the checksum is calculated while the statements are executed
+     *
+     * @param statements statements of the migration
+     * @return iterator returning the same statements
+     * */
+    public Iterator<String> track(Iterator<String> statements) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return statements.hasNext();
+            }
+
+            @Override
+            public String next() {
+                String statement = statements.next();
+                update(statement);
+                return statement;
+            }
+        };
+    }
+
+    /** *
+     * Getting the checksum of the statements added so far
+     *
+     * @return checksum value (stored in the checksum column of schema_history_table)
+     * */
+    public int getValue() {
+        return (int) crc.getValue();
+    }
+}
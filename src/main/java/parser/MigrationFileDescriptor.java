@@ -0,0 +1,154 @@
+package parser;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.File;
+
+/** *
+ * Migration or rollback file with the data parsed from its name: "V{version}__{description}.sql"
+ * for migrations and "U{version}__rollback_V{target version}__{description}.sql" for rollbacks.
+ * The name is parsed once, by a scanner over its characters (without regular expressions and substrings)
+ * */
+@Getter
+public final class MigrationFileDescriptor {
+    private static final String SEPARATOR = "__";
+    private static final String ROLLBACK_TARGET_PREFIX = "rollback_V";
+    private static final String SQL_EXTENSION = ".sql";
+
+    /** *
+     * Type of the file defined by the first letter of its name
+     * */
+    public enum Kind {
+        // V{version}__...
+        MIGRATION,
+        // U{version}__rollback_V{target version}__...
+        ROLLBACK
+    }
+
+    private final File file;
+    private final String name;
+    private final Kind kind;
+    private final int version;
+    // Для миграции совпадает с version, для отката - версия отменяемой миграции
+    private final int targetVersion;
+    @Getter(AccessLevel.NONE)
+    private final int descriptionStart;
+
+    private MigrationFileDescriptor(File file, String name, Kind kind, int version, int targetVersion,
+                                    int descriptionStart) {
+        this.file = file;
+        this.name = name;
+        this.kind = kind;
+        this.version = version;
+        this.targetVersion = targetVersion;
+        this.descriptionStart = descriptionStart;
+    }
+
+    /** *
+     * Parsing the name of the migration or rollback file. The file itself is not accessed
+     *
+     * @param file migration or rollback file
+     * @return parsed descriptor
+     * @throws IllegalArgumentException if the name doesn't follow the migration file format
+     * */
+    public static MigrationFileDescriptor of(File file) {
+        String name = file.getName();
+        MigrationFileDescriptor descriptor = scan(null, file, name);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("Invalid migration file format: " + name);
+        }
+        return descriptor;
+    }
+
+    /** *
+     * Parsing the name of a directory entry. The File object is created only for a matching name
+     *
+     * @param directory directory containing the entry
+     * @param name entry name
+     * @return parsed descriptor or null if the name doesn't follow the migration file format
+     * */
+    public static MigrationFileDescriptor parse(File directory, String name) {
+        return scan(directory, null, name);
+    }
+
+    /** *
+     * Getting the description part of the file name (between the version and the extension)
+     *
+     * @return description from the file name
+     * */
+    public String getDescription() {
+        return name.substring(descriptionStart, name.length() - SQL_EXTENSION.length());
+    }
+
+    public boolean isRollback() {
+        return kind == Kind.ROLLBACK;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static MigrationFileDescriptor scan(File directory, File file, String name) {
+        if (name.isEmpty() || !name.endsWith(SQL_EXTENSION)) {
+            return null;
+        }
+        int end = name.length() - SQL_EXTENSION.length();
+        char prefix = name.charAt(0);
+        if (prefix != 'V' && prefix != 'U') {
+            return null;
+        }
+
+        int versionEnd = skipDigits(name, 1, end);
+        int version = parseVersion(name, 1, versionEnd);
+        if (version < 0 || !name.startsWith(SEPARATOR, versionEnd)) {
+            return null;
+        }
+        int position = versionEnd + SEPARATOR.length();
+
+        Kind kind = Kind.MIGRATION;
+        int targetVersion = version;
+        if (prefix == 'U') {
+            if (!name.startsWith(ROLLBACK_TARGET_PREFIX, position)) {
+                return null;
+            }
+            int targetStart = position + ROLLBACK_TARGET_PREFIX.length();
+            int targetEnd = skipDigits(name, targetStart, end);
+            targetVersion = parseVersion(name, targetStart, targetEnd);
+            if (targetVersion < 0 || !name.startsWith(SEPARATOR, targetEnd)) {
+                return null;
+            }
+            kind = Kind.ROLLBACK;
+            position = targetEnd + SEPARATOR.length();
+        }
+        if (position > end) {
+            return null;
+        }
+        return new MigrationFileDescriptor(file != null ? file : new File(directory, name), name, kind, version,
+                targetVersion, position);
+    }
+
+    private static int skipDigits(String name, int start, int end) {
+        int position = start;
+        while (position < end && name.charAt(position) >= '0' && name.charAt(position) <= '9') {
+            position++;
+        }
+        return position;
+    }
+
+    // -1, если цифр нет или число не помещается в int
+    private static int parseVersion(String name, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (name.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+}
@@ -3,12 +3,33 @@ package parser;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 /** *
  * This class is used for mapping metadata (author, description) about the migration from sql file
+ * as well as execution directives declared in the file header ("-- @name: value" comment lines)
  * */
 @Setter
 @Getter
 public class MigrationMetadata{
     private String description;
     private String installedBy;
+    // @depends: версии миграций, которые должны быть применены до этой (при параллельном выполнении)
+    private List<Integer> dependsOn = List.of();
+    // @independent: миграция не зависит ни от одной другой
+    private boolean independent;
+    // @transaction: режим транзакций миграции
+    private TransactionMode transactionMode = TransactionMode.SHARED;
+    // @chunk-key: таблица и числовая колонка (table.column), по диапазонам которой миграция выполняется частями
+    private String chunkKey;
+    // @chunk-size: размер диапазона ключей одной части, null - значение из настроек
+    private Integer chunkSize;
+    // @rows-per-second: ограничение скорости обработки строк, null - значение из настроек
+    private Integer rowsPerSecond;
+    // @max-replication-lag: допустимое отставание реплик в миллисекундах, null - значение из настроек
+    private Integer maxReplicationLagMillis;
+    // @lock-timeout: lock_timeout выражений миграции в миллисекундах, null - значение из настроек
+    private Integer lockTimeoutMillis;
+    // @statement-timeout: statement_timeout выражений миграции в миллисекундах, null - значение из настроек
+    private Integer statementTimeoutMillis;
 }
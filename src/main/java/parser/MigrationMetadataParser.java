@@ -1,37 +1,127 @@
 package parser;
 
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
 /** *
  * This class is used for parsing metadata (author, description) about the migration
  * into a proper mapper class
  * */
+@Slf4j
 public class MigrationMetadataParser {
+    private static final String COMMENT_PREFIX = "--";
+    private static final String DIRECTIVE_PREFIX = "@";
+    private static final Pattern VERSION_SEPARATOR = Pattern.compile("[,\\s]+");
+    private static final Pattern CHUNK_KEY =
+            Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*){1,2}");
 
     /** *
-     * Parsing the migration metadata from sql-comments in .sql files
+     * Parsing the migration metadata from sql-comments in .sql files. The first comment line contains
+     * the author and the description of the migration, lines like "-- @depends: 3, 4" contain directives
      *
      * @param sql sql code to parse into a proper mapper class
      * @return MigrationMetadata object for further migrations executing
      * */
     public static MigrationMetadata parseMigrationMetadata(String sql) {
         MigrationMetadata metadata = new MigrationMetadata();
-        String[] lines = sql.split("\n");
-
-        for (String line : lines) {
-            if (line.trim().startsWith("--")) {
-                String[] tokens = line.split("--");
-                for (String token : tokens) {
-                    token = token.trim();
-                    if (!token.isEmpty()) {
-                        if (metadata.getInstalledBy() == null) {
-                            metadata.setInstalledBy(token);
-                        } else {
-                            metadata.setDescription(token);
-                        }
-                    }
+        // lines() разбивает текст лениво, поэтому разбор останавливается сразу после блока комментариев
+        Iterator<String> lines = sql.lines().iterator();
+
+        while (lines.hasNext()) {
+            String line = lines.next().trim();
+            if (!line.startsWith(COMMENT_PREFIX)) {
+                if (metadata.getInstalledBy() != null && !line.isEmpty()) {
+                    break;
                 }
-                break;
+                continue;
+            }
+            String comment = line.substring(COMMENT_PREFIX.length()).trim();
+            if (comment.startsWith(DIRECTIVE_PREFIX) && parseDirective(comment, metadata)) {
+                continue;
+            }
+            if (metadata.getInstalledBy() == null) {
+                parseAuthorAndDescription(line, metadata);
             }
         }
         return metadata;
     }
+
+    private static void parseAuthorAndDescription(String line, MigrationMetadata metadata) {
+        String[] tokens = line.split(COMMENT_PREFIX);
+        for (String token : tokens) {
+            token = token.trim();
+            if (!token.isEmpty()) {
+                if (metadata.getInstalledBy() == null) {
+                    metadata.setInstalledBy(token);
+                } else {
+                    metadata.setDescription(token);
+                }
+            }
+        }
+    }
+
+    // Неизвестное имя - обычный комментарий (например, "-- @TODO ..."), ошибкой считается только неверное значение
+    private static boolean parseDirective(String directive, MigrationMetadata metadata) {
+        int separator = directive.indexOf(':');
+        String name = (separator < 0 ? directive.substring(1) : directive.substring(1, separator))
+                .trim().toLowerCase().replace('_', '-');
+        String value = separator < 0 ? "" : directive.substring(separator + 1).trim();
+        switch (name) {
+            case "depends" -> metadata.setDependsOn(parseVersions(value));
+            case "independent" -> metadata.setIndependent(true);
+            case "transaction" -> metadata.setTransactionMode(TransactionMode.fromDirective(value));
+            case "chunk-key" -> metadata.setChunkKey(parseChunkKey(value));
+            case "chunk-size" -> metadata.setChunkSize(parseNumber(name, value, 1));
+            case "rows-per-second" -> metadata.setRowsPerSecond(parseNumber(name, value, 0));
+            case "max-replication-lag" -> metadata.setMaxReplicationLagMillis(parseNumber(name, value, 0));
+            case "lock-timeout" -> metadata.setLockTimeoutMillis(parseNumber(name, value, 0));
+            case "statement-timeout" -> metadata.setStatementTimeoutMillis(parseNumber(name, value, 0));
+            default -> {
+                if (metadata.getInstalledBy() != null) {
+                    log.warn("Ignoring unknown migration directive: {}", directive);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Integer> parseVersions(String value) {
+        List<Integer> versions = new ArrayList<>();
+        for (String token : VERSION_SEPARATOR.split(value)) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            String version = token.charAt(0) == 'V' || token.charAt(0) == 'v' ? token.substring(1) : token;
+            try {
+                versions.add(Integer.parseInt(version));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid migration version in @depends: " + token);
+            }
+        }
+        return List.copyOf(versions);
+    }
+
+    private static String parseChunkKey(String value) {
+        if (!CHUNK_KEY.matcher(value).matches()) {
+            throw new IllegalArgumentException("Invalid @chunk-key, expected table.column: " + value);
+        }
+        return value;
+    }
+
+    private static int parseNumber(String name, String value, int min) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= min) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Сообщение об ошибке ниже
+        }
+        throw new IllegalArgumentException("Invalid value of @" + name + ": " + value);
+    }
 }
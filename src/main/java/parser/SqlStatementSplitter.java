@@ -0,0 +1,283 @@
+package parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** *
+ * This class is used for splitting sql code from migration files into separate statements.
+ * It understands string literals, quoted identifiers, line and (nested) block comments and
+ * dollar-quoted bodies ($$ ... $$, $tag$ ... $tag$), so semicolons inside of them don't end a statement.
+ * Statements are produced lazily, one at a time, while the underlying reader is consumed.
+ * */
+public class SqlStatementSplitter implements Iterator<String> {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int NO_CHAR = -2;
+    // Не удерживаем в памяти буфер под самое большое выражение файла дольше, чем нужно
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int pushedBack = NO_CHAR;
+
+    private final StringBuilder current = new StringBuilder();
+    private String nextStatement;
+    private boolean endOfInput;
+
+    public SqlStatementSplitter(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** *
+     * Splitting sql code into separate statements
+     *
+     * @param sql sql code to split
+     * @return list of statements without terminating semicolons and leading comments
+     * */
+    public static List<String> split(String sql) {
+        List<String> statements = new ArrayList<>();
+        new SqlStatementSplitter(new StringReader(sql)).forEachRemaining(statements::add);
+        return statements;
+    }
+
+    /** *
+     * Getting the first keyword of the statement in upper case (e.g. SELECT, CREATE, INSERT)
+     *
+     * @param statement statement produced by the splitter (leading comments are already stripped)
+     * @return first keyword or empty string if the statement doesn't start with a word
+     * */
+    public static String leadingKeyword(String statement) {
+        int end = 0;
+        while (end < statement.length() && Character.isLetter(statement.charAt(end))) {
+            end++;
+        }
+        return statement.substring(0, end).toUpperCase();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextStatement == null && !endOfInput) {
+            nextStatement = readStatement();
+        }
+        return nextStatement != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String statement = nextStatement;
+        nextStatement = null;
+        return statement;
+    }
+
+    private String readStatement() {
+        current.setLength(0);
+        if (current.capacity() > MAX_RETAINED_CAPACITY) {
+            current.trimToSize();
+        }
+        // Индекс первого значимого (не комментарий и не пробел) символа в текущем выражении
+        int start = -1;
+        int c;
+        while ((c = read()) != -1) {
+            char ch = (char) c;
+            switch (ch) {
+                case ';' -> {
+                    if (start >= 0) {
+                        return current.substring(start).stripTrailing();
+                    }
+                    current.setLength(0);
+                    continue;
+                }
+                case '-' -> {
+                    if (peek() == '-') {
+                        current.append(ch);
+                        skipLineComment();
+                        continue;
+                    }
+                }
+                case '/' -> {
+                    if (peek() == '*') {
+                        current.append(ch);
+                        skipBlockComment();
+                        continue;
+                    }
+                }
+                case '\'' -> {
+                    boolean backslashEscapes = isEscapeStringPrefix();
+                    start = start < 0 ? current.length() : start;
+                    current.append(ch);
+                    skipQuoted('\'', backslashEscapes);
+                    continue;
+                }
+                case '"' -> {
+                    start = start < 0 ? current.length() : start;
+                    current.append(ch);
+                    skipQuoted('"', false);
+                    continue;
+                }
+                case '$' -> {
+                    start = start < 0 ? current.length() : start;
+                    boolean identifierPart = !current.isEmpty() && isIdentifierPart(current.charAt(current.length() - 1));
+                    current.append(ch);
+                    if (!identifierPart) {
+                        readDollarQuote();
+                    }
+                    continue;
+                }
+                default -> {
+                }
+            }
+            if (start < 0 && !Character.isWhitespace(ch)) {
+                start = current.length();
+            }
+            current.append(ch);
+        }
+        endOfInput = true;
+        closeReader();
+        return start >= 0 ? current.substring(start).stripTrailing() : null;
+    }
+
+    private void skipLineComment() {
+        int c;
+        while ((c = read()) != -1) {
+            current.append((char) c);
+            if (c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private void skipBlockComment() {
+        current.append((char) read());
+        int depth = 1;
+        int previous = NO_CHAR;
+        int c;
+        while (depth > 0 && (c = read()) != -1) {
+            current.append((char) c);
+            if (previous == '*' && c == '/') {
+                depth--;
+                c = NO_CHAR;
+            } else if (previous == '/' && c == '*') {
+                depth++;
+                c = NO_CHAR;
+            }
+            previous = c;
+        }
+    }
+
+    private void skipQuoted(char quote, boolean backslashEscapes) {
+        int c;
+        while ((c = read()) != -1) {
+            current.append((char) c);
+            if (backslashEscapes && c == '\\') {
+                int escaped = read();
+                if (escaped != -1) {
+                    current.append((char) escaped);
+                }
+            } else if (c == quote) {
+                // Экранирование удвоенной кавычкой ('') обрабатывается как выход и повторный вход в литерал
+                return;
+            }
+        }
+    }
+
+    private void readDollarQuote() {
+        int tagStart = current.length() - 1;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '$') {
+                current.append('$');
+                String delimiter = current.substring(tagStart);
+                skipDollarQuotedBody(delimiter);
+                return;
+            }
+            boolean validTagChar = current.length() - 1 == tagStart
+                    ? Character.isLetter(c) || c == '_'
+                    : isIdentifierPart((char) c) && c != '$';
+            if (!validTagChar) {
+                // Не тег ($1, $name и т.п.) - возвращаем символ для обычной обработки
+                pushedBack = c;
+                return;
+            }
+            current.append((char) c);
+        }
+    }
+
+    private void skipDollarQuotedBody(String delimiter) {
+        int bodyStart = current.length();
+        int c;
+        while ((c = read()) != -1) {
+            current.append((char) c);
+            if (c == '$' && current.length() - bodyStart >= delimiter.length() && endsWith(delimiter)) {
+                return;
+            }
+        }
+    }
+
+    private boolean endsWith(String suffix) {
+        int offset = current.length() - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (current.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEscapeStringPrefix() {
+        int length = current.length();
+        if (length == 0 || Character.toUpperCase(current.charAt(length - 1)) != 'E') {
+            return false;
+        }
+        return length == 1 || !isIdentifierPart(current.charAt(length - 2));
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+    }
+
+    private int peek() {
+        int c = read();
+        pushedBack = c;
+        return c;
+    }
+
+    private int read() {
+        if (pushedBack != NO_CHAR) {
+            int c = pushedBack;
+            pushedBack = NO_CHAR;
+            return c;
+        }
+        if (position == limit) {
+            try {
+                limit = reader.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void closeReader() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
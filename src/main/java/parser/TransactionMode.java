@@ -0,0 +1,32 @@
+package parser;
+
+/** *
+ * Defines how a migration is wrapped into transactions, declared with "-- @transaction: mode" in the file header
+ * */
+public enum TransactionMode {
+    // Миграция выполняется в общей транзакции вместе с соседними миграциями (поведение по умолчанию)
+    SHARED,
+    // Миграция выполняется и фиксируется в отдельной транзакции
+    PER_MIGRATION,
+    // Каждое выражение фиксируется сразу (CREATE INDEX CONCURRENTLY, VACUUM, ALTER TYPE ... ADD VALUE)
+    NONE,
+    // Каждое выражение фиксируется в отдельной транзакции вместе с контрольной точкой выполнения
+    PER_STATEMENT;
+
+    /** *
+     * Getting the transaction mode by its name from the migration header
+     *
+     * @param name mode name (shared, per_migration, per_statement or none), case insensitive
+     * @return transaction mode
+     * @throws IllegalArgumentException if the name is unknown
+     * */
+    public static TransactionMode fromDirective(String name) {
+        String normalized = name.trim().replace('-', '_').toUpperCase();
+        for (TransactionMode mode : values()) {
+            if (mode.name().equals(normalized)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown transaction mode in @transaction: " + name);
+    }
+}
@@ -2,6 +2,7 @@ package reader;
 
 import java.io.File;
 import java.util.List;
+import java.util.stream.Stream;
 
 /** *
  * Provides classes with the methods for analyzing proper directories and reading migration/rollback
@@ -10,4 +11,12 @@ import java.util.List;
 public interface FileReader {
     List<File> findDbMigrationFiles(String path);
     List<String> readDbMigrationFile(File file);
+
+    // Ленивое чтение выражений файла - в памяти одновременно находится только одно sql-выражение.
+    // Поток необходимо закрывать после использования
+    Stream<String> streamDbMigrationStatements(File file);
+
+    // Чтение только заголовка файла (начальных строк-комментариев с метаданными миграции;
+    // если автора в них нет - строк-комментариев до первой строки с автором, как это было до появления заголовка)
+    String readDbMigrationHeader(File file);
 }
@@ -1,14 +1,28 @@
 package reader;
 
 import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+import parser.MigrationMetadataParser;
+import parser.SqlStatementSplitter;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static utils.Validator.checkFileExists;
 
@@ -18,6 +32,7 @@ import static utils.Validator.checkFileExists;
  * */
 @Slf4j
 public class MigrationFileReader implements FileReader{
+    private static final int MAX_HEADER_LINES = 100;
 
     /** *
      * Method for searching .sql files in project's resources
@@ -53,11 +68,131 @@ public class MigrationFileReader implements FileReader{
     public List<String> readDbMigrationFile(File file) {
         checkFileExists(file);
         try {
-            String content = new String(Files.readAllBytes(Paths.get(file.getAbsolutePath())));
+            byte[] bytes = Files.readAllBytes(Paths.get(file.getAbsolutePath()));
+            MigrationMetrics.migrationFileRead(bytes.length);
+            String content = new String(bytes);
             return Arrays.asList(content);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-}
\ No newline at end of file
+    /** *
+     * Method for lazy reading of sql statements from the file. The file is read through a bounded buffer,
+     * so memory usage doesn't depend on the file size (only on the size of the largest statement)
+     *
+     * @param file the read file
+     * @return stream of sql statements, which must be closed after use
+     * */
+    @Override
+    public Stream<String> streamDbMigrationStatements(File file) {
+        checkFileExists(file);
+        try {
+            Reader reader = new InputStreamReader(new CountingInputStream(Files.newInputStream(file.toPath())),
+                    StandardCharsets.UTF_8);
+            SqlStatementSplitter splitter = new SqlStatementSplitter(reader);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(splitter,
+                            Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> closeQuietly(reader));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** *
+     * Method for reading comment lines of the file, which contain migration's metadata: the leading comment lines
+     * and, if there is no author line among them, the comment lines up to the first author line further in the file
+     * (metadata may follow the statements, as before the header was introduced)
+     *
+     * @param file the read file
+     * @return comment lines of the file with migration's metadata
+     * */
+    @Override
+    public String readDbMigrationHeader(File file) {
+        checkFileExists(file);
+        StringBuilder header = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new CountingInputStream(Files.newInputStream(file.toPath())), StandardCharsets.UTF_8))) {
+            String line;
+            int linesRead = 0;
+            boolean leadingComments = true;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (leadingComments) {
+                    if (linesRead++ < MAX_HEADER_LINES && (trimmed.isEmpty() || trimmed.startsWith("--"))) {
+                        header.append(line).append('\n');
+                        continue;
+                    }
+                    leadingComments = false;
+                    if (hasAuthor(header)) {
+                        break;
+                    }
+                }
+                // Остаток файла читается построчно, только если автор не указан в начальных комментариях
+                if (trimmed.startsWith("--")) {
+                    header.append(line).append('\n');
+                    if (hasAuthor(header)) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return header.toString();
+    }
+
+    // Ошибки директив здесь не важны - о них сообщит разбор заголовка вызывающим кодом
+    private static boolean hasAuthor(CharSequence header) {
+        try {
+            return MigrationMetadataParser.parseMigrationMetadata(header.toString()).getInstalledBy() != null;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    // Прочитанные байты сообщаются в метрики при закрытии файла
+    private static final class CountingInputStream extends FilterInputStream {
+        private long bytesRead;
+        private boolean closed;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                bytesRead++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                bytesRead += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!closed) {
+                closed = true;
+                MigrationMetrics.migrationFileRead(bytesRead);
+            }
+        }
+    }
+
+    private void closeQuietly(Reader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("Failed to close migration file reader: {}", e.getMessage());
+        }
+    }
+}
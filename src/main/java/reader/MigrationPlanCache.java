@@ -0,0 +1,216 @@
+package reader;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import parser.MigrationMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32C;
+
+/** *
+ * On-disk cache of parsed migration files. For every file it keeps the version parsed from the name
+ * (so the name is validated only once), the metadata parsed from the header and the checksum of the statements,
+ * which are reused while the file size and modification time (or, if they changed, the content hash) stay the same
+ * */
+@Slf4j
+public class MigrationPlanCache {
+    // Увеличивается при каждом изменении MigrationMetadata, иначе старый кэш отдаст новые поля пустыми
+    private static final int FORMAT_VERSION = 4;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path cacheFile;
+    private final Map<String, MigrationPlan> plans;
+    private volatile boolean dirty;
+
+    private MigrationPlanCache(Path cacheFile, Map<String, MigrationPlan> plans) {
+        this.cacheFile = cacheFile;
+        this.plans = new ConcurrentHashMap<>(plans);
+    }
+
+    /** *
+     * Loading the cache from the file. A missing, unreadable or outdated file gives an empty cache
+     *
+     * @param cacheFile path to the cache file, created on the first save
+     * @return cache object
+     * */
+    public static MigrationPlanCache load(Path cacheFile) {
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                CacheContent content = MAPPER.readValue(cacheFile.toFile(), CacheContent.class);
+                if (content.getFormatVersion() == FORMAT_VERSION && content.getPlans() != null) {
+                    return new MigrationPlanCache(cacheFile, content.getPlans());
+                }
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable migration plan cache {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return new MigrationPlanCache(cacheFile, Map.of());
+    }
+
+    /** *
+     * Getting the version of the file validated before. No file system access is made
+     *
+     * @param file migration file
+     * @return cached version or null if the file is not known yet
+     * */
+    public Integer getVersion(File file) {
+        MigrationPlan plan = plans.get(file.getAbsolutePath());
+        return plan != null ? plan.getVersion() : null;
+    }
+
+    /** *
+     * Remembering the version of the file whose name was validated
+     *
+     * @param file migration file
+     * @param version version parsed from the file name
+     * */
+    public void putVersion(File file, int version) {
+        plans.compute(file.getAbsolutePath(), (path, plan) -> {
+            if (plan != null && Integer.valueOf(version).equals(plan.getVersion())) {
+                return plan;
+            }
+            MigrationPlan updated = plan != null ? plan : new MigrationPlan();
+            updated.setVersion(version);
+            dirty = true;
+            return updated;
+        });
+    }
+
+    /** *
+     * Getting the metadata of the file from the cache, or parsing it with the given loader if the file changed
+     *
+     * @param file migration file
+     * @param loader reads and parses the metadata of the file
+     * @return metadata of the file
+     * */
+    public MigrationMetadata getMetadata(File file, Function<File, MigrationMetadata> loader) {
+        MigrationPlan plan = currentPlan(file);
+        if (plan.getMetadata() == null) {
+            plan.setMetadata(loader.apply(file));
+            dirty = true;
+        }
+        return plan.getMetadata();
+    }
+
+    /** *
+     * Getting the checksum of the file statements (see parser.MigrationChecksum) from the cache,
+     * or calculating it with the given loader if the file changed
+     *
+     * @param file migration file
+     * @param loader reads the file and calculates the checksum of its statements
+     * @return checksum of the file statements
+     * */
+    public int getStatementsChecksum(File file, ToIntFunction<File> loader) {
+        MigrationPlan plan = currentPlan(file);
+        if (plan.getStatementsChecksum() == null) {
+            plan.setStatementsChecksum(loader.applyAsInt(file));
+            dirty = true;
+        }
+        return plan.getStatementsChecksum();
+    }
+
+    // Запись, соответствующая текущему содержимому файла; данные, разобранные из старого содержимого, сбрасываются
+    private MigrationPlan currentPlan(File file) {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        MigrationPlan plan = plans.get(path);
+        if (plan != null && plan.getSize() == size && plan.getLastModified() == lastModified) {
+            return plan;
+        }
+
+        // Размер или время изменения отличаются - сравниваем содержимое (например, после git checkout)
+        long checksum = checksum(file);
+        if (plan != null && plan.getSize() == size && plan.getChecksum() == checksum) {
+            plan.setLastModified(lastModified);
+            dirty = true;
+            return plan;
+        }
+
+        MigrationPlan updated = new MigrationPlan();
+        updated.setVersion(plan != null ? plan.getVersion() : null);
+        updated.setSize(size);
+        updated.setLastModified(lastModified);
+        updated.setChecksum(checksum);
+        plans.put(path, updated);
+        dirty = true;
+        return updated;
+    }
+
+    /** *
+     * Writing the cache to the file if it was changed. Write errors are only logged, since the cache is optional
+     * */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            CacheContent content = new CacheContent();
+            content.setFormatVersion(FORMAT_VERSION);
+            content.setPlans(new HashMap<>(plans));
+            MAPPER.writeValue(tempFile.toFile(), content);
+            // Замена файла целиком, чтобы параллельно запущенный процесс не прочитал его наполовину записанным
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save migration plan cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    private static long checksum(File file) {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // Хеш не удалось посчитать - запись в кеше будет перезаписана
+            return -1;
+        }
+        return crc.getValue();
+    }
+
+    /** *
+     * Cached data about one migration file
+     * */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class MigrationPlan {
+        private Integer version;
+        private long size;
+        private long lastModified;
+        private long checksum;
+        private MigrationMetadata metadata;
+        private Integer statementsChecksum;
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    private static class CacheContent {
+        private int formatVersion;
+        private Map<String, MigrationPlan> plans;
+    }
+}
@@ -0,0 +1,60 @@
+package reader;
+
+import parser.MigrationFileDescriptor;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** *
+ * Migration file reader serving the statements and headers of a fixed set of migrations from memory.
+ * The files are read and split into statements once, so the same migration set can be applied
+ * to many schemas or databases without reading the files again. Other files are read from the disk
+ * */
+public class PreloadedMigrationFileReader extends MigrationFileReader {
+    private final Map<File, List<String>> statements;
+    private final Map<File, String> headers;
+
+    private PreloadedMigrationFileReader(Map<File, List<String>> statements, Map<File, String> headers) {
+        this.statements = statements;
+        this.headers = headers;
+    }
+
+    /** *
+     * Reading the migrations into memory
+     *
+     * @param source reader used to read the files
+     * @param migrations migrations to preload
+     * @return reader serving the preloaded migrations
+     * @throws java.io.UncheckedIOException if any of the files can't be read
+     * */
+    public static PreloadedMigrationFileReader load(MigrationFileReader source,
+                                                    List<MigrationFileDescriptor> migrations) {
+        Map<File, List<String>> statements = new HashMap<>();
+        Map<File, String> headers = new HashMap<>();
+        for (MigrationFileDescriptor migration : migrations) {
+            File file = migration.getFile();
+            headers.put(file, source.readDbMigrationHeader(file));
+            try (Stream<String> fileStatements = source.streamDbMigrationStatements(file)) {
+                statements.put(file, Collections.unmodifiableList(fileStatements.collect(Collectors.toList())));
+            }
+        }
+        return new PreloadedMigrationFileReader(statements, headers);
+    }
+
+    @Override
+    public Stream<String> streamDbMigrationStatements(File file) {
+        List<String> fileStatements = statements.get(file);
+        return fileStatements != null ? fileStatements.stream() : super.streamDbMigrationStatements(file);
+    }
+
+    @Override
+    public String readDbMigrationHeader(File file) {
+        String header = headers.get(file);
+        return header != null ? header : super.readDbMigrationHeader(file);
+    }
+}
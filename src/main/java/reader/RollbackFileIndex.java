@@ -0,0 +1,150 @@
+package reader;
+
+import lombok.extern.slf4j.Slf4j;
+import parser.MigrationFileDescriptor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** *
+ * Index of rollback files ("U{version}__rollback_V{target version}__....sql") of a directory by the version
+ * of the migration they roll back. The directory is scanned once, the index is kept in memory and rebuilt
+ * only when the modification time of the directory changes (a file is added, removed or renamed)
+ * */
+@Slf4j
+public final class RollbackFileIndex {
+    // Время изменения каталога хранится с точностью до 1-2 секунд на части файловых систем
+    private static final long MTIME_GRANULARITY_MILLIS = 2_000;
+    private static final Map<String, RollbackFileIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final long directoryLastModified;
+    private final long builtAt;
+    private final List<MigrationFileDescriptor> rollbacks;
+    // Открытая адресация: версия -> файл без упаковки ключей в Integer
+    private final int[] keys;
+    private final MigrationFileDescriptor[] values;
+    private final int mask;
+
+    private RollbackFileIndex(long directoryLastModified, long builtAt, List<MigrationFileDescriptor> rollbacks) {
+        this.directoryLastModified = directoryLastModified;
+        this.builtAt = builtAt;
+        this.rollbacks = Collections.unmodifiableList(rollbacks);
+        int capacity = Integer.highestOneBit(Math.max(2, rollbacks.size() * 2) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new MigrationFileDescriptor[capacity];
+        this.mask = capacity - 1;
+        for (MigrationFileDescriptor rollback : rollbacks) {
+            int slot = slot(rollback.getTargetVersion());
+            keys[slot] = rollback.getTargetVersion();
+            values[slot] = rollback;
+        }
+    }
+
+    /** *
+     * Getting the index of the directory, built on the first call and rebuilt after the directory changes
+     *
+     * @param directoryPath the directory containing rollback files
+     * @return index of rollback files, empty if the directory doesn't exist
+     * */
+    public static RollbackFileIndex forDirectory(String directoryPath) {
+        File directory = new File(directoryPath).getAbsoluteFile();
+        RollbackFileIndex index = INDEXES.get(directory.getPath());
+        if (index != null && index.isUpToDate(directory)) {
+            return index;
+        }
+        index = build(directory);
+        if (index.directoryLastModified != 0) {
+            INDEXES.put(directory.getPath(), index);
+        }
+        return index;
+    }
+
+    /** *
+     * Scanning the directory and building a new index without caching it
+     *
+     * @param directory the directory containing rollback files
+     * @return index of rollback files, empty if the directory doesn't exist
+     * */
+    public static RollbackFileIndex build(File directory) {
+        // Время изменения берется до чтения списка файлов, чтобы изменения во время чтения не потерялись
+        long lastModified = directory.lastModified();
+        long builtAt = System.currentTimeMillis();
+        String[] names = directory.list();
+        List<MigrationFileDescriptor> rollbacks = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                MigrationFileDescriptor descriptor = MigrationFileDescriptor.parse(directory, name);
+                if (descriptor != null && descriptor.isRollback()) {
+                    rollbacks.add(descriptor);
+                }
+            }
+        }
+        rollbacks.sort(Comparator.comparingInt(MigrationFileDescriptor::getTargetVersion)
+                .thenComparingInt(MigrationFileDescriptor::getVersion));
+        return new RollbackFileIndex(lastModified, builtAt, withoutDuplicates(rollbacks));
+    }
+
+    /** *
+     * Getting the rollback file of the migration
+     *
+     * @param targetVersion version of the migration to roll back
+     * @return rollback file descriptor or null if there is no such file
+     * */
+    public MigrationFileDescriptor get(int targetVersion) {
+        return values[slot(targetVersion)];
+    }
+
+    /** *
+     * Getting all rollback files of the directory
+     *
+     * @return rollback files sorted by the version of the migration they roll back
+     * */
+    public List<MigrationFileDescriptor> getRollbacks() {
+        return rollbacks;
+    }
+
+    public int size() {
+        return rollbacks.size();
+    }
+
+    // Если каталог изменился в пределах точности времени изменения до построения индекса,
+    // более позднее изменение может не изменить его - такой индекс не переиспользуется
+    private boolean isUpToDate(File directory) {
+        return directory.lastModified() == directoryLastModified
+                && builtAt - directoryLastModified > MTIME_GRANULARITY_MILLIS;
+    }
+
+    private int slot(int version) {
+        int slot = mix(version) & mask;
+        while (values[slot] != null && keys[slot] != version) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int version) {
+        int hash = version * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    // Для одной миграции может быть несколько файлов отката - используется файл с наибольшей версией
+    private static List<MigrationFileDescriptor> withoutDuplicates(List<MigrationFileDescriptor> sortedRollbacks) {
+        List<MigrationFileDescriptor> rollbacks = new ArrayList<>(sortedRollbacks.size());
+        for (MigrationFileDescriptor rollback : sortedRollbacks) {
+            int last = rollbacks.size() - 1;
+            if (last >= 0 && rollbacks.get(last).getTargetVersion() == rollback.getTargetVersion()) {
+                log.warn("Several rollback files for version {}, using {} instead of {}",
+                        rollback.getTargetVersion(), rollback.getName(), rollbacks.get(last).getName());
+                rollbacks.set(last, rollback);
+            } else {
+                rollbacks.add(rollback);
+            }
+        }
+        return rollbacks;
+    }
+}
@@ -0,0 +1,150 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/** *
+ * Writer of the binary columnar report format. Rows are collected into row groups, and every group is written
+ * column after column, so values of one column (versions, statuses, authors) are stored together and are
+ * compressed well. Layout (big-endian):
+ * <pre>
+ * file      := "MCOL" u8 formatVersion u16 columnCount (u8 type, u16 nameLength, name)* rowGroup* i32 0
+ * rowGroup  := i32 rowCount column*             - columns in the header order
+ * INT32     := rowCount * i32                   - version, checksum, execution_time
+ * INT64     := rowCount * i64                   - installed_on, epoch milliseconds (Long.MIN_VALUE for null)
+ * BOOLEAN   := rowCount * u8                    - success
+ * STRING    := rowCount * (i32 length, UTF-8)   - length -1 for null
+ * </pre>
+ * Only one row group is kept in memory
+ * */
+class ColumnarReportWriter implements Closeable {
+    static final byte[] MAGIC = "MCOL".getBytes(StandardCharsets.US_ASCII);
+    static final byte FORMAT_VERSION = 1;
+    static final byte INT32 = 1;
+    static final byte INT64 = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+    static final int DEFAULT_ROW_GROUP_SIZE = 8192;
+    private static final int INITIAL_COLUMN_CAPACITY = 16 * 1024;
+
+    private static final List<Column> COLUMNS = List.of(
+            new Column("version", INT32),
+            new Column("description", STRING),
+            new Column("script", STRING),
+            new Column("checksum", INT32),
+            new Column("installed_on", INT64),
+            new Column("installed_by", STRING),
+            new Column("execution_time", INT32),
+            new Column("success", BOOLEAN),
+            new Column("status", STRING));
+
+    private final WritableByteChannel channel;
+    private final int rowGroupSize;
+    private final ByteBuffer[] columnBuffers = new ByteBuffer[COLUMNS.size()];
+    private int rowCount;
+
+    ColumnarReportWriter(WritableByteChannel channel, int rowGroupSize) throws IOException {
+        this.channel = channel;
+        this.rowGroupSize = rowGroupSize;
+        for (int i = 0; i < columnBuffers.length; i++) {
+            columnBuffers[i] = ByteBuffer.allocate(INITIAL_COLUMN_CAPACITY);
+        }
+        writeHeader();
+    }
+
+    /** *
+     * Adding the current row of the result set to the row group, the group is written when it is full
+     *
+     * @param resultSet result set positioned on a schema_history_table row
+     * */
+    void write(ResultSet resultSet) throws SQLException, IOException {
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            Column column = COLUMNS.get(i);
+            switch (column.type()) {
+                case INT32 -> ensureCapacity(i, Integer.BYTES).putInt(resultSet.getInt(column.name()));
+                case INT64 -> {
+                    Timestamp timestamp = resultSet.getTimestamp(column.name());
+                    ensureCapacity(i, Long.BYTES).putLong(timestamp == null ? Long.MIN_VALUE : timestamp.getTime());
+                }
+                case BOOLEAN -> ensureCapacity(i, 1).put((byte) (resultSet.getBoolean(column.name()) ? 1 : 0));
+                default -> {
+                    String value = resultSet.getString(column.name());
+                    if (value == null) {
+                        ensureCapacity(i, Integer.BYTES).putInt(-1);
+                    } else {
+                        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                        ensureCapacity(i, Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+                    }
+                }
+            }
+        }
+        if (++rowCount == rowGroupSize) {
+            writeRowGroup();
+        }
+    }
+
+    /** *
+     * Writing the last row group and the end marker. The channel is not closed
+     * */
+    @Override
+    public void close() throws IOException {
+        if (rowCount > 0) {
+            writeRowGroup();
+        }
+        writeFully(ByteBuffer.allocate(Integer.BYTES).putInt(0).flip());
+    }
+
+    private void writeHeader() throws IOException {
+        int size = MAGIC.length + 1 + Short.BYTES;
+        for (Column column : COLUMNS) {
+            size += 1 + Short.BYTES + column.name().length();
+        }
+        ByteBuffer header = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .put(FORMAT_VERSION)
+                .putShort((short) COLUMNS.size());
+        for (Column column : COLUMNS) {
+            header.put(column.type())
+                    .putShort((short) column.name().length())
+                    .put(column.name().getBytes(StandardCharsets.US_ASCII));
+        }
+        writeFully(header.flip());
+    }
+
+    private void writeRowGroup() throws IOException {
+        writeFully(ByteBuffer.allocate(Integer.BYTES).putInt(rowCount).flip());
+        for (ByteBuffer columnBuffer : columnBuffers) {
+            writeFully(columnBuffer.flip());
+            columnBuffer.clear();
+        }
+        rowCount = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Буфер колонки растет вдвое, после первой группы строк перевыделений обычно уже нет
+    private ByteBuffer ensureCapacity(int column, int bytes) {
+        ByteBuffer buffer = columnBuffers[column];
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            grown.put(buffer.flip());
+            columnBuffers[column] = grown;
+            return grown;
+        }
+        return buffer;
+    }
+
+    private record Column(String name, byte type) {
+    }
+}
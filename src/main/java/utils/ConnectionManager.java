@@ -1,11 +1,10 @@
 package utils;
 
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** *
  * This class is used for providing connections to the database from the connection pool
@@ -17,7 +16,20 @@ public final class ConnectionManager {
     private static final String PASSWORD_KEY = "db.password";
     private static final int DEFAULT_POOL_SIZE = 10;
     private static final String POOL_SIZE_KEY = "db.pool.size";
-    private static BlockingQueue<Connection> pool;
+    private static final String POOL_MIN_SIZE_KEY = "db.pool.min.size";
+    private static final String ACQUIRE_TIMEOUT_KEY = "db.pool.acquire.timeout";
+    private static final String IDLE_TIMEOUT_KEY = "db.pool.idle.timeout";
+    private static final String MAX_LIFETIME_KEY = "db.pool.max.lifetime";
+    private static final String VALIDATION_TIMEOUT_KEY = "db.pool.validation.timeout";
+    private static final int DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30_000;
+    private static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 600_000;
+    private static final int DEFAULT_MAX_LIFETIME_MILLIS = 1_800_000;
+    private static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final String DATA_SOURCES_KEY = "db.datasources";
+    private static final String DATA_SOURCE_PREFIX = "db.datasource.";
+    private static ConnectionPool pool;
+    // Пулы именованных источников данных создаются при первом запросе соединения
+    private static final Map<String, ConnectionPool> DATA_SOURCE_POOLS = new ConcurrentHashMap<>();
 
     static {
         loadDriver();
@@ -28,13 +40,93 @@ public final class ConnectionManager {
      * Getting the connection from the pool
      *
      * @return Connection object
+     * @throws exception.ConnectionPoolException if no connection becomes available within the acquire timeout
      * */
     public static Connection get(){
-        try {
-            return pool.take();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        return pool.borrow();
+    }
+
+    /** *
+     * Getting current connection pool state (active/idle connections, wait time)
+     *
+     * @return metrics snapshot
+     * */
+    public static ConnectionPoolMetrics getPoolMetrics() {
+        return pool.getMetrics();
+    }
+
+    /** *
+     * Getting names of the data sources listed in the db.datasources property (e.g. database shards).
+     * Every data source is configured with db.datasource.{name}.url, .username, .password and .pool.size,
+     * the credentials and the pool size default to db.username, db.password and db.pool.size
+     *
+     * @return names of the data sources in the listed order, empty if the property is not set
+     * */
+    public static List<String> getDataSourceNames() {
+        String value = PropertiesUtils.get(DATA_SOURCES_KEY);
+        List<String> names = new ArrayList<>();
+        if (value == null) {
+            return names;
+        }
+        for (String name : value.split(",")) {
+            String trimmed = name.trim();
+            if (!trimmed.isEmpty() && !names.contains(trimmed)) {
+                names.add(trimmed);
+            }
         }
+        return names;
+    }
+
+    /** *
+     * Getting the connection from the pool of the named data source
+     *
+     * @param dataSource name of the data source from db.datasources
+     * @return Connection object
+     * @throws IllegalArgumentException if the data source is not listed or its url is not set
+     * @throws exception.ConnectionPoolException if no connection becomes available within the acquire timeout
+     * */
+    public static Connection get(String dataSource) {
+        return dataSourcePool(dataSource).borrow();
+    }
+
+    /** *
+     * Getting current pool state of the named data source
+     *
+     * @param dataSource name of the data source from db.datasources
+     * @return metrics snapshot
+     * */
+    public static ConnectionPoolMetrics getPoolMetrics(String dataSource) {
+        return dataSourcePool(dataSource).getMetrics();
+    }
+
+    private static ConnectionPool dataSourcePool(String dataSource) {
+        return DATA_SOURCE_POOLS.computeIfAbsent(dataSource, ConnectionManager::createDataSourcePool);
+    }
+
+    private static ConnectionPool createDataSourcePool(String dataSource) {
+        if (!getDataSourceNames().contains(dataSource)) {
+            throw new IllegalArgumentException("Unknown data source: " + dataSource);
+        }
+        String prefix = DATA_SOURCE_PREFIX + dataSource + ".";
+        String url = PropertiesUtils.get(prefix + "url");
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("Property " + prefix + "url is not set");
+        }
+        return new ConnectionPool(
+                url,
+                dataSourceProperty(prefix + "username", USERNAME_KEY),
+                dataSourceProperty(prefix + "password", PASSWORD_KEY),
+                PropertiesUtils.getInt(POOL_MIN_SIZE_KEY, 0),
+                PropertiesUtils.getInt(prefix + "pool.size", PropertiesUtils.getInt(POOL_SIZE_KEY, DEFAULT_POOL_SIZE)),
+                PropertiesUtils.getInt(ACQUIRE_TIMEOUT_KEY, DEFAULT_ACQUIRE_TIMEOUT_MILLIS),
+                PropertiesUtils.getInt(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT_MILLIS),
+                PropertiesUtils.getInt(MAX_LIFETIME_KEY, DEFAULT_MAX_LIFETIME_MILLIS),
+                PropertiesUtils.getInt(VALIDATION_TIMEOUT_KEY, DEFAULT_VALIDATION_TIMEOUT_SECONDS));
+    }
+
+    private static String dataSourceProperty(String key, String defaultKey) {
+        String value = PropertiesUtils.get(key);
+        return value == null || value.isBlank() ? PropertiesUtils.get(defaultKey) : value;
     }
 
     private static void loadDriver() {
@@ -45,33 +137,20 @@ public final class ConnectionManager {
         }
     }
 
+    // Соединения создаются лениво, при первом запросе (и в фоне - до db.pool.min.size)
     private static void initConnectionPool() {
-        String poolSize = PropertiesUtils.get(POOL_SIZE_KEY);
-        int size = poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize);
-        pool = new ArrayBlockingQueue<>(size);
-
-        //С использованием рефлексии и Proxy переопределяем для создаваемых в пуле коннектов метод close,
-        // чтобы возвращать коннект обратно в пул и делать его доступным, а не закрывать
-        for (int i = 0; i < size; i++){
-            Connection connection = open();
-            var proxyConnection = (Connection) Proxy.newProxyInstance(ConnectionManager.class.getClassLoader(),
-                    new Class[]{Connection.class},
-                    (proxy, method, args) -> method.getName().equals("close") ?
-                            pool.add((Connection) proxy) : method.invoke(connection, args));
-            pool.add(proxyConnection);
-        }
-    }
-    private static Connection open(){
-        try {
-            return DriverManager.getConnection(
-                    PropertiesUtils.get(URL_KEY),
-                    PropertiesUtils.get(USERNAME_KEY),
-                    PropertiesUtils.get(PASSWORD_KEY)
-            );
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        pool = new ConnectionPool(
+                PropertiesUtils.get(URL_KEY),
+                PropertiesUtils.get(USERNAME_KEY),
+                PropertiesUtils.get(PASSWORD_KEY),
+                PropertiesUtils.getInt(POOL_MIN_SIZE_KEY, 0),
+                PropertiesUtils.getInt(POOL_SIZE_KEY, DEFAULT_POOL_SIZE),
+                PropertiesUtils.getInt(ACQUIRE_TIMEOUT_KEY, DEFAULT_ACQUIRE_TIMEOUT_MILLIS),
+                PropertiesUtils.getInt(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT_MILLIS),
+                PropertiesUtils.getInt(MAX_LIFETIME_KEY, DEFAULT_MAX_LIFETIME_MILLIS),
+                PropertiesUtils.getInt(VALIDATION_TIMEOUT_KEY, DEFAULT_VALIDATION_TIMEOUT_SECONDS));
     }
+
     private ConnectionManager() {
     }
 }
@@ -0,0 +1,309 @@
+package utils;
+
+import exception.ConnectionPoolException;
+import lombok.extern.slf4j.Slf4j;
+import metrics.MigrationMetrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** *
+ * Connection pool with lazy connection creation, acquire timeouts, validation on borrow,
+ * idle eviction and max connection lifetime
+ * */
+@Slf4j
+public class ConnectionPool implements AutoCloseable {
+    // Соединение, использованное недавно, не проверяется через isValid при выдаче - экономим round trip
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long IDLE_POLL_SLICE_MILLIS = 50;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30_000;
+    private static final long MIN_HOUSEKEEPING_PERIOD_MILLIS = 10;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final int validationTimeoutSeconds;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis,
+                          int validationTimeoutSeconds) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis);
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Простой и время жизни проверяются не реже, чем за половину соответствующего таймаута
+        long housekeepingPeriodMillis = Math.max(MIN_HOUSEKEEPING_PERIOD_MILLIS,
+                Math.min(HOUSEKEEPING_PERIOD_MILLIS, Math.min(idleTimeoutMillis, maxLifetimeMillis) / 2));
+        // Минимальное количество соединений создается в фоне, не задерживая старт приложения
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, 0, housekeepingPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** *
+     * Getting the connection from the pool. Closing the returned connection gives it back to the pool
+     *
+     * @return Connection object
+     * @throws ConnectionPoolException if no connection becomes available within the acquire timeout
+     * */
+    public Connection borrow() {
+        if (closed) {
+            throw new ConnectionPoolException("Connection pool is closed");
+        }
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw acquireTimeout();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionPoolException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledEntry entry = takeUsableEntry(deadline);
+            activeConnections.incrementAndGet();
+            recordWait(System.nanoTime() - startTime);
+            return new PooledConnection(entry.connection, connection -> release(entry));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** *
+     * Getting current pool state and wait time statistics
+     *
+     * @return metrics snapshot
+     * */
+    public ConnectionPoolMetrics getMetrics() {
+        return new ConnectionPoolMetrics(
+                maxSize,
+                totalConnections.get(),
+                activeConnections.get(),
+                idle.size(),
+                permits.getQueueLength(),
+                borrowCount.sum(),
+                timeoutCount.sum(),
+                totalWaitNanos.sum(),
+                maxWaitNanos.get());
+    }
+
+    /** *
+     * Closing idle connections and stopping background eviction. Borrowed connections are closed when returned
+     * */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    private PooledEntry takeUsableEntry(long deadline) {
+        while (true) {
+            PooledEntry entry = idle.pollFirst();
+            if (entry == null && tryReserveSlot()) {
+                return createEntry();
+            }
+            if (entry == null) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    throw acquireTimeout();
+                }
+                // Все слоты заняты: ждем возврата соединения небольшими интервалами, так как
+                // освободиться может и сам слот (при удалении сломанного соединения)
+                entry = pollIdle(Math.min(remainingMillis, IDLE_POLL_SLICE_MILLIS));
+                if (entry == null) {
+                    continue;
+                }
+            }
+            if (isUsable(entry)) {
+                return entry;
+            }
+            discard(entry);
+        }
+    }
+
+    private PooledEntry pollIdle(long timeoutMillis) {
+        try {
+            return idle.pollFirst(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionPoolException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    private boolean tryReserveSlot() {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= maxSize) {
+                return false;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+        return true;
+    }
+
+    private PooledEntry createEntry() {
+        try {
+            Connection connection = DriverManager.getConnection(url, username, password);
+            return new PooledEntry(connection);
+        } catch (SQLException e) {
+            totalConnections.decrementAndGet();
+            throw new ConnectionPoolException("Failed to open a database connection", e);
+        }
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        long now = System.nanoTime();
+        if (now - entry.createdAt > maxLifetimeNanos) {
+            return false;
+        }
+        if (now - entry.lastUsedAt < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return entry.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Вызывается один раз на каждую выданную обертку PooledConnection при ее закрытии
+    private void release(PooledEntry entry) {
+        activeConnections.decrementAndGet();
+        try {
+            if (closed || !resetState(entry)) {
+                discard(entry);
+            } else {
+                entry.lastUsedAt = System.nanoTime();
+                idle.offerFirst(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Соединение возвращается в пул в режиме autocommit без незавершенной транзакции
+    private boolean resetState(PooledEntry entry) {
+        try {
+            Connection connection = entry.connection;
+            if (connection.isClosed() || System.nanoTime() - entry.createdAt > maxLifetimeNanos) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("Discarding broken connection: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        totalConnections.decrementAndGet();
+        try {
+            entry.connection.close();
+        } catch (SQLException e) {
+            log.debug("Failed to close discarded connection: {}", e.getMessage());
+        }
+    }
+
+    private void houseKeep() {
+        try {
+            long now = System.nanoTime();
+            List<PooledEntry> expired = new ArrayList<>();
+            Iterator<PooledEntry> iterator = idle.descendingIterator();
+            int retained = idle.size();
+            while (iterator.hasNext()) {
+                PooledEntry entry = iterator.next();
+                boolean lifetimeExceeded = now - entry.createdAt > maxLifetimeNanos;
+                boolean idleExceeded = now - entry.lastUsedAt > idleTimeoutNanos && retained > minSize;
+                if ((lifetimeExceeded || idleExceeded) && idle.remove(entry)) {
+                    expired.add(entry);
+                    retained--;
+                }
+            }
+            expired.forEach(this::discard);
+
+            while (!closed && totalConnections.get() < minSize && tryReserveSlot()) {
+                PooledEntry entry = createEntry();
+                entry.lastUsedAt = System.nanoTime();
+                idle.offerLast(entry);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Connection pool housekeeping failed: {}", e.getMessage());
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        MigrationMetrics.connectionBorrowed(waitNanos);
+    }
+
+    private ConnectionPoolException acquireTimeout() {
+        timeoutCount.increment();
+        return new ConnectionPoolException("Timed out after " + acquireTimeoutMillis
+                + " ms waiting for a database connection. " + getMetrics());
+    }
+
+    private static final class PooledEntry {
+        private final Connection connection;
+        private final long createdAt = System.nanoTime();
+        private volatile long lastUsedAt = createdAt;
+
+        private PooledEntry(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
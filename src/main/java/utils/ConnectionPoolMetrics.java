@@ -0,0 +1,27 @@
+package utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** *
+ * Snapshot of the connection pool state and wait time statistics
+ * */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ConnectionPoolMetrics {
+    private final int maxConnections;
+    private final int totalConnections;
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int pendingThreads;
+    private final long borrowCount;
+    private final long timeoutCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    public long getAverageWaitNanos() {
+        return borrowCount == 0 ? 0 : totalWaitNanos / borrowCount;
+    }
+}
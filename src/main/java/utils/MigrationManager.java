@@ -1,13 +1,27 @@
 package utils;
 
 import lombok.extern.slf4j.Slf4j;
+import parser.MigrationChecksum;
+import parser.MigrationFileDescriptor;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
 import reader.MigrationFileReader;
+import reader.MigrationPlanCache;
+import reader.RollbackFileIndex;
 
 import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
 /** *
  * Utility class for managing migrations and rollbacks
@@ -15,11 +29,28 @@ import java.util.List;
 @Slf4j
 public class MigrationManager {
 
-    private static final String ROLLBACK_FILE_PATTERN = "U[0-9]+__rollback_V" + "%d" + "__.*\\.sql";
+    private static final String PLAN_CACHE_KEY = "db.migration.plan.cache";
+    private static final String CURRENT_VERSION_SQL = """
+            SELECT MAX(version) FROM schema_history_table WHERE kind = 'migration' AND status = 'applied'
+            """;
+    private static final String CURRENT_VERSION_FROM_STATE_SQL = """
+            SELECT COALESCE((SELECT current_version FROM schema_state WHERE id = 1),
+                            (SELECT MAX(version) FROM schema_history_table WHERE kind = 'migration' AND status = 'applied'))
+            """;
     private final MigrationFileReader migrationFileReader;
+    private final MigrationPlanCache planCache;
 
     public MigrationManager(MigrationFileReader migrationFileReader) {
+        this(migrationFileReader, planCacheFromProperties());
+    }
+
+    /** *
+     * @param migrationFileReader reader of migration files
+     * @param planCache cache of parsed migration files, or null to parse them on every run
+     * */
+    public MigrationManager(MigrationFileReader migrationFileReader, MigrationPlanCache planCache) {
         this.migrationFileReader = migrationFileReader;
+        this.planCache = planCache;
     }
 
     /** *
@@ -29,12 +60,74 @@ public class MigrationManager {
      * @return list of found files
      * */
     public List<File> findAndSortMigrationFiles(String directoryPath) {
+        List<MigrationFileDescriptor> migrations = findAndSortMigrations(directoryPath);
+        List<File> migrationFiles = new ArrayList<>(migrations.size());
+        for (MigrationFileDescriptor migration : migrations) {
+            migrationFiles.add(migration.getFile());
+        }
+        return migrationFiles;
+    }
+
+    /** *
+     * Searching for the migration files in given directory and parsing their names
+     *
+     * @param directoryPath the directory path for .sql files
+     * @return found files sorted by version
+     * @throws IllegalArgumentException if no files are found or a file name has invalid format
+     * */
+    public List<MigrationFileDescriptor> findAndSortMigrations(String directoryPath) {
         List<File> migrationFiles = migrationFileReader.findDbMigrationFiles(directoryPath);
-        validateFileFormat(migrationFiles);
-        List<File> mutableMigrationFiles = new ArrayList<>(migrationFiles);
+        if (migrationFiles == null || migrationFiles.isEmpty()) {
+            throw new IllegalArgumentException("No migration files found in the path");
+        }
+
+        // Имя каждого файла разбирается один раз, сортировка сравнивает уже готовые версии
+        List<MigrationFileDescriptor> migrations = new ArrayList<>(migrationFiles.size());
+        for (File file : migrationFiles) {
+            migrations.add(describe(file));
+        }
+
+        migrations.sort(Comparator.comparingInt(MigrationFileDescriptor::getVersion));
+        savePlanCache();
+        return migrations;
+    }
 
-        mutableMigrationFiles.sort(Comparator.comparing(this::extractVersionFromFilename));
-        return mutableMigrationFiles;
+    /** *
+     * Getting the metadata (author, description, directives) from the header of the migration file.
+     * With the plan cache enabled, the header of an unchanged file is not read again
+     *
+     * @param file migration file
+     * @return parsed metadata
+     * */
+    public MigrationMetadata readMigrationMetadata(File file) {
+        if (planCache == null) {
+            return parseMigrationMetadata(file);
+        }
+        return planCache.getMetadata(file, this::parseMigrationMetadata);
+    }
+
+    /** *
+     * Calculating the checksum of the migration statements (see parser.MigrationChecksum), the same value
+     * is stored in schema_history_table when the migration is applied
+     *
+     * @param file migration file
+     * @return checksum of the file statements
+     * @throws UncheckedIOException if the file can't be read
+     * */
+    public int calculateChecksum(File file) {
+        if (planCache == null) {
+            return readChecksum(file);
+        }
+        return planCache.getStatementsChecksum(file, this::readChecksum);
+    }
+
+    /** *
+     * Saving the plan cache (if enabled) after migration files were processed
+     * */
+    public void savePlanCache() {
+        if (planCache != null) {
+            planCache.save();
+        }
     }
 
     /** *
@@ -44,12 +137,11 @@ public class MigrationManager {
      * @return version's number
      * */
     public Integer getCurrentVersion(Connection connection) {
+        // Сводная таблица schema_state (если включена) - чтение одной строки по первичному ключу,
+        // иначе - обратный обход частичного индекса schema_history_applied_idx
+        String query = SchemaHistoryUtil.isStateTableEnabled() ? CURRENT_VERSION_FROM_STATE_SQL : CURRENT_VERSION_SQL;
         try (Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery(
-                     """
-                            SELECT MAX(version) FROM schema_history_table WHERE script LIKE 'V%'
-                            AND status = 'applied'
-                         """)){
+             ResultSet resultSet = statement.executeQuery(query)){
             if (resultSet.next()) {
                 return resultSet.getInt(1);
             }
@@ -77,7 +169,7 @@ public class MigrationManager {
      * @return version's number
      * */
     public Integer extractVersionFromFilename(File file) {
-        return Integer.valueOf(file.getName().split("__")[0].substring(1));
+        return MigrationFileDescriptor.of(file).getVersion();
     }
 
     /** *
@@ -88,15 +180,19 @@ public class MigrationManager {
      * @return found file
      * */
     public File findRollbackFileByVersion(String directoryPath, int scriptVersion) {
-        File dir = new File(directoryPath);
-        String pattern = String.format(ROLLBACK_FILE_PATTERN, scriptVersion);
-        // Поиск файла
-        File[] files = dir.listFiles((dir1, name) -> name.matches(pattern));
-        if (files != null && files.length > 0) {
-            return files[0];
-        } else {
-            return null;
-        }
+        MigrationFileDescriptor rollback = getRollbackIndex(directoryPath).get(scriptVersion);
+        return rollback != null ? rollback.getFile() : null;
+    }
+
+    /** *
+     * Getting the index of rollback files of the directory by the versions of migrations they roll back.
+     * The directory is scanned again only after files in it were added, removed or renamed
+     *
+     * @param directoryPath the directory containing rollback files
+     * @return index of rollback files
+     * */
+    public RollbackFileIndex getRollbackIndex(String directoryPath) {
+        return RollbackFileIndex.forDirectory(directoryPath);
     }
 
     /**
@@ -122,14 +218,95 @@ public class MigrationManager {
         return appliedMigrations;
     }
 
-    private void validateFileFormat(List<File> files) {
-        if (files == null || files.isEmpty()) {
-            throw new IllegalArgumentException("No migration files found in the path");
+    /**
+     * Getting versions of all applied migrations (not only the highest one), which is needed when
+     * migrations may be applied out of order, e.g. in parallel mode.
+     *
+     * @param connection the connection to your database.
+     * @return set of applied migrations versions.
+     * @throws SQLException when database access error occurs.
+     */
+    public Set<Integer> getAppliedVersions(Connection connection) throws SQLException {
+        Set<Integer> appliedVersions = new HashSet<>();
+
+        String query = "SELECT version FROM schema_history_table WHERE kind = 'migration' AND status = 'applied'";
+        try (PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet resultSet = statement.executeQuery()) {
+
+            while (resultSet.next()) {
+                appliedVersions.add(resultSet.getInt(1));
+            }
         }
 
-        for (File file : files) {
-            Validator.checkFileExists(file);
-            Validator.checkMigrationFileFormat(file);
+        return appliedVersions;
+    }
+
+    /**
+     * Comparing applied migrations with the versions applied before a run.
+     *
+     * @param connection the connection to your database.
+     * @param appliedBefore versions applied before the run (see getAppliedVersions).
+     * @return sorted versions applied by the run, or rolled back by it if rolledBack is true.
+     * @throws SQLException when database access error occurs.
+     */
+    public List<Integer> getVersionsChangedSince(Connection connection, Set<Integer> appliedBefore,
+                                                 boolean rolledBack) throws SQLException {
+        Set<Integer> appliedAfter = getAppliedVersions(connection);
+        Set<Integer> changed = new TreeSet<>(rolledBack ? appliedBefore : appliedAfter);
+        changed.removeAll(rolledBack ? appliedAfter : appliedBefore);
+        return new ArrayList<>(changed);
+    }
+
+    /**
+     * Getting checksums of all applied migrations with a single query.
+     *
+     * @param connection the connection to your database.
+     * @return map of applied migrations versions to their checksums (null if it wasn't recorded).
+     * @throws SQLException when database access error occurs.
+     */
+    public Map<Integer, Integer> getAppliedChecksums(Connection connection) throws SQLException {
+        Map<Integer, Integer> appliedChecksums = new HashMap<>();
+
+        String query = "SELECT version, checksum FROM schema_history_table WHERE kind = 'migration' AND status = 'applied'";
+        try (PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet resultSet = statement.executeQuery()) {
+
+            while (resultSet.next()) {
+                int checksum = resultSet.getInt(2);
+                appliedChecksums.put(resultSet.getInt(1), resultSet.wasNull() ? null : checksum);
+            }
+        }
+
+        return appliedChecksums;
+    }
+
+    private int readChecksum(File file) {
+        try (Stream<String> statements = migrationFileReader.streamDbMigrationStatements(file)) {
+            return MigrationChecksum.of(statements.iterator());
+        }
+    }
+
+    // Файл из кеша уже прошел проверку существования
+    private MigrationFileDescriptor describe(File file) {
+        if (planCache != null && planCache.getVersion(file) != null) {
+            return MigrationFileDescriptor.of(file);
+        }
+        MigrationFileDescriptor descriptor = Validator.checkMigrationFileFormat(file);
+        if (planCache != null) {
+            planCache.putVersion(file, descriptor.getVersion());
+        }
+        return descriptor;
+    }
+
+    private MigrationMetadata parseMigrationMetadata(File file) {
+        return MigrationMetadataParser.parseMigrationMetadata(migrationFileReader.readDbMigrationHeader(file));
+    }
+
+    private static MigrationPlanCache planCacheFromProperties() {
+        String cacheFile = PropertiesUtils.get(PLAN_CACHE_KEY);
+        if (cacheFile == null || cacheFile.isBlank()) {
+            return null;
         }
+        return MigrationPlanCache.load(Path.of(cacheFile.trim()));
     }
 }
@@ -0,0 +1,156 @@
+package utils;
+
+import lombok.Getter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import static utils.Validator.checkNotNull;
+
+/** *
+ * Checkpoints of a migration whose statements are committed one by one ('none' and 'per_statement'
+ * transaction modes). After every statement the schema_migration_progress table stores the number of executed
+ * statements and the checksum of them (see parser.MigrationChecksum), so a failed migration is resumed
+ * from the first statement that wasn't executed. Chunked migrations store the start of the next key range instead.
+ * The checkpoint is deleted when the migration completes
+ * */
+public class MigrationProgress implements AutoCloseable {
+    private final static String CREATE_PROGRESS_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS schema_migration_progress (
+                            version INTEGER PRIMARY KEY,
+                            script VARCHAR(200) NOT NULL,
+                            statement_ordinal INTEGER NOT NULL,
+                            checksum INTEGER NOT NULL,
+                            chunk_key BIGINT,
+                            updated_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                            );
+            """;
+    private final static String SELECT_PROGRESS_SQL = """
+            SELECT statement_ordinal, checksum, chunk_key FROM schema_migration_progress WHERE version = ? AND script = ?
+            """;
+    private final static String SAVE_PROGRESS_SQL = """
+            INSERT INTO schema_migration_progress (version, script, statement_ordinal, checksum, chunk_key, updated_on)
+            VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (version) DO UPDATE
+            SET script = EXCLUDED.script, statement_ordinal = EXCLUDED.statement_ordinal,
+                checksum = EXCLUDED.checksum, chunk_key = EXCLUDED.chunk_key, updated_on = EXCLUDED.updated_on
+            """;
+    private final static String DELETE_PROGRESS_SQL = "DELETE FROM schema_migration_progress WHERE version = ?";
+
+    private final Connection connection;
+    private final int version;
+    private final String script;
+    // Количество выражений, выполненных при предыдущих запусках, и их контрольная сумма
+    @Getter
+    private final int completedStatements;
+    @Getter
+    private final int completedChecksum;
+    // Начало следующего диапазона ключей миграции, выполняемой частями
+    @Getter
+    private final Long nextChunkKey;
+    private PreparedStatement saveStatement;
+
+    private MigrationProgress(Connection connection, int version, String script, int completedStatements,
+                              int completedChecksum, Long nextChunkKey) {
+        this.connection = connection;
+        this.version = version;
+        this.script = script;
+        this.completedStatements = completedStatements;
+        this.completedChecksum = completedChecksum;
+        this.nextChunkKey = nextChunkKey;
+    }
+
+    /** *
+     * Creating the schema_migration_progress table if it doesn't exist
+     *
+     * @param connection opened connection to the database
+     * */
+    public static void createMigrationProgressTable(Connection connection) throws SQLException {
+        checkNotNull(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_PROGRESS_TABLE_SQL);
+        }
+    }
+
+    /** *
+     * Loading the checkpoint of the migration left by a previous failed run
+     *
+     * @param connection opened connection to the database
+     * @param version the version of the migration
+     * @param script file name
+     * @return progress of the migration, with no completed statements if it wasn't started before
+     * */
+    public static MigrationProgress load(Connection connection, int version, String script) throws SQLException {
+        checkNotNull(connection);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_PROGRESS_SQL)) {
+            statement.setInt(1, version);
+            statement.setString(2, script);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    long chunkKey = resultSet.getLong(3);
+                    return new MigrationProgress(connection, version, script, resultSet.getInt(1),
+                            resultSet.getInt(2), resultSet.wasNull() ? null : chunkKey);
+                }
+            }
+        }
+        return new MigrationProgress(connection, version, script, 0, 0, null);
+    }
+
+    /** *
+     * Saving the checkpoint after the statement was executed. It is committed together with the statement
+     * if both are executed in one transaction
+     *
+     * @param statementOrdinal number of executed statements
+     * @param checksum checksum of the executed statements
+     * */
+    public void checkpoint(int statementOrdinal, int checksum) throws SQLException {
+        save(statementOrdinal, checksum, null);
+    }
+
+    /** *
+     * Saving the checkpoint of the migration executed in key range chunks, committed together with the chunk
+     *
+     * @param nextChunkKey start of the next key range
+     * @param checksum checksum of the migration statements
+     * */
+    public void checkpointChunk(long nextChunkKey, int checksum) throws SQLException {
+        save(0, checksum, nextChunkKey);
+    }
+
+    private void save(int statementOrdinal, int checksum, Long nextChunkKey) throws SQLException {
+        if (saveStatement == null) {
+            saveStatement = connection.prepareStatement(SAVE_PROGRESS_SQL);
+        }
+        saveStatement.setInt(1, version);
+        saveStatement.setString(2, script);
+        saveStatement.setInt(3, statementOrdinal);
+        saveStatement.setInt(4, checksum);
+        if (nextChunkKey == null) {
+            saveStatement.setNull(5, Types.BIGINT);
+        } else {
+            saveStatement.setLong(5, nextChunkKey);
+        }
+        saveStatement.executeUpdate();
+    }
+
+    /** *
+     * Deleting the checkpoint of the completed migration
+     * */
+    public void complete() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DELETE_PROGRESS_SQL)) {
+            statement.setInt(1, version);
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (saveStatement != null) {
+            saveStatement.close();
+        }
+    }
+}
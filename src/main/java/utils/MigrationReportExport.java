@@ -0,0 +1,24 @@
+package utils;
+
+import lombok.Getter;
+
+/** *
+ * Result of writing a migration history report: the number of reported rows and the largest reported
+ * schema_history_table id, which is the watermark of the next incremental export
+ * */
+@Getter
+public class MigrationReportExport {
+    private final long rows;
+    // id последней выгруженной строки или исходный водяной знак, если новых строк нет
+    private final long lastId;
+
+    MigrationReportExport(long rows, long lastId) {
+        this.rows = rows;
+        this.lastId = lastId;
+    }
+
+    @Override
+    public String toString() {
+        return rows + " rows, last id " + lastId;
+    }
+}
@@ -0,0 +1,135 @@
+package utils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/** *
+ * Filter of schema_history_table rows included into migration reports. Every condition is optional,
+ * version bounds are inclusive, the installation date range includes its start and excludes its end:
+ * new MigrationReportFilter().fromVersion(10).status("failed").installedBy("deployer").
+ * Rows are reported in the order of installation (id), limit restricts their number and afterId skips rows
+ * exported before, so the history can be read page by page or incrementally
+ * */
+public class MigrationReportFilter {
+    private long afterId;
+    private Integer fromVersion;
+    private Integer toVersion;
+    private LocalDateTime installedFrom;
+    private LocalDateTime installedBefore;
+    private String status;
+    private String installedBy;
+    private int limit;
+
+    /** *
+     * Filter without conditions, all rows are reported
+     *
+     * @return new filter
+     * */
+    public static MigrationReportFilter all() {
+        return new MigrationReportFilter();
+    }
+
+    public MigrationReportFilter afterId(long id) {
+        this.afterId = id;
+        return this;
+    }
+
+    public MigrationReportFilter fromVersion(int version) {
+        this.fromVersion = version;
+        return this;
+    }
+
+    public MigrationReportFilter toVersion(int version) {
+        this.toVersion = version;
+        return this;
+    }
+
+    public MigrationReportFilter installedFrom(LocalDateTime dateTime) {
+        this.installedFrom = dateTime;
+        return this;
+    }
+
+    public MigrationReportFilter installedBefore(LocalDateTime dateTime) {
+        this.installedBefore = dateTime;
+        return this;
+    }
+
+    public MigrationReportFilter status(String status) {
+        this.status = status;
+        return this;
+    }
+
+    public MigrationReportFilter installedBy(String author) {
+        this.installedBy = author;
+        return this;
+    }
+
+    public MigrationReportFilter limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Report limit can't be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    long getAfterId() {
+        return afterId;
+    }
+
+    /** *
+     * Appending the conditions, the order and the limit of the filter to the query
+     *
+     * @param selectSql query selecting schema_history_table rows without WHERE clause
+     * @return filtered query with placeholders for {@link #bind(PreparedStatement)}
+     * */
+    String apply(String selectSql) {
+        StringJoiner conditions = new StringJoiner(" AND ", "WHERE ", "\n").setEmptyValue("");
+        collect(conditions, new ArrayList<>());
+        return selectSql + conditions + "ORDER BY id" + (limit > 0 ? " LIMIT " + limit : "");
+    }
+
+    void bind(PreparedStatement statement) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        collect(new StringJoiner(" AND "), parameters);
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    // Условия и параметры собираются в одном месте, чтобы порядок плейсхолдеров всегда совпадал
+    private void collect(StringJoiner conditions, List<Object> parameters) {
+        if (afterId > 0) {
+            conditions.add("id > ?");
+            parameters.add(afterId);
+        }
+        if (fromVersion != null) {
+            conditions.add("version >= ?");
+            parameters.add(fromVersion);
+        }
+        if (toVersion != null) {
+            conditions.add("version <= ?");
+            parameters.add(toVersion);
+        }
+        if (installedFrom != null) {
+            conditions.add("installed_on >= ?");
+            parameters.add(Timestamp.valueOf(installedFrom));
+        }
+        if (installedBefore != null) {
+            conditions.add("installed_on < ?");
+            parameters.add(Timestamp.valueOf(installedBefore));
+        }
+        if (status != null) {
+            conditions.add("status = ?");
+            parameters.add(status);
+        }
+        if (installedBy != null) {
+            conditions.add("installed_by = ?");
+            parameters.add(installedBy);
+        }
+    }
+}
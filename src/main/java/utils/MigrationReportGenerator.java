@@ -1,33 +1,76 @@
 package utils;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import executor.MigrationResult;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /** *
- * This class is used for CSV and JSON migrations results reports generation
+ * This class is used for migrations results reports generation: CSV, JSON, newline-delimited JSON
+ * and the binary columnar format (see {@link ReportFormat}), optionally compressed with gzip
  * */
 @Slf4j
 public class MigrationReportGenerator {
 
+    // Генератор не должен закрывать writer вызывающего кода
+    private final static JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static String FETCH_SIZE_KEY = "db.report.fetch.size";
+    private final static int DEFAULT_FETCH_SIZE = 1000;
     private final static String SELECT_MIGRATION_HISTORY_SQL = """
-            SELECT version, description, script, checksum, installed_on, installed_by, execution_time, success, status
+            SELECT id, version, description, script, checksum, installed_on, installed_by, execution_time, success, status
             FROM schema_history_table
             """;
+    private final static CSVFormat HISTORY_CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setHeader("Version", "Description", "Script", "Checksum", "Installed On", "Installed By",
+                    "Execution Time", "Success", "Status")
+            .build();
+
+    private final int fetchSize;
+
+    public MigrationReportGenerator() {
+        this(PropertiesUtils.getInt(FETCH_SIZE_KEY, DEFAULT_FETCH_SIZE));
+    }
+
+    /** *
+     * @param fetchSize number of schema_history_table rows fetched from the database at a time
+     * */
+    public MigrationReportGenerator(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
 
     /** *
      * Generating CSV-reports of migrations results
@@ -35,84 +78,346 @@ public class MigrationReportGenerator {
      * @param filePath report file creation directory path
      * */
     public void generateCsvReport(String filePath) {
+        generateCsvReport(filePath, MigrationReportFilter.all());
+    }
+
+    /** *
+     * Generating CSV-reports of migrations results matching the filter
+     *
+     * @param filePath report file creation directory path
+     * @param filter rows included into the report
+     * */
+    public void generateCsvReport(String filePath, MigrationReportFilter filter) {
+        generateReport(filePath, ReportFormat.CSV, filter, false);
+    }
+
+    /** *
+     * Generating JSON-reports of migrations results
+     *
+     * @param filePath report file creation directory path
+     * */
+    public void generateJsonReport(String filePath) {
+        generateJsonReport(filePath, MigrationReportFilter.all());
+    }
+
+    /** *
+     * Generating JSON-reports of migrations results matching the filter
+     *
+     * @param filePath report file creation directory path
+     * @param filter rows included into the report
+     * */
+    public void generateJsonReport(String filePath, MigrationReportFilter filter) {
+        generateReport(filePath, ReportFormat.JSON, filter, false);
+    }
+
+    /** *
+     * Generating reports of migrations results matching the filter in any of the report formats
+     *
+     * @param filePath report file creation directory path
+     * @param format format of the report
+     * @param filter rows included into the report
+     * @param gzip whether the report file is compressed with gzip
+     * */
+    public void generateReport(String filePath, ReportFormat format, MigrationReportFilter filter, boolean gzip) {
         try (Connection connection = ConnectionManager.get();
-             Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery(SELECT_MIGRATION_HISTORY_SQL);
-             FileWriter fileWriter = new FileWriter(filePath);
-             CSVPrinter csvPrinter = new CSVPrinter(fileWriter, CSVFormat.DEFAULT
-                     .withHeader("Version", "Description", "Script", "Checksum", "Installed On", "Installed By",
-                             "Execution Time", "Success", "Status"))) {
-
-            while (resultSet.next()) {
-                csvPrinter.printRecord(
-                        resultSet.getInt("version"),
-                        resultSet.getString("description"),
-                        resultSet.getString("script"),
-                        resultSet.getInt("checksum"),
-                        resultSet.getTimestamp("installed_on"),
-                        resultSet.getString("installed_by"),
-                        resultSet.getInt("execution_time"),
-                        resultSet.getBoolean("success"),
-                        resultSet.getString("status")
-                );
+             OutputStream outputStream = openReport(filePath, gzip)) {
+            MigrationReportExport export = writeReport(connection, filter, format, outputStream);
+
+            log.info("{} report generated successfully: {} ({})", format, filePath, export);
+        } catch (SQLException | IOException e) {
+            log.error("Error generating {} report: ", format, e);
+        }
+    }
+
+    /** *
+     * Incremental export of migrations results: only rows with id greater than the watermark stored
+     * in the watermark file are reported, and the file is updated with the largest reported id after
+     * the report is completely written. A missing watermark file means the first export of the whole history
+     *
+     * @param filePath report file creation directory path
+     * @param format format of the report
+     * @param gzip whether the report file is compressed with gzip
+     * @param watermarkPath path of the file keeping the last exported id between exports
+     * @return number of exported rows and the new watermark
+     * @throws IllegalStateException if the report can't be written (the watermark is not changed then)
+     * */
+    public MigrationReportExport exportIncrementalReport(String filePath, ReportFormat format, boolean gzip,
+                                                         String watermarkPath) {
+        Path watermarkFile = Path.of(watermarkPath);
+        try {
+            long watermark = readWatermark(watermarkFile);
+            MigrationReportExport export;
+            try (Connection connection = ConnectionManager.get();
+                 OutputStream outputStream = openReport(filePath, gzip)) {
+                export = writeReport(connection, MigrationReportFilter.all().afterId(watermark), format, outputStream);
+            }
+            if (export.getLastId() > watermark) {
+                writeWatermark(watermarkFile, export.getLastId());
             }
 
-            log.info("CSV report generated successfully: {}", filePath);
+            log.info("{} report exported successfully: {} ({})", format, filePath, export);
+            return export;
         } catch (SQLException | IOException e) {
-            log.error("Error generating CSV report: ", e);
+            throw new IllegalStateException("Failed to export migration history to " + filePath, e);
         }
     }
 
     /** *
-     * Generating JSON-reports of migrations results
+     * Streaming report of migrations results matching the filter. Rows are read with a cursor
+     * and written one by one, so the size of the history doesn't affect the memory used
      *
+     * @param connection connection to the database with schema_history_table
+     * @param filter rows included into the report
+     * @param format format of the report
+     * @param outputStream destination of the report (flushed, but not closed)
+     * @return number of reported rows and the largest reported id
+     * @throws SQLException if the history can't be read
+     * @throws IOException if the report can't be written
+     * */
+    public MigrationReportExport writeReport(Connection connection, MigrationReportFilter filter, ReportFormat format,
+                                             OutputStream outputStream) throws SQLException, IOException {
+        return switch (format) {
+            case CSV -> {
+                Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+                MigrationReportExport export = writeCsv(connection, filter, writer);
+                writer.flush();
+                yield export;
+            }
+            case JSON, NDJSON -> {
+                try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8)) {
+                    yield writeJson(connection, filter, generator, format == ReportFormat.NDJSON);
+                }
+            }
+            case COLUMNAR -> {
+                WritableByteChannel channel = Channels.newChannel(outputStream);
+                MigrationReportExport export;
+                try (ColumnarReportWriter columnarWriter =
+                             new ColumnarReportWriter(channel, ColumnarReportWriter.DEFAULT_ROW_GROUP_SIZE)) {
+                    export = streamHistory(connection, filter, columnarWriter::write);
+                }
+                outputStream.flush();
+                yield export;
+            }
+        };
+    }
+
+    /** *
+     * Streaming CSV-report of migrations results matching the filter into a writer
+     *
+     * @param connection connection to the database with schema_history_table
+     * @param filter rows included into the report
+     * @param writer destination of the report (not closed)
+     * @return number of reported rows
+     * @throws SQLException if the history can't be read
+     * @throws IOException if the report can't be written
+     * */
+    public long writeCsvReport(Connection connection, MigrationReportFilter filter, Writer writer)
+            throws SQLException, IOException {
+        return writeCsv(connection, filter, writer).getRows();
+    }
+
+    /** *
+     * Streaming JSON-report (an array of objects) of migrations results matching the filter into a writer
+     *
+     * @param connection connection to the database with schema_history_table
+     * @param filter rows included into the report
+     * @param writer destination of the report (not closed)
+     * @return number of reported rows
+     * @throws SQLException if the history can't be read
+     * @throws IOException if the report can't be written
+     * */
+    public long writeJsonReport(Connection connection, MigrationReportFilter filter, Writer writer)
+            throws SQLException, IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            return writeJson(connection, filter, generator, false).getRows();
+        }
+    }
+
+    private MigrationReportExport writeCsv(Connection connection, MigrationReportFilter filter, Writer writer)
+            throws SQLException, IOException {
+        CSVPrinter csvPrinter = new CSVPrinter(writer, HISTORY_CSV_FORMAT);
+        MigrationReportExport export = streamHistory(connection, filter, resultSet -> csvPrinter.printRecord(
+                resultSet.getInt("version"),
+                resultSet.getString("description"),
+                resultSet.getString("script"),
+                resultSet.getInt("checksum"),
+                resultSet.getTimestamp("installed_on"),
+                resultSet.getString("installed_by"),
+                resultSet.getInt("execution_time"),
+                resultSet.getBoolean("success"),
+                resultSet.getString("status")
+        ));
+        csvPrinter.flush();
+        return export;
+    }
+
+    // JSON - массив с отступами, NDJSON - компактные объекты, по одному на строку
+    private MigrationReportExport writeJson(Connection connection, MigrationReportFilter filter,
+                                            JsonGenerator generator, boolean lines) throws SQLException, IOException {
+        if (lines) {
+            generator.setRootValueSeparator(null);
+        } else {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+        }
+        MigrationReportExport export = streamHistory(connection, filter, resultSet -> {
+            generator.writeStartObject();
+            generator.writeNumberField("version", resultSet.getInt("version"));
+            generator.writeStringField("description", resultSet.getString("description"));
+            generator.writeStringField("script", resultSet.getString("script"));
+            generator.writeNumberField("checksum", resultSet.getInt("checksum"));
+            Timestamp installedOn = resultSet.getTimestamp("installed_on");
+            if (installedOn == null) {
+                generator.writeNullField("installedOn");
+            } else {
+                generator.writeNumberField("installedOn", installedOn.getTime());
+            }
+            generator.writeStringField("installedBy", resultSet.getString("installed_by"));
+            generator.writeNumberField("executionTime", resultSet.getInt("execution_time"));
+            generator.writeBooleanField("success", resultSet.getBoolean("success"));
+            generator.writeStringField("status", resultSet.getString("status"));
+            generator.writeEndObject();
+            if (lines) {
+                generator.writeRaw('\n');
+            }
+        });
+        if (!lines) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+        return export;
+    }
+
+    // Драйвер PostgreSQL читает результат курсором (порциями по fetchSize) только вне режима autocommit
+    private MigrationReportExport streamHistory(Connection connection, MigrationReportFilter filter,
+                                                HistoryRowWriter rowWriter) throws SQLException, IOException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try (PreparedStatement statement = connection.prepareStatement(filter.apply(SELECT_MIGRATION_HISTORY_SQL),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(fetchSize);
+            filter.bind(statement);
+            long rows = 0;
+            long lastId = filter.getAfterId();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rowWriter.write(resultSet);
+                    // Строки упорядочены по id, последняя прочитанная - новый водяной знак
+                    lastId = resultSet.getLong("id");
+                    rows++;
+                }
+            }
+            return new MigrationReportExport(rows, lastId);
+        } finally {
+            if (autoCommit) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Запись через буферизованный FileChannel; gzip сжимает поток до буфера, чтобы в канал уходили крупные блоки
+    private static OutputStream openReport(String filePath, boolean gzip) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        return gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : outputStream;
+    }
+
+    private static Writer openTextReport(String filePath) throws IOException {
+        return new OutputStreamWriter(openReport(filePath, false), StandardCharsets.UTF_8);
+    }
+
+    private static long readWatermark(Path watermarkFile) throws IOException {
+        if (!Files.exists(watermarkFile)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(watermarkFile).trim());
+    }
+
+    // Замена файла целиком, чтобы прерванная запись не оставила поврежденный водяной знак
+    private static void writeWatermark(Path watermarkFile, long lastId) throws IOException {
+        Path parent = watermarkFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, watermarkFile.getFileName().toString(), ".tmp");
+        Files.writeString(tempFile, Long.toString(lastId));
+        Files.move(tempFile, watermarkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** *
+     * Generating CSV-report of a run applying migrations to several targets (schemas or data sources),
+     * one row per target
+     *
+     * @param results results of the targets
      * @param filePath report file creation directory path
      * */
-    public void generateJsonReport(String filePath) {
-        try (Connection connection = ConnectionManager.get();
-             Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery(SELECT_MIGRATION_HISTORY_SQL);
-             FileWriter fileWriter = new FileWriter(filePath)) {
-
-            List<MigrationHistory> historyList = new ArrayList<>();
-            while (resultSet.next()) {
-                MigrationHistory history = new MigrationHistory(
-                        resultSet.getInt("version"),
-                        resultSet.getString("description"),
-                        resultSet.getString("script"),
-                        resultSet.getInt("checksum"),
-                        resultSet.getTimestamp("installed_on"),
-                        resultSet.getString("installed_by"),
-                        resultSet.getInt("execution_time"),
-                        resultSet.getBoolean("success"),
-                        resultSet.getString("status")
+    public void generateCsvSummary(List<MigrationResult> results, String filePath) {
+        try (Writer writer = openTextReport(filePath);
+             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT
+                     .withHeader("Target", "Success", "Applied Versions", "Duration", "Error"))) {
+
+            for (MigrationSummary summary : summarize(results)) {
+                csvPrinter.printRecord(
+                        summary.getTarget(),
+                        summary.isSuccess(),
+                        summary.getAppliedVersions().stream().map(String::valueOf).collect(Collectors.joining(" ")),
+                        summary.getDurationMillis(),
+                        summary.getError()
                 );
-                historyList.add(history);
             }
 
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectWriter writer = mapper.writerWithDefaultPrettyPrinter();
-            writer.writeValue(fileWriter, historyList);
+            log.info("CSV summary generated successfully: {}", filePath);
+        } catch (IOException e) {
+            log.error("Error generating CSV summary: ", e);
+        }
+    }
 
-            log.info("JSON report generated successfully: {}", filePath);
-        } catch (SQLException | IOException e) {
-            log.error("Error generating JSON report: ", e);
+    /** *
+     * Generating JSON-report of a run applying migrations to several targets (schemas or data sources)
+     *
+     * @param results results of the targets
+     * @param filePath report file creation directory path
+     * */
+    public void generateJsonSummary(List<MigrationResult> results, String filePath) {
+        try (Writer writer = openTextReport(filePath)) {
+            ObjectWriter objectWriter = new ObjectMapper().writerWithDefaultPrettyPrinter();
+            objectWriter.writeValue(writer, summarize(results));
+
+            log.info("JSON summary generated successfully: {}", filePath);
+        } catch (IOException e) {
+            log.error("Error generating JSON summary: ", e);
+        }
+    }
+
+    private List<MigrationSummary> summarize(List<MigrationResult> results) {
+        List<MigrationSummary> summaries = new ArrayList<>(results.size());
+        for (MigrationResult result : results) {
+            summaries.add(new MigrationSummary(
+                    result.getTarget(),
+                    result.isSuccess(),
+                    result.getAppliedVersions(),
+                    result.getDurationMillis(),
+                    result.isSuccess() ? null : String.valueOf(result.getFailureCause().getMessage())
+            ));
         }
+        return summaries;
+    }
+
+    @FunctionalInterface
+    private interface HistoryRowWriter {
+        void write(ResultSet resultSet) throws SQLException, IOException;
     }
 
-    // Вспомогательный класс для представления истории миграций
+    // Вспомогательный класс для представления результата одной цели (схемы или источника данных)
     @AllArgsConstructor
     @Getter
-    @Setter
-    private static class MigrationHistory {
-        private int version;
-        private String description;
-        private String script;
-        private int checksum;
-        private java.sql.Timestamp installedOn;
-        private String installedBy;
-        private int executionTime;
+    private static class MigrationSummary {
+        private String target;
         private boolean success;
-        private String status;
+        private List<Integer> appliedVersions;
+        private long durationMillis;
+        private String error;
     }
 }
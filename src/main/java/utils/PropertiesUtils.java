@@ -25,6 +25,40 @@ public final class PropertiesUtils {
         return PROPERTIES.getProperty(key);
     }
 
+    /** *
+     * Getting certain integer property by key
+     *
+     * @param key to get property's value
+     * @param defaultValue value returned when the property is missing or empty (unresolved env variable)
+     * @return integer properties value
+     * */
+    public static int getInt(String key, int defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + key + " must be an integer, but was: " + value);
+        }
+    }
+
+    /** *
+     * Getting certain boolean property by key
+     *
+     * @param key to get property's value
+     * @param defaultValue value returned when the property is missing or empty (unresolved env variable)
+     * @return boolean properties value
+     * */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
     private static void loadProperties() {
         try (var inputStream = PropertiesUtils.class.getClassLoader()
                 .getResourceAsStream("application.properties")) {
@@ -0,0 +1,15 @@
+package utils;
+
+/** *
+ * Formats of migration history reports
+ * */
+public enum ReportFormat {
+    // Таблица с заголовком
+    CSV,
+    // Массив объектов с отступами, удобен для чтения человеком
+    JSON,
+    // Один компактный JSON-объект на строку, формат загрузки большинства хранилищ данных
+    NDJSON,
+    // Двоичный колоночный формат, см. ColumnarReportWriter
+    COLUMNAR
+}
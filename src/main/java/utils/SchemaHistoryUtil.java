@@ -2,8 +2,10 @@ package utils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 
 import static utils.Validator.checkNotNull;
 import static utils.Validator.checkNotNullMigrationAuthorAndDescription;
@@ -12,6 +14,11 @@ import static utils.Validator.checkNotNullMigrationAuthorAndDescription;
  * Utility class for managing Schema History table of migrations
  * */
 public class SchemaHistoryUtil {
+    public final static String MIGRATION_KIND = "migration";
+    public final static String ROLLBACK_KIND = "rollback";
+    private final static String STATE_TABLE_KEY = "db.history.state.table";
+    private final static boolean STATE_TABLE_ENABLED = PropertiesUtils.getBoolean(STATE_TABLE_KEY, false);
+
     private final static String CREATE_HISTORY_TABLE_SQL = """
             CREATE TABLE IF NOT EXISTS schema_history_table (
                             id SERIAL PRIMARY KEY,
@@ -23,17 +30,74 @@ public class SchemaHistoryUtil {
                             installed_by VARCHAR(100) NOT NULL,
                             execution_time INTEGER,
                             success BOOLEAN NOT NULL,
-                            status VARCHAR(50) DEFAULT 'applied'
+                            status VARCHAR(50) DEFAULT 'applied',
+                            kind VARCHAR(10),
+                            lock_wait_time INTEGER DEFAULT 0
+                            );
+            """;
+    private final static String KIND_COLUMN_EXISTS_SQL = """
+            SELECT 1 FROM information_schema.columns
+            WHERE table_name = 'schema_history_table' AND column_name = 'kind' AND table_schema = current_schema()
+            """;
+    // Таблицы, созданные предыдущими версиями библиотеки, дополняются колонкой kind
+    private final static String ADD_KIND_COLUMN_SQL = """
+            ALTER TABLE schema_history_table ADD COLUMN IF NOT EXISTS kind VARCHAR(10);
+            UPDATE schema_history_table
+            SET kind = CASE WHEN script LIKE 'V%' THEN 'migration' ELSE 'rollback' END
+            WHERE kind IS NULL;
+            """;
+    private final static String LOCK_WAIT_TIME_COLUMN_EXISTS_SQL = """
+            SELECT 1 FROM information_schema.columns
+            WHERE table_name = 'schema_history_table' AND column_name = 'lock_wait_time'
+            AND table_schema = current_schema()
+            """;
+    private final static String ADD_LOCK_WAIT_TIME_COLUMN_SQL = """
+            ALTER TABLE schema_history_table ADD COLUMN IF NOT EXISTS lock_wait_time INTEGER DEFAULT 0
+            """;
+    // Поиск текущей версии и списка примененных миграций - обход этого индекса без чтения таблицы
+    private final static String CREATE_APPLIED_INDEX_SQL = """
+            CREATE INDEX IF NOT EXISTS schema_history_applied_idx
+            ON schema_history_table (version) INCLUDE (kind, checksum, script)
+            WHERE status = 'applied'
+            """;
+    private final static String CREATE_STATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS schema_state (
+                            id INTEGER PRIMARY KEY CHECK (id = 1),
+                            current_version INTEGER,
+                            updated_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
                             );
             """;
-    private final static String INSERT_INTO_HISTORY_TABLE_SQL = """
+    private final static String REFRESH_STATE_SQL = """
+            INSERT INTO schema_state (id, current_version, updated_on)
+            SELECT 1, MAX(version), CURRENT_TIMESTAMP FROM schema_history_table
+            WHERE kind = 'migration' AND status = 'applied'
+            ON CONFLICT (id) DO UPDATE SET current_version = EXCLUDED.current_version, updated_on = EXCLUDED.updated_on
+            """;
+    // При параллельном применении миграций версия только растет, поэтому берется большее из значений
+    private final static String ADVANCE_STATE_SQL = """
+            INSERT INTO schema_state (id, current_version, updated_on) VALUES (1, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (id) DO UPDATE
+            SET current_version = GREATEST(schema_state.current_version, EXCLUDED.current_version),
+                updated_on = EXCLUDED.updated_on
+            """;
+    final static String INSERT_INTO_HISTORY_TABLE_SQL = """
             INSERT INTO schema_history_table (version, description, script, checksum, installed_by, execution_time,
-             success, status)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+             success, status, kind, lock_wait_time)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    private final static String RESTART_MIGRATION_SQL = """
+            UPDATE schema_history_table SET status = 'in_progress', success = false, installed_on = CURRENT_TIMESTAMP
+            WHERE version = ? AND script = ? AND status IN ('in_progress', 'failed')
+            """;
+    private final static String FINISH_MIGRATION_SQL = """
+            UPDATE schema_history_table SET status = ?, success = ?, execution_time = ?, checksum = COALESCE(?, checksum),
+             lock_wait_time = ?
+            WHERE version = ? AND script = ? AND status = 'in_progress'
             """;
 
     /** *
-     * Creating a schema_history_table to track migration history
+     * Creating a schema_history_table to track migration history, its index for applied migrations
+     * and (if db.history.state.table=true) the schema_state table with the current version
      *
      * @param connection opened connection to the database
      * */
@@ -41,6 +105,77 @@ public class SchemaHistoryUtil {
         checkNotNull(connection);
         try (Statement statement = connection.createStatement()) {
             statement.execute(CREATE_HISTORY_TABLE_SQL);
+            boolean kindColumnExists;
+            try (ResultSet resultSet = statement.executeQuery(KIND_COLUMN_EXISTS_SQL)) {
+                kindColumnExists = resultSet.next();
+            }
+            if (!kindColumnExists) {
+                statement.execute(ADD_KIND_COLUMN_SQL);
+            }
+            boolean lockWaitTimeColumnExists;
+            try (ResultSet resultSet = statement.executeQuery(LOCK_WAIT_TIME_COLUMN_EXISTS_SQL)) {
+                lockWaitTimeColumnExists = resultSet.next();
+            }
+            if (!lockWaitTimeColumnExists) {
+                statement.execute(ADD_LOCK_WAIT_TIME_COLUMN_SQL);
+            }
+            statement.execute(CREATE_APPLIED_INDEX_SQL);
+            if (STATE_TABLE_ENABLED) {
+                statement.execute(CREATE_STATE_TABLE_SQL);
+                // Сводная таблица синхронизируется при старте на случай, если она была отключена
+                statement.executeUpdate(REFRESH_STATE_SQL);
+            }
+        }
+    }
+
+    /** *
+     * Checking whether the schema_state table with the current version is maintained
+     *
+     * @return value of db.history.state.table property
+     * */
+    public static boolean isStateTableEnabled() {
+        return STATE_TABLE_ENABLED;
+    }
+
+    /** *
+     * Getting the kind of the history record by the script name
+     *
+     * @param script file name
+     * @return 'migration' for V files, 'rollback' for U files
+     * */
+    public static String kindOf(String script) {
+        return script.startsWith("V") ? MIGRATION_KIND : ROLLBACK_KIND;
+    }
+
+    /** *
+     * Recalculating the current version in schema_state (if enabled) after statuses of applied migrations
+     * were changed, e.g. after a rollback. Must be called in the same transaction
+     *
+     * @param connection opened connection to the database
+     * */
+    public static void refreshSchemaState(Connection connection) throws SQLException {
+        if (!STATE_TABLE_ENABLED) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(REFRESH_STATE_SQL);
+        }
+    }
+
+    /** *
+     * Moving the current version in schema_state (if enabled) forward after new migrations were applied.
+     * Must be called in the same transaction
+     *
+     * @param connection opened connection to the database
+     * @param version the highest applied version
+     * */
+    public static void advanceSchemaState(Connection connection, int version) throws SQLException {
+        if (!STATE_TABLE_ENABLED) {
+            return;
+        }
+        try (PreparedStatement preparedStatement = connection.prepareStatement(ADVANCE_STATE_SQL)) {
+            preparedStatement.setInt(1, version);
+            preparedStatement.executeUpdate();
         }
     }
 
@@ -51,28 +186,116 @@ public class SchemaHistoryUtil {
      * @param version the version database is migrating to
      * @param description migration's description got from file comments
      * @param script file name
+     * @param checksum checksum of the migration's content (see parser.MigrationChecksum), null if unknown
      * @param installedBy author of the migration
      * @param executionTime
      * @param success defines whether migration was successfully applied
      * @param status defines status of the migration (applied, rolled_back, ignored)
      * */
     public static void updateSchemaHistoryTable(Connection connection, Integer version, String description,
-                                                String script, String installedBy, int executionTime,
-                                                boolean success, String status) throws SQLException {
+                                                String script, Integer checksum, String installedBy,
+                                                int executionTime, boolean success,
+                                                String status) throws SQLException {
         validateUpdateSchemaHistoryTableParams(connection, version, description, script, installedBy);
         try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_INTO_HISTORY_TABLE_SQL)) {
             preparedStatement.setInt(1, version);
             preparedStatement.setString(2, description);
             preparedStatement.setString(3, script);
-            preparedStatement.setInt(4, script.hashCode());
+            setNullableInt(preparedStatement, 4, checksum);
             preparedStatement.setString(5, installedBy);
             preparedStatement.setInt(6, executionTime);
             preparedStatement.setBoolean(7, success);
             preparedStatement.setString(8, status);
+            preparedStatement.setString(9, kindOf(script));
+            preparedStatement.setInt(10, 0);
             preparedStatement.executeUpdate();
         }
+        if (success && "applied".equals(status) && MIGRATION_KIND.equals(kindOf(script))) {
+            advanceSchemaState(connection, version);
+        }
+    }
+
+    /** *
+     * Recording the start of a migration that is executed without a transaction. The record is committed
+     * at once, so an interrupted migration stays visible as 'in_progress' (or 'failed') and is applied again
+     * on the next run, reusing the same record
+     *
+     * @param connection opened connection to the database in autocommit mode
+     * @param version the version database is migrating to
+     * @param description migration's description got from file comments
+     * @param script file name
+     * @param installedBy author of the migration
+     * */
+    public static void startSchemaHistoryRecord(Connection connection, Integer version, String description,
+                                                String script, String installedBy) throws SQLException {
+        validateUpdateSchemaHistoryTableParams(connection, version, description, script, installedBy);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(RESTART_MIGRATION_SQL)) {
+            preparedStatement.setInt(1, version);
+            preparedStatement.setString(2, script);
+            if (preparedStatement.executeUpdate() > 0) {
+                return;
+            }
+        }
+        updateSchemaHistoryTable(connection, version, description, script, null, installedBy, 0, false,
+                "in_progress");
     }
-    private static void validateUpdateSchemaHistoryTableParams(Connection connection, Integer version, String description,
+
+    /** *
+     * Completing the record created by startSchemaHistoryRecord
+     *
+     * @param connection opened connection to the database
+     * @param version the version of the migration
+     * @param script file name
+     * @param checksum checksum of the migration's content, null to keep the stored one
+     * @param executionTime
+     * @param success defines whether migration was successfully applied ('applied' or 'failed' status)
+     * */
+    public static void finishSchemaHistoryRecord(Connection connection, Integer version, String script,
+                                                 Integer checksum, int executionTime,
+                                                 boolean success) throws SQLException {
+        finishSchemaHistoryRecord(connection, version, script, checksum, executionTime, 0, success);
+    }
+
+    /** *
+     * Completing the record created by startSchemaHistoryRecord
+     *
+     * @param connection opened connection to the database
+     * @param version the version of the migration
+     * @param script file name
+     * @param checksum checksum of the migration's content, null to keep the stored one
+     * @param executionTime
+     * @param lockWaitTime milliseconds lost to lock timeouts of the migration (see executor.MigrationTimeouts)
+     * @param success defines whether migration was successfully applied ('applied' or 'failed' status)
+     * */
+    public static void finishSchemaHistoryRecord(Connection connection, Integer version, String script,
+                                                 Integer checksum, int executionTime, int lockWaitTime,
+                                                 boolean success) throws SQLException {
+        checkNotNull(connection);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(FINISH_MIGRATION_SQL)) {
+            preparedStatement.setString(1, success ? "applied" : "failed");
+            preparedStatement.setBoolean(2, success);
+            preparedStatement.setInt(3, executionTime);
+            setNullableInt(preparedStatement, 4, checksum);
+            preparedStatement.setInt(5, lockWaitTime);
+            preparedStatement.setInt(6, version);
+            preparedStatement.setString(7, script);
+            preparedStatement.executeUpdate();
+        }
+        if (success && MIGRATION_KIND.equals(kindOf(script))) {
+            advanceSchemaState(connection, version);
+        }
+    }
+
+    static void setNullableInt(PreparedStatement preparedStatement, int index,
+                                       Integer value) throws SQLException {
+        if (value == null) {
+            preparedStatement.setNull(index, Types.INTEGER);
+        } else {
+            preparedStatement.setInt(index, value);
+        }
+    }
+
+    static void validateUpdateSchemaHistoryTableParams(Connection connection, Integer version, String description,
                                                                String script, String installed_by){
         checkNotNull(connection);
         checkNotNull(version, "Provided db version");
@@ -0,0 +1,160 @@
+package utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static utils.SchemaHistoryUtil.INSERT_INTO_HISTORY_TABLE_SQL;
+import static utils.SchemaHistoryUtil.setNullableInt;
+import static utils.SchemaHistoryUtil.validateUpdateSchemaHistoryTableParams;
+
+/** *
+ * Buffers changes of schema_history_table made within one transaction and writes them with a minimal
+ * number of round trips: new records are sent as a single JDBC batch through one prepared statement,
+ * status changes - as one UPDATE ... WHERE version = ANY(?) per status. flush() must be called
+ * before the transaction is committed
+ * */
+@Slf4j
+public class SchemaHistoryWriter implements AutoCloseable {
+    private static final String UPDATE_STATUS_SQL = """
+            UPDATE schema_history_table
+            SET status = ?
+            WHERE version = ANY(?) AND kind = 'migration'
+            """;
+
+    private final Connection connection;
+    private PreparedStatement insertStatement;
+    private PreparedStatement updateStatusStatement;
+    private int bufferedRecords;
+    private Integer maxAppliedVersion;
+    private boolean statusesChanged;
+    private final Map<String, List<Integer>> bufferedStatusUpdates = new LinkedHashMap<>();
+
+    public SchemaHistoryWriter(Connection connection) {
+        this.connection = connection;
+    }
+
+    /** *
+     * Adding a new record about the migration to the buffer
+     *
+     * @param version the version database is migrating to
+     * @param description migration's description got from file comments
+     * @param script file name
+     * @param checksum checksum of the migration's content, null if unknown
+     * @param installedBy author of the migration
+     * @param executionTime
+     * @param success defines whether migration was successfully applied
+     * @param status defines status of the migration (applied, rolled_back, ignored)
+     * */
+    public void addRecord(Integer version, String description, String script, Integer checksum, String installedBy,
+                          int executionTime, boolean success, String status) throws SQLException {
+        addRecord(version, description, script, checksum, installedBy, executionTime, 0, success, status);
+    }
+
+    /** *
+     * Adding a new record about the migration to the buffer
+     *
+     * @param version the version database is migrating to
+     * @param description migration's description got from file comments
+     * @param script file name
+     * @param checksum checksum of the migration's content, null if unknown
+     * @param installedBy author of the migration
+     * @param executionTime
+     * @param lockWaitTime milliseconds lost to lock timeouts of the migration (see executor.MigrationTimeouts)
+     * @param success defines whether migration was successfully applied
+     * @param status defines status of the migration (applied, rolled_back, ignored)
+     * */
+    public void addRecord(Integer version, String description, String script, Integer checksum, String installedBy,
+                          int executionTime, int lockWaitTime, boolean success, String status) throws SQLException {
+        validateUpdateSchemaHistoryTableParams(connection, version, description, script, installedBy);
+        if (insertStatement == null) {
+            insertStatement = connection.prepareStatement(INSERT_INTO_HISTORY_TABLE_SQL);
+        }
+        insertStatement.setInt(1, version);
+        insertStatement.setString(2, description);
+        insertStatement.setString(3, script);
+        setNullableInt(insertStatement, 4, checksum);
+        insertStatement.setString(5, installedBy);
+        insertStatement.setInt(6, executionTime);
+        insertStatement.setBoolean(7, success);
+        insertStatement.setString(8, status);
+        String kind = SchemaHistoryUtil.kindOf(script);
+        insertStatement.setString(9, kind);
+        insertStatement.setInt(10, lockWaitTime);
+        insertStatement.addBatch();
+        bufferedRecords++;
+        if (success && "applied".equals(status) && SchemaHistoryUtil.MIGRATION_KIND.equals(kind)) {
+            maxAppliedVersion = maxAppliedVersion == null ? version : Math.max(maxAppliedVersion, version);
+        }
+    }
+
+    /** *
+     * Adding a status change of the applied migration (e.g. 'rolled_back') to the buffer
+     *
+     * @param version the version of the migration
+     * @param status new status of the migration
+     * */
+    public void updateStatus(Integer version, String status) {
+        bufferedStatusUpdates.computeIfAbsent(status, key -> new ArrayList<>()).add(version);
+        statusesChanged = true;
+    }
+
+    /** *
+     * Writing buffered records and status changes to the database (and updating schema_state, if enabled)
+     * */
+    public void flush() throws SQLException {
+        if (bufferedRecords > 0) {
+            insertStatement.executeBatch();
+            log.debug("Written {} schema history records", bufferedRecords);
+            bufferedRecords = 0;
+        }
+        if (!bufferedStatusUpdates.isEmpty()) {
+            flushStatusUpdates();
+        }
+        if (statusesChanged) {
+            SchemaHistoryUtil.refreshSchemaState(connection);
+        } else if (maxAppliedVersion != null) {
+            SchemaHistoryUtil.advanceSchemaState(connection, maxAppliedVersion);
+        }
+        statusesChanged = false;
+        maxAppliedVersion = null;
+    }
+
+    private void flushStatusUpdates() throws SQLException {
+        if (updateStatusStatement == null) {
+            updateStatusStatement = connection.prepareStatement(UPDATE_STATUS_SQL);
+        }
+        for (Map.Entry<String, List<Integer>> entry : bufferedStatusUpdates.entrySet()) {
+            updateStatusStatement.setString(1, entry.getKey());
+            updateStatusStatement.setArray(2, connection.createArrayOf("integer", entry.getValue().toArray()));
+            updateStatusStatement.executeUpdate();
+        }
+        bufferedStatusUpdates.clear();
+    }
+
+    /** *
+     * Closing prepared statements. Changes that were not flushed are discarded
+     * */
+    @Override
+    public void close() throws SQLException {
+        bufferedRecords = 0;
+        bufferedStatusUpdates.clear();
+        statusesChanged = false;
+        maxAppliedVersion = null;
+        try {
+            if (insertStatement != null) {
+                insertStatement.close();
+            }
+        } finally {
+            if (updateStatusStatement != null) {
+                updateStatusStatement.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package utils;
+
+import exception.ConnectionPoolException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/** *
+ * In-process cache of the schema state (applied migration versions and the current version) for frequent
+ * checks like health checks and feature gates. Reads don't lock or allocate: they use an immutable snapshot
+ * with a sorted int array. After the TTL expires, one of the readers reloads the applied versions (one query,
+ * so statuses changed by other processes - failed, rolled back or restarted migrations - are seen within one TTL),
+ * while the others keep reading the previous snapshot. Executors invalidate the cache after their runs,
+ * so the next read reloads it
+ * */
+@Slf4j
+public class SchemaStateCache {
+    private static final String TTL_KEY = "db.schema.cache.ttl";
+    private static final int DEFAULT_TTL_MILLIS = 5_000;
+    private static final String APPLIED_VERSIONS_SQL = """
+            SELECT version FROM schema_history_table
+            WHERE kind = 'migration' AND status = 'applied'
+            ORDER BY version
+            """;
+
+    private static volatile SchemaStateCache instance;
+
+    private final Supplier<Connection> connectionSupplier;
+    private final long ttlNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+    private volatile boolean invalidated;
+
+    /** *
+     * @param connectionSupplier source of connections used for loading the state
+     * @param ttlMillis time after which the snapshot is checked for changes
+     * */
+    public SchemaStateCache(Supplier<Connection> connectionSupplier, long ttlMillis) {
+        this.connectionSupplier = connectionSupplier;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /** *
+     * Getting the shared cache working with ConnectionManager's pool, TTL is set with db.schema.cache.ttl
+     *
+     * @return shared cache object
+     * */
+    public static SchemaStateCache getInstance() {
+        SchemaStateCache cache = instance;
+        if (cache == null) {
+            synchronized (SchemaStateCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = new SchemaStateCache(ConnectionManager::get,
+                            PropertiesUtils.getInt(TTL_KEY, DEFAULT_TTL_MILLIS));
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /** *
+     * Getting the current database version (the highest applied migration version)
+     *
+     * @return version's number, 0 if no migrations were applied
+     * */
+    public int getCurrentVersion() {
+        return current().currentVersion;
+    }
+
+    /** *
+     * Checking whether the migration of the given version is applied
+     *
+     * @param version migration version
+     * @return true if the migration is applied
+     * */
+    public boolean isApplied(int version) {
+        return Arrays.binarySearch(current().appliedVersions, version) >= 0;
+    }
+
+    /** *
+     * Getting the number of applied migrations
+     *
+     * @return number of applied migrations
+     * */
+    public int getAppliedCount() {
+        return current().appliedVersions.length;
+    }
+
+    /** *
+     * Getting all applied versions. Unlike other methods, returns a copy of the cached array
+     *
+     * @return sorted applied versions
+     * */
+    public int[] getAppliedVersions() {
+        return current().appliedVersions.clone();
+    }
+
+    /** *
+     * Marking the cached state as outdated, the next read reloads it
+     * */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return loadInitial();
+        }
+        boolean expired = invalidated || System.nanoTime() - current.checkedAt > ttlNanos;
+        // Обновляет только один читатель, остальные продолжают читать прежний снимок
+        if (expired && refreshing.compareAndSet(false, true)) {
+            try {
+                refresh(current);
+            } finally {
+                refreshing.set(false);
+            }
+            return snapshot;
+        }
+        return current;
+    }
+
+    private synchronized Snapshot loadInitial() {
+        if (snapshot == null) {
+            invalidated = false;
+            try (Connection connection = connectionSupplier.get()) {
+                snapshot = load(connection);
+            } catch (SQLException | ConnectionPoolException e) {
+                throw new IllegalStateException("Failed to load schema state", e);
+            }
+        }
+        return snapshot;
+    }
+
+    // Проверка MAX(id) не замечала UPDATE статусов, поэтому по истечении TTL версии перечитываются целиком
+    private void refresh(Snapshot current) {
+        boolean wasInvalidated = invalidated;
+        invalidated = false;
+        try (Connection connection = connectionSupplier.get()) {
+            snapshot = load(connection);
+        } catch (SQLException | ConnectionPoolException e) {
+            // База недоступна - продолжаем отдавать прежнее состояние до следующей проверки
+            log.warn("Failed to refresh schema state, keeping the cached one: {}", e.getMessage());
+            snapshot = current.checkedNow();
+            invalidated = invalidated || wasInvalidated;
+        }
+    }
+
+    private Snapshot load(Connection connection) throws SQLException {
+        int[] versions = new int[16];
+        int size = 0;
+        try (PreparedStatement statement = connection.prepareStatement(APPLIED_VERSIONS_SQL);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                if (size == versions.length) {
+                    versions = Arrays.copyOf(versions, size * 2);
+                }
+                versions[size++] = resultSet.getInt(1);
+            }
+        }
+        return new Snapshot(Arrays.copyOf(versions, size), System.nanoTime());
+    }
+
+    private static final class Snapshot {
+        private final int[] appliedVersions;
+        private final int currentVersion;
+        private final long checkedAt;
+
+        private Snapshot(int[] appliedVersions, long checkedAt) {
+            this.appliedVersions = appliedVersions;
+            this.currentVersion = appliedVersions.length > 0 ? appliedVersions[appliedVersions.length - 1] : 0;
+            this.checkedAt = checkedAt;
+        }
+
+        private Snapshot checkedNow() {
+            return new Snapshot(appliedVersions, System.nanoTime());
+        }
+    }
+}
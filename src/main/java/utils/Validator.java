@@ -1,5 +1,7 @@
 package utils;
 
+import parser.MigrationFileDescriptor;
+
 import java.io.File;
 import java.sql.Connection;
 import java.util.List;
@@ -60,15 +62,11 @@ public class Validator {
      * Checking the correctness of migration files and rollbacks names
      *
      * @param file analyzed file
+     * @return descriptor with the data parsed from the file name
      * */
-    public static void checkMigrationFileFormat(File file) {
+    public static MigrationFileDescriptor checkMigrationFileFormat(File file) {
         checkFileExists(file);
-        if (!file.getName().matches("V[0-9]+__.*\\.sql") &&
-                !file.getName().matches("U[0-9]+__rollback_V[0-9]+__.*\\.sql")) {
-            throw new IllegalArgumentException("Invalid migration file format: " + file.getName());
-        }
+        return MigrationFileDescriptor.of(file);
     }
 
 }
-
-
@@ -0,0 +1,91 @@
+import exception.LockException;
+import lock.AdvisoryLockProvider;
+import lock.LockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdvisoryLockProviderTest {
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement tryLockStatement;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.prepareStatement("SELECT pg_try_advisory_lock(?)")).thenReturn(tryLockStatement);
+        when(tryLockStatement.executeQuery()).thenReturn(resultSet);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+    }
+
+    @Test
+    void testAcquireFreeLockDoesNotWait() throws SQLException {
+        when(resultSet.getBoolean(1)).thenReturn(true);
+
+        assertDoesNotThrow(() -> new AdvisoryLockProvider("test", 1000).acquire(connection));
+        verify(connection, never()).prepareStatement("SELECT pg_advisory_lock(?)");
+    }
+
+    @Test
+    void testAcquireBusyLockWithoutTimeoutThrowsLockException() throws SQLException {
+        when(resultSet.getBoolean(1)).thenReturn(false);
+
+        assertThrows(LockException.class, () -> new AdvisoryLockProvider("test", 0).acquire(connection));
+    }
+
+    @Test
+    void testAcquireBusyLockTimesOut() throws SQLException {
+        when(resultSet.getBoolean(1)).thenReturn(false);
+        when(resultSet.getString(1)).thenReturn("0");
+        when(statement.execute()).thenReturn(true)
+                .thenThrow(new SQLException("canceling statement due to lock timeout", "55P03"))
+                .thenReturn(true);
+
+        assertThrows(LockException.class, () -> new AdvisoryLockProvider("test", 100).acquire(connection));
+    }
+
+    @Test
+    void testConnectionIsAbortedWhenLockCanNotBeReleased() throws SQLException {
+        when(connection.getAutoCommit()).thenReturn(false);
+        when(statement.executeQuery()).thenThrow(new SQLException("terminating connection", "57P01"));
+
+        AdvisoryLockProvider lockProvider = new AdvisoryLockProvider("test", 1000);
+        assertThrows(SQLException.class, () -> LockProvider.releaseOrAbort(lockProvider, connection));
+        verify(connection).rollback();
+        verify(connection).abort(any());
+    }
+
+    @Test
+    void testReleasedConnectionIsNotAborted() throws SQLException {
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(true);
+
+        LockProvider.releaseOrAbort(new AdvisoryLockProvider("test", 1000), connection);
+        verify(connection, never()).abort(any());
+    }
+}
@@ -0,0 +1,140 @@
+import executor.ChunkedMigrationRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import parser.MigrationChecksum;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ChunkedMigrationRunnerTest {
+    private static final String CHUNK_SQL =
+            "UPDATE orders SET status = 'new' WHERE id >= :chunk_start AND id < :chunk_end AND status::text IS NULL";
+    private static final String PREPARED_SQL =
+            "UPDATE orders SET status = 'new' WHERE id >= ? AND id < ? AND status::text IS NULL";
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private ResultSet keyRange;
+
+    @Mock
+    private PreparedStatement historyStatement;
+
+    @Mock
+    private PreparedStatement progressStatement;
+
+    @Mock
+    private ResultSet progress;
+
+    @Mock
+    private PreparedStatement chunkStatement;
+
+    private boolean pauseRequested;
+
+    private ChunkedMigrationRunner runner;
+
+    private final MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata("""
+            --Alex--Backfill order status
+            -- @chunk-key: public.orders.id
+            -- @chunk-size: 10
+            """);
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        pauseRequested = false;
+        runner = new ChunkedMigrationRunner(() -> connection, 1000, 0, 0);
+
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery("SELECT MIN(id), MAX(id) FROM public.orders")).thenReturn(keyRange);
+        when(keyRange.next()).thenReturn(true);
+        when(keyRange.getLong(1)).thenReturn(1L);
+        when(keyRange.getLong(2)).thenReturn(25L);
+        when(connection.prepareStatement(anyString())).thenReturn(historyStatement);
+        when(connection.prepareStatement(contains("schema_migration_progress"))).thenReturn(progressStatement);
+        when(progressStatement.executeQuery()).thenReturn(progress);
+        when(connection.prepareStatement(PREPARED_SQL)).thenReturn(chunkStatement);
+        when(chunkStatement.executeUpdate()).thenReturn(10);
+    }
+
+    @Test
+    void testParseChunkDirectives() {
+        assertEquals("public.orders.id", metadata.getChunkKey());
+        assertEquals(10, metadata.getChunkSize());
+        assertThrows(IllegalArgumentException.class, () -> MigrationMetadataParser.parseMigrationMetadata(
+                "--Alex--Test\n-- @chunk-key: orders; DROP TABLE orders"));
+        assertThrows(IllegalArgumentException.class, () -> MigrationMetadataParser.parseMigrationMetadata(
+                "--Alex--Test\n-- @chunk-size: 0"));
+    }
+
+    @Test
+    void testEveryChunkIsCommittedWithCheckpoint() throws SQLException {
+        assertTrue(runner.run("V5__backfill.sql", 5, metadata, List.of(CHUNK_SQL), () -> pauseRequested));
+
+        verify(chunkStatement, times(3)).executeUpdate();
+        verify(chunkStatement).setLong(1, 1L);
+        verify(chunkStatement).setLong(2, 11L);
+        verify(chunkStatement).setLong(1, 21L);
+        verify(chunkStatement).setLong(2, 31L);
+        verify(progressStatement).setLong(5, 31L);
+        // Три части и завершение миграции
+        verify(connection, times(4)).commit();
+        verify(historyStatement).setString(1, "applied");
+    }
+
+    @Test
+    void testMigrationIsResumedFromNextChunk() throws SQLException {
+        when(progress.next()).thenReturn(true);
+        when(progress.getInt(2)).thenReturn(MigrationChecksum.of(List.of(CHUNK_SQL).iterator()));
+        when(progress.getLong(3)).thenReturn(21L);
+
+        assertTrue(runner.run("V5__backfill.sql", 5, metadata, List.of(CHUNK_SQL), () -> pauseRequested));
+
+        verify(chunkStatement, times(1)).executeUpdate();
+        verify(chunkStatement).setLong(1, 21L);
+    }
+
+    @Test
+    void testPausedMigrationKeepsProgress() throws SQLException {
+        pauseRequested = true;
+
+        assertFalse(runner.run("V5__backfill.sql", 5, metadata, List.of(CHUNK_SQL), () -> pauseRequested));
+
+        verify(chunkStatement, never()).executeUpdate();
+        verify(historyStatement, never()).setString(1, "applied");
+        verify(historyStatement, never()).setString(1, "failed");
+    }
+
+    @Test
+    void testStatementWithoutKeyRangeIsRejected() throws SQLException {
+        assertFalse(runner.run("V5__backfill.sql", 5, metadata, List.of("UPDATE orders SET status = 'new'"),
+                () -> pauseRequested));
+
+        verify(connection, never()).commit();
+        verify(historyStatement).setString(eq(1), eq("failed"));
+    }
+}
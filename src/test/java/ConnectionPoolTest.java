@@ -0,0 +1,240 @@
+import exception.ConnectionPoolException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.ConnectionPool;
+import utils.ConnectionPoolMetrics;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionPoolTest {
+    private static final String URL_PREFIX = "jdbc:pooltest:";
+    // Соединения, которые вернет тестовый драйвер, по URL пула
+    private static final Map<String, Deque<Connection>> CONNECTIONS = new ConcurrentHashMap<>();
+
+    private ConnectionPool pool;
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(new StubDriver());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testAcquireTimeoutThrowsException() throws SQLException {
+        pool = createPool("timeout", 0, 1, 60_000, 60_000, validConnection());
+
+        Connection connection = pool.borrow();
+        assertThrows(ConnectionPoolException.class, pool::borrow);
+
+        assertEquals(1, pool.getMetrics().getTimeoutCount());
+        connection.close();
+    }
+
+    @Test
+    void testConnectionFailingValidationIsReplaced() throws Exception {
+        Connection broken = validConnection();
+        Connection replacement = validConnection();
+        pool = createPool("validation", 0, 1, 60_000, 60_000, broken, replacement);
+
+        pool.borrow().close();
+        when(broken.isValid(anyInt())).thenReturn(false);
+        // Недавно использованное соединение выдается без проверки
+        Thread.sleep(600);
+
+        Connection connection = pool.borrow();
+        assertDelegatesTo(replacement, connection);
+        verify(broken).close();
+        assertEquals(1, pool.getMetrics().getTotalConnections());
+        connection.close();
+    }
+
+    @Test
+    void testIdleConnectionIsEvicted() throws SQLException {
+        Connection connection = validConnection();
+        pool = createPool("idle", 0, 2, 100, 60_000, connection);
+
+        pool.borrow().close();
+
+        awaitCondition(() -> pool.getMetrics().getTotalConnections() == 0);
+        // Счетчик уменьшается до закрытия физического соединения
+        verify(connection, timeout(1_000)).close();
+        assertEquals(0, pool.getMetrics().getIdleConnections());
+    }
+
+    @Test
+    void testConnectionIsEvictedAfterMaxLifetime() throws SQLException {
+        Connection connection = validConnection();
+        pool = createPool("lifetime", 0, 2, 60_000, 100, connection);
+
+        pool.borrow().close();
+
+        awaitCondition(() -> pool.getMetrics().getTotalConnections() == 0);
+        // Счетчик уменьшается до закрытия физического соединения
+        verify(connection, timeout(1_000)).close();
+    }
+
+    @Test
+    void testMinimumConnectionsAreKeptWarm() {
+        pool = createPool("warm", 2, 4, 60_000, 60_000, validConnection(), validConnection());
+
+        awaitCondition(() -> pool.getMetrics().getIdleConnections() == 2);
+        assertEquals(2, pool.getMetrics().getTotalConnections());
+        assertEquals(0, pool.getMetrics().getBorrowCount());
+    }
+
+    @Test
+    void testBrokenConnectionReturnedToPoolIsDiscarded() throws SQLException {
+        Connection broken = validConnection();
+        Connection replacement = validConnection();
+        when(broken.getAutoCommit()).thenThrow(new SQLException("I/O error", "08006"));
+        pool = createPool("broken", 0, 1, 60_000, 60_000, broken, replacement);
+
+        pool.borrow().close();
+
+        verify(broken).close();
+        ConnectionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(0, metrics.getTotalConnections());
+        assertEquals(0, metrics.getIdleConnections());
+        assertEquals(0, metrics.getActiveConnections());
+        Connection connection = pool.borrow();
+        assertDelegatesTo(replacement, connection);
+        connection.close();
+    }
+
+    @Test
+    void testBorrowMetrics() throws SQLException {
+        pool = createPool("metrics", 0, 2, 60_000, 60_000, validConnection(), validConnection());
+
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        ConnectionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(2, metrics.getBorrowCount());
+        assertEquals(2, metrics.getActiveConnections());
+        assertEquals(2, metrics.getTotalConnections());
+        assertTrue(metrics.getMaxWaitNanos() >= metrics.getAverageWaitNanos());
+
+        first.close();
+        metrics = pool.getMetrics();
+        assertEquals(1, metrics.getActiveConnections());
+        assertEquals(1, metrics.getIdleConnections());
+        second.close();
+    }
+
+    private static ConnectionPool createPool(String name, int minSize, int maxSize, long idleTimeoutMillis,
+                                             long maxLifetimeMillis, Connection... connections) {
+        Deque<Connection> queue = new ArrayDeque<>();
+        for (Connection connection : connections) {
+            queue.add(connection);
+        }
+        CONNECTIONS.put(URL_PREFIX + name, queue);
+        return new ConnectionPool(URL_PREFIX + name, "user", "password", minSize, maxSize,
+                100, idleTimeoutMillis, maxLifetimeMillis, 1);
+    }
+
+    // Выданное пулом соединение должно работать поверх ожидаемого физического соединения
+    private static void assertDelegatesTo(Connection physicalConnection, Connection connection) throws SQLException {
+        connection.getHoldability();
+        verify(physicalConnection).getHoldability();
+    }
+
+    private static Connection validConnection() {
+        Connection connection = mock(Connection.class);
+        try {
+            when(connection.isValid(anyInt())).thenReturn(true);
+            when(connection.getAutoCommit()).thenReturn(true);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return connection;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition was not met in time");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    // Драйвер, выдающий заранее подготовленные моки соединений
+    public static class StubDriver implements Driver {
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            Deque<Connection> queue = CONNECTIONS.get(url);
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    throw new SQLException("No more test connections for " + url);
+                }
+                return queue.poll();
+            }
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL_PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
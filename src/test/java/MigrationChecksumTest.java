@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.MigrationChecksum;
+import parser.SqlStatementSplitter;
+import reader.MigrationFileReader;
+import reader.MigrationPlanCache;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class MigrationChecksumTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testChecksumIgnoresCommentsWhitespaceAndLineEndings() {
+        int original = checksum("--Alex--Create table\nCREATE TABLE a (\n id INT\n);\n\nINSERT INTO a VALUES (1);\n");
+        int reformatted = checksum("--Bob--Other description\r\nCREATE TABLE a (\r\n id INT\r\n);  INSERT INTO a VALUES (1)");
+
+        assertEquals(original, reformatted);
+        assertNotEquals(original, checksum("CREATE TABLE a (\n id INT\n);\nINSERT INTO a VALUES (2);"));
+        assertNotEquals(checksum("SELECT 1; SELECT 2;"), checksum("SELECT 1 SELECT 2;"));
+    }
+
+    @Test
+    void testTrackedChecksumMatchesFileChecksum() throws IOException {
+        File file = Files.writeString(tempDir.resolve("V1__init.sql"),
+                "--Alex--Init\nCREATE TABLE a (id INT);\nCREATE INDEX a_idx ON a (id);").toFile();
+        MigrationChecksum tracked = new MigrationChecksum();
+        tracked.track(List.of("CREATE TABLE a (id INT)", "CREATE INDEX a_idx ON a (id)").iterator())
+                .forEachRemaining(statement -> { });
+
+        MigrationManager migrationManager = new MigrationManager(new MigrationFileReader(),
+                MigrationPlanCache.load(tempDir.resolve("plan.json")));
+
+        assertEquals(tracked.getValue(), migrationManager.calculateChecksum(file));
+        // Повторный расчет берется из кеша
+        assertEquals(tracked.getValue(), migrationManager.calculateChecksum(file));
+    }
+
+    private static int checksum(String sql) {
+        return MigrationChecksum.of(SqlStatementSplitter.split(sql).iterator());
+    }
+}
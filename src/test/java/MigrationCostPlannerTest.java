@@ -0,0 +1,124 @@
+import executor.MigrationCostEstimate;
+import executor.MigrationCostPlanner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import parser.MigrationFileDescriptor;
+import reader.MigrationFileReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MigrationCostPlannerTest {
+    private static final String UPDATE_PLAN = """
+            [{"Plan": {"Node Type": "ModifyTable", "Plan Rows": 0,
+              "Plans": [{"Node Type": "Seq Scan", "Plan Rows": 5000}]}}]
+            """;
+
+    @TempDir
+    private Path directory;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private ResultSet updatePlan;
+
+    @Mock
+    private PreparedStatement tableRowsStatement;
+
+    @Mock
+    private ResultSet tableRows;
+
+    @Mock
+    private Savepoint savepoint;
+
+    private final MigrationCostPlanner planner = new MigrationCostPlanner(new MigrationFileReader(), 1_000_000);
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.setSavepoint()).thenReturn(savepoint);
+        when(statement.executeQuery(contains("UPDATE orders"))).thenReturn(updatePlan);
+        when(statement.executeQuery(contains("INSERT INTO audit")))
+                .thenThrow(new SQLException("relation \"audit\" does not exist"));
+        when(updatePlan.next()).thenReturn(true);
+        when(updatePlan.getString(1)).thenReturn(UPDATE_PLAN);
+        when(connection.prepareStatement(contains("pg_class"))).thenReturn(tableRowsStatement);
+        when(tableRowsStatement.executeQuery()).thenReturn(tableRows);
+        when(tableRows.next()).thenReturn(true);
+        when(tableRows.getLong(1)).thenReturn(2_000_000L);
+    }
+
+    @Test
+    void testMigrationsAreRankedByRowsTouched() throws Exception {
+        List<MigrationCostEstimate> plan = planner.plan(connection, List.of(
+                migration("V2__backfill_status.sql", "UPDATE orders SET status = 'new' WHERE status IS NULL;\n"),
+                migration("V3__add_note.sql", "ALTER TABLE orders ADD COLUMN note TEXT;\n")));
+
+        assertEquals(List.of("V3__add_note.sql", "V2__backfill_status.sql"),
+                plan.stream().map(MigrationCostEstimate::getScript).toList());
+        assertEquals(2_000_000L, plan.get(0).getLockedRows());
+        assertTrue(plan.get(0).getWarnings().get(0).contains("ACCESS EXCLUSIVE lock on orders"));
+        assertEquals(5000L, plan.get(1).getEstimatedRows());
+        assertEquals(List.of(), plan.get(1).getWarnings());
+        verify(statement, never()).execute(contains("ALTER TABLE"));
+        verify(connection).rollback();
+        verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void testStatementThatCannotBeExplainedIsReported() throws Exception {
+        List<MigrationCostEstimate> plan = planner.plan(connection, List.of(migration("V4__audit.sql",
+                "CREATE TABLE audit (id INT);\nINSERT INTO audit VALUES (1);\nUPDATE orders SET status = 'old';\n")));
+
+        MigrationCostEstimate estimate = plan.get(0);
+        assertEquals(3, estimate.getStatementCount());
+        assertEquals(5000L, estimate.getEstimatedRows());
+        assertEquals(0L, estimate.getLockedRows());
+        assertTrue(estimate.getWarnings().get(0).startsWith("statement 2 can't be estimated"));
+        verify(connection).rollback(savepoint);
+        verify(statement, never()).execute(contains("CREATE TABLE"));
+    }
+
+    @Test
+    void testConcurrentIndexAndWeakerAlterTableAreNotReported() throws Exception {
+        List<MigrationCostEstimate> plan = planner.plan(connection, List.of(migration("V5__indexes.sql", """
+                CREATE INDEX CONCURRENTLY idx_orders_status ON orders (status);
+                ALTER TABLE orders VALIDATE CONSTRAINT orders_user_fk;
+                CREATE INDEX idx_orders_user ON orders (user_id);
+                """)));
+
+        assertEquals(2_000_000L, plan.get(0).getLockedRows());
+        assertEquals(List.of("statement 3 takes SHARE lock on orders (~2000000 rows)"), plan.get(0).getWarnings());
+        verify(tableRowsStatement).setString(1, "orders");
+    }
+
+    private MigrationFileDescriptor migration(String name, String sql) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, "--Alex--Test migration\n" + sql);
+        return MigrationFileDescriptor.of(file.toFile());
+    }
+}
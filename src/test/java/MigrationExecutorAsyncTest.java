@@ -0,0 +1,189 @@
+import executor.MigrationExecutor;
+import executor.MigrationResult;
+import executor.RollbackExecutor;
+import lock.LockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.MockitoAnnotations;
+import parser.MigrationFileDescriptor;
+import parser.MigrationMetadataParser;
+import reader.MigrationFileReader;
+import reader.RollbackFileIndex;
+import utils.ConnectionManager;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MigrationExecutorAsyncTest {
+
+    @TempDir
+    private Path directory;
+
+    @Mock
+    private MigrationFileReader migrationFileReader;
+
+    @Mock
+    private MigrationManager migrationManager;
+
+    @Mock
+    private LockProvider lockProvider;
+
+    private MigrationExecutor migrationExecutor;
+
+    private final List<Runnable> submittedTasks = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        migrationExecutor = new MigrationExecutor(migrationFileReader, migrationManager, lockProvider);
+    }
+
+    @Test
+    void testMigrationRunsOnGivenExecutor() {
+        when(migrationManager.findAndSortMigrations(anyString()))
+                .thenThrow(new IllegalArgumentException("Directory not found"));
+
+        CompletableFuture<MigrationResult> future =
+                migrationExecutor.processMigrationFilesAsync("missing", submittedTasks::add);
+
+        assertEquals(1, submittedTasks.size());
+        assertFalse(future.isDone());
+        submittedTasks.get(0).run();
+        ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+    }
+
+    @Test
+    void testCancelledMigrationIsNotStarted() {
+        CompletableFuture<MigrationResult> future =
+                migrationExecutor.processMigrationFilesAsync("db/migration", submittedTasks::add);
+
+        assertTrue(future.cancel(true));
+        submittedTasks.get(0).run();
+
+        assertTrue(future.isCancelled());
+        verify(migrationManager, never()).findAndSortMigrations(anyString());
+    }
+
+    @Test
+    void testCancellingOneRunDoesNotPauseAnother() throws Exception {
+        File migration = Files.writeString(directory.resolve("V1__backfill.sql"), """
+                --Alex--Backfill
+                -- @chunk-key: users.id
+                -- @chunk-size: 10
+                UPDATE users SET name = '' WHERE id >= :chunk_start AND id < :chunk_end;
+                """).toFile();
+        when(migrationManager.findAndSortMigrations(anyString()))
+                .thenReturn(List.of(MigrationFileDescriptor.of(migration)));
+        when(migrationManager.readMigrationMetadata(any(File.class))).thenAnswer(invocation ->
+                MigrationMetadataParser.parseMigrationMetadata(Files.readString(migration.toPath())));
+        when(migrationManager.shouldApplyMigration(anyInt(), anyInt())).thenReturn(true);
+        when(migrationFileReader.streamDbMigrationStatements(any(File.class))).thenAnswer(invocation ->
+                Stream.of("UPDATE users SET name = '' WHERE id >= :chunk_start AND id < :chunk_end"));
+        // Оба запуска останавливаются в первой части миграции, пока второй не будет отменен
+        CountDownLatch bothInFirstChunk = new CountDownLatch(2);
+        CountDownLatch secondCancelled = new CountDownLatch(1);
+        Executor executor = task -> new Thread(() -> {
+            try (MockedStatic<ConnectionManager> connectionManager = mockStatic(ConnectionManager.class)) {
+                connectionManager.when(ConnectionManager::get)
+                        .thenAnswer(invocation -> chunkedMigrationConnection(bothInFirstChunk, secondCancelled));
+                task.run();
+            }
+        }).start();
+
+        CompletableFuture<MigrationResult> first =
+                migrationExecutor.processMigrationFilesAsync(directory.toString(), executor);
+        CompletableFuture<MigrationResult> second =
+                migrationExecutor.processMigrationFilesAsync(directory.toString(), executor);
+        assertTrue(bothInFirstChunk.await(5, TimeUnit.SECONDS));
+        second.cancel(true);
+        secondCancelled.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS).isSuccess());
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    void testRejectedMigrationCompletesExceptionally() {
+        CompletableFuture<MigrationResult> future = migrationExecutor.processMigrationFilesAsync("db/migration",
+                task -> {
+                    throw new RejectedExecutionException("queue is full");
+                });
+
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    void testRollbackWithoutFilesCompletesExceptionally() {
+        when(migrationManager.getRollbackIndex(anyString())).thenReturn(RollbackFileIndex.build(directory.toFile()));
+        RollbackExecutor rollbackExecutor = new RollbackExecutor(migrationFileReader, migrationManager, lockProvider);
+
+        CompletableFuture<MigrationResult> future =
+                rollbackExecutor.rollbackToVersionAsync(directory.toString(), 1, Runnable::run);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+        assertEquals("No rollback files found in the path", exception.getCause().getMessage());
+    }
+
+    // Соединение запуска: диапазон ключей 1..25 обрабатывается тремя частями
+    private static Connection chunkedMigrationConnection(CountDownLatch bothInFirstChunk,
+                                                         CountDownLatch secondCancelled) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet keyRange = mock(ResultSet.class);
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        PreparedStatement chunkStatement = mock(PreparedStatement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(contains("MIN(id)"))).thenReturn(keyRange);
+        when(keyRange.next()).thenReturn(true);
+        when(keyRange.getLong(1)).thenReturn(1L);
+        when(keyRange.getLong(2)).thenReturn(25L);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(mock(ResultSet.class));
+        when(connection.prepareStatement(contains("UPDATE users"))).thenReturn(chunkStatement);
+        AtomicInteger chunks = new AtomicInteger();
+        when(chunkStatement.executeUpdate()).thenAnswer(invocation -> {
+            if (chunks.getAndIncrement() == 0) {
+                bothInFirstChunk.countDown();
+                secondCancelled.await(5, TimeUnit.SECONDS);
+            }
+            return 10;
+        });
+        return connection;
+    }
+}
@@ -1,10 +1,13 @@
 import exception.LockException;
 import executor.MigrationExecutor;
+import lock.LockProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import parser.MigrationFileDescriptor;
+import parser.MigrationMetadataParser;
 import reader.MigrationFileReader;
 import utils.MigrationManager;
 
@@ -14,6 +17,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.*;
@@ -30,6 +34,9 @@ public class MigrationExecutorParallelTest {
     @Mock
     private MigrationManager migrationManager;
 
+    @Mock
+    private LockProvider lockProvider;
+
     @Mock
     private Connection mockConnection;
 
@@ -60,11 +67,13 @@ public class MigrationExecutorParallelTest {
         });
 
         // Mock methods for file reading and migration version handling
-        when(migrationFileReader.readDbMigrationFile(any(File.class))).thenReturn(List.of(
+        when(migrationFileReader.readDbMigrationHeader(any(File.class))).thenReturn("-- user -- create test table");
+        when(migrationFileReader.streamDbMigrationStatements(any(File.class))).thenAnswer(invocation -> Stream.of(
                 "CREATE TABLE test (id SERIAL PRIMARY KEY, is_locked BOOLEAN DEFAULT FALSE)"));
-        when(migrationManager.extractVersionFromFilename(any(File.class))).thenReturn(1);
-        when(migrationManager.findAndSortMigrationFiles(anyString())).thenReturn(List.of(
-                new File("migration1.sql")));
+        when(migrationManager.readMigrationMetadata(any(File.class))).thenAnswer(invocation ->
+                MigrationMetadataParser.parseMigrationMetadata("-- user -- create test table"));
+        when(migrationManager.findAndSortMigrations(anyString())).thenReturn(List.of(
+                MigrationFileDescriptor.of(new File("V1__create_test_table.sql"))));
         when(migrationManager.getCurrentVersion(any(Connection.class))).thenReturn(0);
         when(migrationManager.shouldApplyMigration(anyInt(), anyInt())).thenReturn(true);
     }
@@ -0,0 +1,166 @@
+import executor.MigrationExecutor;
+import lock.LockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import parser.MigrationChecksum;
+import parser.MigrationMetadataParser;
+import parser.TransactionMode;
+import reader.MigrationFileReader;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MigrationExecutorTransactionModeTest {
+
+    @Mock
+    private MigrationFileReader migrationFileReader;
+
+    @Mock
+    private LockProvider lockProvider;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Mock
+    private PreparedStatement progressStatement;
+
+    @Mock
+    private ResultSet progressResultSet;
+
+    private MigrationExecutor migrationExecutor;
+
+    private final File file = new File("V2__create_index.sql");
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        migrationExecutor = new MigrationExecutor(migrationFileReader,
+                new MigrationManager(migrationFileReader, null), lockProvider);
+
+        when(connection.getAutoCommit()).thenReturn(false);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(connection.prepareStatement(contains("schema_migration_progress"))).thenReturn(progressStatement);
+        when(progressStatement.executeQuery()).thenReturn(progressResultSet);
+        when(migrationFileReader.streamDbMigrationStatements(any(File.class))).thenAnswer(invocation -> Stream.of(
+                "CREATE INDEX CONCURRENTLY a_idx ON a (id)", "CREATE INDEX CONCURRENTLY b_idx ON b (id)"));
+    }
+
+    @Test
+    void testParseTransactionDirective() {
+        assertEquals(TransactionMode.SHARED,
+                MigrationMetadataParser.parseMigrationMetadata("--Alex--Test").getTransactionMode());
+        assertEquals(TransactionMode.PER_MIGRATION, MigrationMetadataParser.parseMigrationMetadata(
+                "--Alex--Test\n-- @transaction: per-migration").getTransactionMode());
+        assertEquals(TransactionMode.PER_STATEMENT, MigrationMetadataParser.parseMigrationMetadata(
+                "--Alex--Test\n-- @transaction: per_statement").getTransactionMode());
+        assertThrows(IllegalArgumentException.class,
+                () -> MigrationMetadataParser.parseMigrationMetadata("--Alex--Test\n-- @transaction: nested"));
+    }
+
+    @Test
+    void testNonTransactionalMigrationExecutesStatementsInAutocommit() throws SQLException {
+        when(migrationFileReader.readDbMigrationHeader(any(File.class)))
+                .thenReturn("--Alex--Create indexes\n-- @transaction: none");
+
+        assertTrue(migrationExecutor.executeMigrationFile(connection, file, 2));
+
+        InOrder order = inOrder(connection, statement);
+        order.verify(connection).setAutoCommit(true);
+        order.verify(statement).execute("CREATE INDEX CONCURRENTLY a_idx ON a (id)");
+        order.verify(statement).execute("CREATE INDEX CONCURRENTLY b_idx ON b (id)");
+        order.verify(connection).setAutoCommit(false);
+        verify(statement, never()).executeBatch();
+        verify(preparedStatement).setString(8, "in_progress");
+        verify(preparedStatement).setString(1, "applied");
+    }
+
+    @Test
+    void testFailedNonTransactionalMigrationIsMarkedFailed() throws SQLException {
+        when(migrationFileReader.readDbMigrationHeader(any(File.class)))
+                .thenReturn("--Alex--Create indexes\n-- @transaction: none");
+        when(statement.execute("CREATE INDEX CONCURRENTLY b_idx ON b (id)")).thenThrow(new SQLException("boom"));
+
+        assertFalse(migrationExecutor.executeMigrationFile(connection, file, 2));
+
+        verify(statement).execute("CREATE INDEX CONCURRENTLY a_idx ON a (id)");
+        verify(preparedStatement).setString(1, "failed");
+    }
+
+    @Test
+    void testFailedMigrationIsResumedFromCheckpoint() throws SQLException {
+        when(migrationFileReader.readDbMigrationHeader(any(File.class)))
+                .thenReturn("--Alex--Create indexes\n-- @transaction: none");
+        when(progressResultSet.next()).thenReturn(true);
+        when(progressResultSet.getInt(1)).thenReturn(1);
+        when(progressResultSet.getInt(2)).thenReturn(
+                MigrationChecksum.of(List.of("CREATE INDEX CONCURRENTLY a_idx ON a (id)").iterator()));
+
+        assertTrue(migrationExecutor.executeMigrationFile(connection, file, 2));
+
+        verify(statement, never()).execute("CREATE INDEX CONCURRENTLY a_idx ON a (id)");
+        verify(statement).execute("CREATE INDEX CONCURRENTLY b_idx ON b (id)");
+        verify(progressStatement).setInt(3, 2);
+        verify(preparedStatement).setString(1, "applied");
+    }
+
+    @Test
+    void testChangedMigrationIsNotResumed() throws SQLException {
+        when(migrationFileReader.readDbMigrationHeader(any(File.class)))
+                .thenReturn("--Alex--Create indexes\n-- @transaction: none");
+        when(progressResultSet.next()).thenReturn(true);
+        when(progressResultSet.getInt(1)).thenReturn(1);
+        when(progressResultSet.getInt(2)).thenReturn(42);
+
+        assertFalse(migrationExecutor.executeMigrationFile(connection, file, 2));
+
+        verify(statement, never()).execute(anyString());
+        verify(preparedStatement).setString(1, "failed");
+    }
+
+    @Test
+    void testPerStatementMigrationCommitsEveryStatementWithCheckpoint() throws SQLException {
+        when(migrationFileReader.readDbMigrationHeader(any(File.class)))
+                .thenReturn("--Alex--Fill data\n-- @transaction: per_statement");
+
+        assertTrue(migrationExecutor.executeMigrationFile(connection, file, 2));
+
+        InOrder order = inOrder(connection, statement, progressStatement);
+        order.verify(statement).execute("CREATE INDEX CONCURRENTLY a_idx ON a (id)");
+        order.verify(progressStatement).setInt(3, 1);
+        order.verify(connection).commit();
+        order.verify(statement).execute("CREATE INDEX CONCURRENTLY b_idx ON b (id)");
+        order.verify(progressStatement).setInt(3, 2);
+        order.verify(connection).commit();
+        verify(connection, times(3)).commit();
+    }
+}
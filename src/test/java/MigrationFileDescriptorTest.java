@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.MigrationFileDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MigrationFileDescriptorTest {
+
+    @Test
+    void testMigrationFileName() {
+        MigrationFileDescriptor descriptor = MigrationFileDescriptor.of(new File("V12__create_users__table.sql"));
+
+        assertEquals(MigrationFileDescriptor.Kind.MIGRATION, descriptor.getKind());
+        assertEquals(12, descriptor.getVersion());
+        assertEquals(12, descriptor.getTargetVersion());
+        assertEquals("create_users__table", descriptor.getDescription());
+        assertFalse(descriptor.isRollback());
+    }
+
+    @Test
+    void testRollbackFileName() {
+        MigrationFileDescriptor descriptor = MigrationFileDescriptor.of(new File("U7__rollback_V3__drop_users.sql"));
+
+        assertEquals(MigrationFileDescriptor.Kind.ROLLBACK, descriptor.getKind());
+        assertEquals(7, descriptor.getVersion());
+        assertEquals(3, descriptor.getTargetVersion());
+        assertEquals("drop_users", descriptor.getDescription());
+        assertTrue(descriptor.isRollback());
+    }
+
+    @Test
+    void testInvalidFileNames() {
+        File directory = new File(".");
+        for (String name : new String[]{"V__init.sql", "V1_init.sql", "V1__init.txt", "X1__init.sql",
+                "U1__V1__init.sql", "U1__rollback_V__init.sql", "V99999999999__init.sql", "Vx1__init.sql"}) {
+            assertNull(MigrationFileDescriptor.parse(directory, name), name);
+        }
+        assertThrows(IllegalArgumentException.class, () -> MigrationFileDescriptor.of(new File("init.sql")));
+    }
+
+    @Test
+    void testParseCreatesFileInDirectory(@TempDir Path directory) throws IOException {
+        Path file = Files.createFile(directory.resolve("V1__.sql"));
+
+        MigrationFileDescriptor descriptor = MigrationFileDescriptor.parse(directory.toFile(), "V1__.sql");
+
+        assertEquals(file.toFile(), descriptor.getFile());
+        assertEquals("", descriptor.getDescription());
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
+import parser.TransactionMode;
+import reader.MigrationFileReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class MigrationFileReaderTest {
+
+    private final MigrationFileReader migrationFileReader = new MigrationFileReader();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamDbMigrationStatements() throws IOException {
+        File file = writeMigration("""
+                -- user -- create tables
+                CREATE TABLE a (id INT);
+                INSERT INTO a VALUES (1);
+                """);
+
+        try (Stream<String> statements = migrationFileReader.streamDbMigrationStatements(file)) {
+            assertEquals(List.of("CREATE TABLE a (id INT)", "INSERT INTO a VALUES (1)"),
+                    statements.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testReadDbMigrationHeader() throws IOException {
+        File file = writeMigration("""
+                -- user -- create tables
+
+                CREATE TABLE a (id INT);
+                -- not a header line
+                """);
+
+        MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata(
+                migrationFileReader.readDbMigrationHeader(file));
+
+        assertEquals("user", metadata.getInstalledBy());
+        assertEquals("create tables", metadata.getDescription());
+    }
+
+    @Test
+    void testMetadataAfterStatementsIsRead() throws IOException {
+        File file = writeMigration("""
+                -- @transaction: none
+                CREATE TABLE a (id INT);
+                -- user -- create tables
+                INSERT INTO a VALUES (1);
+                -- not a header line
+                """);
+
+        String header = migrationFileReader.readDbMigrationHeader(file);
+        MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata(header);
+
+        assertEquals("user", metadata.getInstalledBy());
+        assertEquals("create tables", metadata.getDescription());
+        assertEquals(TransactionMode.NONE, metadata.getTransactionMode());
+        assertFalse(header.contains("not a header line"));
+    }
+
+    private File writeMigration(String content) throws IOException {
+        return Files.writeString(tempDir.resolve("V1__init.sql"), content).toFile();
+    }
+}
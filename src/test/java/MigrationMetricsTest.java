@@ -0,0 +1,132 @@
+import executor.SqlBatchExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import metrics.MicrometerMigrationMetrics;
+import metrics.MigrationMetrics;
+import metrics.MigrationMetricsListener;
+import metrics.MigrationStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reader.MigrationFileReader;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class MigrationMetricsTest {
+    private static final String CREATE_SQL = "CREATE TABLE users (id INT)";
+    private static final String INSERT_SQL = "INSERT INTO users VALUES (1)";
+    private static final String SELECT_SQL = "SELECT count(*) FROM users";
+
+    @TempDir
+    private Path directory;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    private final MigrationStatistics statistics = new MigrationStatistics();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeBatch()).thenReturn(new int[]{0, 1});
+        when(statement.getUpdateCount()).thenReturn(-1);
+        MigrationMetrics.addListener(statistics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MigrationMetrics.removeListener(statistics);
+    }
+
+    @Test
+    void testStatementsAndBatchesAreMeasured() throws SQLException {
+        new SqlBatchExecutor(10).execute(connection, List.of(CREATE_SQL, INSERT_SQL, SELECT_SQL).iterator());
+
+        assertEquals(3, statistics.getStatementCount());
+        assertEquals(1, statistics.getBatchCount());
+        assertEquals(1, statistics.getRowsAffected());
+        assertTrue(statistics.getStatementTimeNanos() >= statistics.getMaxStatementTimeNanos());
+    }
+
+    @Test
+    void testBytesReadFromMigrationFilesAreCounted() throws Exception {
+        String content = "--Alex--Create users\n" + CREATE_SQL + ";\n";
+        File file = Files.writeString(directory.resolve("V1__create_users.sql"), content).toFile();
+
+        try (Stream<String> statements = new MigrationFileReader().streamDbMigrationStatements(file)) {
+            assertEquals(List.of(CREATE_SQL), statements.toList());
+        }
+
+        assertEquals(content.length(), statistics.getBytesRead());
+    }
+
+    @Test
+    void testFailingListenerDoesNotBreakOthers() {
+        MigrationMetricsListener failing = new MigrationMetricsListener() {
+            @Override
+            public void migrationLockAcquired(long waitNanos) {
+                throw new IllegalStateException("boom");
+            }
+        };
+        MigrationMetrics.addListener(failing);
+        try {
+            MigrationMetrics.migrationLockAcquired(5);
+            MigrationMetrics.migrationLockAcquired(7);
+        } finally {
+            MigrationMetrics.removeListener(failing);
+        }
+
+        assertEquals(2, statistics.getLockAcquisitionCount());
+        assertEquals(12, statistics.getLockWaitNanos());
+        assertEquals(7, statistics.getMaxLockWaitNanos());
+    }
+
+    @Test
+    void testStatisticsAreExposedThroughJmx() throws Exception {
+        MigrationStatistics registered = MigrationStatistics.registerMBean();
+        assertSame(registered, MigrationStatistics.registerMBean());
+        registered.reset();
+
+        MigrationMetrics.runFinished("default", 42, false);
+
+        Object failedRuns = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(MigrationStatistics.OBJECT_NAME), "FailedRunCount");
+        assertEquals(1L, failedRuns);
+        assertEquals(42L, registered.getLastRunDurationNanos());
+    }
+
+    @Test
+    void testMicrometerBinderRecordsMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (MicrometerMigrationMetrics binder = new MicrometerMigrationMetrics()) {
+            binder.bindTo(registry);
+            MigrationMetrics.connectionBorrowed(1_000_000);
+            MigrationMetrics.migrationExecuted("V1__create_users.sql", 2_000_000, true);
+        }
+        MigrationMetrics.connectionBorrowed(1_000_000);
+
+        assertEquals(1, registry.get("migration.connection.borrow.wait").timer().count());
+        assertEquals(1, registry.get("migration.duration").tag("script", "V1__create_users.sql")
+                .tag("result", "success").timer().count());
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
+import parser.TransactionMode;
+import reader.MigrationPlanCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MigrationPlanCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<File, MigrationMetadata> loader = file -> {
+        loads.incrementAndGet();
+        try {
+            return MigrationMetadataParser.parseMigrationMetadata(Files.readString(file.toPath()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    };
+
+    @Test
+    void testUnchangedFileIsNotParsedAfterReload() throws IOException {
+        Path cacheFile = tempDir.resolve("cache/plan.json");
+        File migration = writeMigration("V1__init.sql", "--Alex--Init\n-- @transaction: none\nSELECT 1;");
+
+        MigrationPlanCache cache = MigrationPlanCache.load(cacheFile);
+        assertNull(cache.getVersion(migration));
+        cache.putVersion(migration, 1);
+        assertEquals("Alex", cache.getMetadata(migration, loader).getInstalledBy());
+        cache.save();
+
+        MigrationPlanCache reloaded = MigrationPlanCache.load(cacheFile);
+        MigrationMetadata metadata = reloaded.getMetadata(migration, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, reloaded.getVersion(migration));
+        assertEquals("Init", metadata.getDescription());
+        assertEquals(TransactionMode.NONE, metadata.getTransactionMode());
+    }
+
+    @Test
+    void testTouchedFileIsReusedAndChangedFileIsParsedAgain() throws IOException {
+        File migration = writeMigration("V1__init.sql", "--Alex--Init\nSELECT 1;");
+        MigrationPlanCache cache = MigrationPlanCache.load(tempDir.resolve("plan.json"));
+        cache.getMetadata(migration, loader);
+
+        // Время изменения другое, содержимое то же - заголовок не перечитывается
+        migration.setLastModified(migration.lastModified() - 60_000);
+        cache.getMetadata(migration, loader);
+        assertEquals(1, loads.get());
+
+        writeMigration("V1__init.sql", "--Bob--Init\nSELECT 1;");
+        migration.setLastModified(migration.lastModified() + 120_000);
+        assertEquals("Bob", cache.getMetadata(migration, loader).getInstalledBy());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testCorruptedCacheFileIsIgnored() throws IOException {
+        Path cacheFile = tempDir.resolve("plan.json");
+        Files.writeString(cacheFile, "{not json");
+
+        assertNull(MigrationPlanCache.load(cacheFile).getVersion(new File("V1__init.sql")));
+    }
+
+    private File writeMigration(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content).toFile();
+    }
+}
@@ -3,15 +3,37 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import executor.MigrationResult;
+import org.mockito.InOrder;
+import utils.MigrationReportExport;
+import utils.MigrationReportFilter;
 import utils.MigrationReportGenerator;
+import utils.ReportFormat;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class MigrationReportGeneratorTest {
@@ -80,4 +102,146 @@ public class MigrationReportGeneratorTest {
 
         file.delete();
     }
+
+    @Test
+    void testGenerateCsvSummary() throws IOException {
+        List<MigrationResult> results = List.of(
+                MigrationResult.succeeded("shard_1", List.of(1, 2), 120),
+                MigrationResult.failed("shard_2", List.of(), 15, new SQLException("connection refused")));
+
+        reportGenerator.generateCsvSummary(results, "test_summary.csv");
+
+        File file = new File("test_summary.csv");
+        List<String> lines = Files.readAllLines(file.toPath());
+        file.delete();
+        assertEquals("Target,Success,Applied Versions,Duration,Error", lines.get(0));
+        assertEquals("shard_1,true,1 2,120,", lines.get(1));
+        assertEquals("shard_2,false,,15,connection refused", lines.get(2));
+    }
+
+    @Test
+    void testGenerateJsonSummary() throws IOException {
+        reportGenerator.generateJsonSummary(List.of(MigrationResult.succeeded("tenant_1", List.of(3), 7)),
+                "test_summary.json");
+
+        File file = new File("test_summary.json");
+        String content = Files.readString(file.toPath());
+        file.delete();
+        assertTrue(content.contains("\"target\" : \"tenant_1\""));
+        assertTrue(content.contains("\"success\" : true"));
+    }
+
+    @Test
+    void testCsvReportIsStreamedWithCursorAndFilters() throws SQLException, IOException {
+        PreparedStatement preparedStatement = mockHistoryQuery();
+        LocalDateTime since = LocalDateTime.of(2024, 1, 1, 0, 0);
+        MigrationReportFilter filter = MigrationReportFilter.all()
+                .fromVersion(2).installedFrom(since).status("applied").installedBy("user").limit(50);
+
+        StringWriter writer = new StringWriter();
+        long rows = new MigrationReportGenerator(250).writeCsvReport(mockConnection, filter, writer);
+
+        assertEquals(2, rows);
+        String[] lines = writer.toString().split("\r\n");
+        assertEquals("Version,Description,Script,Checksum,Installed On,Installed By,Execution Time,Success,Status",
+                lines[0]);
+        assertEquals("2,Add users,V2__add_users.sql,12345,2024-01-02 10:00:00.0,user,100,true,applied", lines[1]);
+        assertEquals(3, lines.length);
+
+        verify(mockConnection).prepareStatement(eq("""
+                SELECT id, version, description, script, checksum, installed_on, installed_by, execution_time, success, status
+                FROM schema_history_table
+                WHERE version >= ? AND installed_on >= ? AND status = ? AND installed_by = ?
+                ORDER BY id LIMIT 50"""), anyInt(), anyInt());
+        verify(preparedStatement).setObject(1, 2);
+        verify(preparedStatement).setObject(2, Timestamp.valueOf(since));
+        verify(preparedStatement).setObject(3, "applied");
+        verify(preparedStatement).setObject(4, "user");
+        InOrder order = inOrder(mockConnection, preparedStatement);
+        order.verify(mockConnection).setAutoCommit(false);
+        order.verify(preparedStatement).setFetchSize(250);
+        order.verify(preparedStatement).executeQuery();
+        order.verify(mockConnection).rollback();
+        order.verify(mockConnection).setAutoCommit(true);
+    }
+
+    @Test
+    void testJsonReportIsStreamed() throws SQLException, IOException {
+        mockHistoryQuery();
+
+        StringWriter writer = new StringWriter();
+        long rows = new MigrationReportGenerator(250).writeJsonReport(mockConnection, MigrationReportFilter.all(), writer);
+
+        assertEquals(2, rows);
+        String content = writer.toString();
+        assertTrue(content.startsWith("[ {"));
+        assertTrue(content.contains("\"script\" : \"V2__add_users.sql\""));
+        assertTrue(content.contains("\"installedBy\" : \"user\""));
+        assertTrue(content.endsWith("} ]"));
+    }
+
+    @Test
+    void testNdjsonReportExportsRowsAfterWatermark() throws SQLException, IOException {
+        PreparedStatement preparedStatement = mockHistoryQuery();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MigrationReportExport export = new MigrationReportGenerator(250).writeReport(mockConnection,
+                MigrationReportFilter.all().afterId(6), ReportFormat.NDJSON, outputStream);
+
+        assertEquals(2, export.getRows());
+        assertEquals(8, export.getLastId());
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"version\":2,\"description\":\"Add users\""));
+        assertTrue(lines[1].startsWith("{\"version\":3,"));
+        verify(mockConnection).prepareStatement(contains("WHERE id > ?"), anyInt(), anyInt());
+        verify(preparedStatement).setObject(1, 6L);
+    }
+
+    @Test
+    void testColumnarReportStoresColumnsTogether() throws SQLException, IOException {
+        mockHistoryQuery();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MigrationReportGenerator(250).writeReport(mockConnection, MigrationReportFilter.all(),
+                ReportFormat.COLUMNAR, outputStream);
+
+        ByteBuffer buffer = ByteBuffer.wrap(outputStream.toByteArray());
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        assertEquals("MCOL", new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(1, buffer.get());
+        int columnCount = buffer.getShort();
+        assertEquals(9, columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            buffer.get();
+            int nameLength = buffer.getShort();
+            buffer.position(buffer.position() + nameLength);
+        }
+        assertEquals(2, buffer.getInt());
+        // Первая колонка группы - версии обеих строк подряд
+        assertEquals(2, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        assertEquals("Add users".length(), buffer.getInt());
+        assertEquals(0, outputStream.toByteArray()[outputStream.size() - 1]);
+    }
+
+    private PreparedStatement mockHistoryQuery() throws SQLException {
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(mockConnection.getAutoCommit()).thenReturn(true);
+        when(mockConnection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(mockResultSet);
+        when(mockResultSet.next()).thenReturn(true, true, false);
+        when(mockResultSet.getLong("id")).thenReturn(7L, 8L);
+        when(mockResultSet.getInt("version")).thenReturn(2, 3);
+        when(mockResultSet.getString("description")).thenReturn("Add users");
+        when(mockResultSet.getString("script")).thenReturn("V2__add_users.sql");
+        when(mockResultSet.getInt("checksum")).thenReturn(12345);
+        when(mockResultSet.getTimestamp("installed_on")).thenReturn(Timestamp.valueOf("2024-01-02 10:00:00"));
+        when(mockResultSet.getString("installed_by")).thenReturn("user");
+        when(mockResultSet.getInt("execution_time")).thenReturn(100);
+        when(mockResultSet.getBoolean("success")).thenReturn(true);
+        when(mockResultSet.getString("status")).thenReturn("applied");
+        return preparedStatement;
+    }
 }
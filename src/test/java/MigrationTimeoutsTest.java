@@ -0,0 +1,128 @@
+import executor.MigrationTimeouts;
+import executor.SqlBatchExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MigrationTimeoutsTest {
+    private static final String ALTER_SQL = "ALTER TABLE orders ADD COLUMN note TEXT";
+    private static final String INSERT_SQL = "INSERT INTO orders (id) VALUES (1)";
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private Savepoint savepoint;
+
+    private final MigrationTimeouts timeouts = new MigrationTimeouts(3000, 0, 2, 1);
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.getAutoCommit()).thenReturn(false);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.setSavepoint()).thenReturn(savepoint);
+    }
+
+    @Test
+    void testHeaderOverridesGlobalTimeouts() {
+        MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata(
+                "--Alex--Add note\n-- @lock-timeout: 500\n-- @statement-timeout: 60000\nALTER TABLE orders;");
+
+        MigrationTimeouts migrationTimeouts = timeouts.forMigration(metadata);
+
+        assertEquals(500, migrationTimeouts.getLockTimeoutMillis());
+        assertEquals(60000, migrationTimeouts.getStatementTimeoutMillis());
+        assertEquals(3000, timeouts.forMigration(new MigrationMetadata()).getLockTimeoutMillis());
+        assertThrows(IllegalArgumentException.class, () -> MigrationMetadataParser.parseMigrationMetadata(
+                "--Alex--Add note\n-- @lock-timeout: soon"));
+    }
+
+    @Test
+    void testOnlyFailedStatementIsRetriedAfterLockTimeout() throws SQLException {
+        when(statement.execute(ALTER_SQL)).thenThrow(lockTimeout()).thenReturn(false);
+
+        int executed = new SqlBatchExecutor(10).execute(connection,
+                List.of(INSERT_SQL, ALTER_SQL, INSERT_SQL).iterator(), timeouts);
+
+        assertEquals(3, executed);
+        InOrder order = inOrder(connection, statement);
+        order.verify(statement).addBatch(INSERT_SQL);
+        order.verify(statement).executeBatch();
+        order.verify(connection).setSavepoint();
+        order.verify(statement).execute(ALTER_SQL);
+        order.verify(connection).rollback(savepoint);
+        order.verify(connection).setSavepoint();
+        order.verify(statement).execute(ALTER_SQL);
+        order.verify(connection).releaseSavepoint(savepoint);
+        order.verify(statement).addBatch(INSERT_SQL);
+        verify(connection, never()).rollback();
+        assertTrue(timeouts.getLockWaitMillis() >= 1);
+    }
+
+    @Test
+    void testLockTimeoutIsThrownAfterAllRetries() throws SQLException {
+        SQLException lockTimeout = lockTimeout();
+        when(statement.execute(ALTER_SQL)).thenThrow(lockTimeout);
+
+        SQLException exception = assertThrows(SQLException.class,
+                () -> timeouts.execute(connection, statement, ALTER_SQL));
+
+        assertSame(lockTimeout, exception);
+        verify(statement, times(3)).execute(ALTER_SQL);
+        verify(connection, times(3)).rollback(savepoint);
+    }
+
+    @Test
+    void testOtherErrorsAndDmlAreNotRetried() throws SQLException {
+        when(statement.execute(ALTER_SQL)).thenThrow(new SQLException("syntax error", "42601"));
+
+        assertThrows(SQLException.class, () -> timeouts.execute(connection, statement, ALTER_SQL));
+
+        verify(statement, times(1)).execute(ALTER_SQL);
+        assertFalse(timeouts.isRetried(INSERT_SQL));
+        assertFalse(new MigrationTimeouts(0, 5000, 2, 1).isRetried(ALTER_SQL));
+    }
+
+    @Test
+    void testTimeoutsAreSetAndReset() throws SQLException {
+        MigrationTimeouts migrationTimeouts = new MigrationTimeouts(3000, 60000, 0, 0);
+
+        migrationTimeouts.apply(connection);
+        migrationTimeouts.reset(connection);
+
+        InOrder order = inOrder(statement);
+        order.verify(statement).execute("SET lock_timeout = 3000");
+        order.verify(statement).execute("SET statement_timeout = 60000");
+        order.verify(statement).execute("RESET lock_timeout");
+        order.verify(statement).execute("RESET statement_timeout");
+    }
+
+    private static SQLException lockTimeout() {
+        return new SQLException("canceling statement due to lock timeout", "55P03");
+    }
+}
@@ -0,0 +1,124 @@
+import exception.ConnectionPoolException;
+import executor.MigrationResult;
+import executor.MultiDatabaseMigrationRunner;
+import lock.LockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reader.MigrationFileReader;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MultiDatabaseMigrationRunnerTest {
+    private static final List<String> SHARDS = List.of("shard_1", "shard_2", "shard_3");
+
+    @TempDir
+    private Path directory;
+
+    private MigrationFileReader fileReader;
+
+    private final LockProvider lockProvider = mock(LockProvider.class);
+
+    private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+
+    private final Set<String> brokenShards = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.writeString(directory.resolve("V1__create_users.sql"),
+                "--Alex--Create users\nCREATE TABLE users (id INT);\n");
+        fileReader = spy(new MigrationFileReader());
+    }
+
+    @Test
+    void testEveryDataSourceIsMigrated() throws Exception {
+        List<MigrationResult> results = runner(false).migrate(directory.toString());
+
+        assertEquals(SHARDS, results.stream().map(MigrationResult::getTarget).toList());
+        assertTrue(results.stream().allMatch(MigrationResult::isSuccess));
+        verify(fileReader, times(1)).streamDbMigrationStatements(any(File.class));
+        for (String shard : SHARDS) {
+            verify(statements.get(shard)).addBatch("CREATE TABLE users (id INT)");
+        }
+        verify(lockProvider, times(3)).release(any(Connection.class));
+    }
+
+    @Test
+    void testFailedCanaryStopsOtherDataSources() throws Exception {
+        brokenShards.add("shard_1");
+
+        List<MigrationResult> results = runner(true).migrate(directory.toString());
+
+        assertEquals(3, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(2).getFailureCause().getMessage().contains("canary"));
+        assertEquals(Set.of(), statements.keySet());
+    }
+
+    @Test
+    void testFailedDataSourceDoesNotStopOthers() throws Exception {
+        brokenShards.add("shard_2");
+
+        List<MigrationResult> results = runner(true).migrate(directory.toString());
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(2).isSuccess());
+        assertEquals("shard_2 is down", results.get(1).getFailureCause().getMessage());
+    }
+
+    private MultiDatabaseMigrationRunner runner(boolean canaryFirst) {
+        return new MultiDatabaseMigrationRunner(fileReader, new MigrationManager(fileReader, null), SHARDS, 2,
+                canaryFirst, this::connection, lockProvider);
+    }
+
+    private Connection connection(String shard) {
+        if (brokenShards.contains(shard)) {
+            throw new ConnectionPoolException(shard + " is down");
+        }
+        try {
+            Connection connection = mock(Connection.class);
+            Statement statement = mock(Statement.class);
+            ResultSet versionResultSet = mock(ResultSet.class);
+            PreparedStatement preparedStatement = mock(PreparedStatement.class);
+            ResultSet emptyResultSet = mock(ResultSet.class);
+
+            when(connection.createStatement()).thenReturn(statement);
+            when(statement.executeQuery(anyString())).thenReturn(emptyResultSet);
+            when(statement.executeQuery(contains("MAX(version)"))).thenReturn(versionResultSet);
+            when(versionResultSet.next()).thenReturn(true);
+            when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+            when(preparedStatement.executeQuery()).thenReturn(emptyResultSet);
+            statements.put(shard, statement);
+            return connection;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
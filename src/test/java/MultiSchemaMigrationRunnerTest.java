@@ -0,0 +1,195 @@
+import exception.LockException;
+import executor.MigrationResult;
+import executor.MultiSchemaMigrationRunner;
+import lock.LockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reader.MigrationFileReader;
+import utils.MigrationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MultiSchemaMigrationRunnerTest {
+
+    @TempDir
+    private Path directory;
+
+    private MigrationFileReader fileReader;
+
+    private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+
+    private final Map<String, LockProvider> lockProviders = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.writeString(directory.resolve("V1__create_users.sql"),
+                "--Alex--Create users\nCREATE TABLE users (id INT);\n");
+        Files.writeString(directory.resolve("V2__add_name.sql"),
+                "--Alex--Add name\nALTER TABLE users ADD COLUMN name TEXT;\n");
+        fileReader = spy(new MigrationFileReader());
+    }
+
+    @Test
+    void testMigrationSetIsReadOnceForAllSchemas() throws Exception {
+        List<MigrationResult> results = runner(2).migrate(directory.toString(),
+                List.of("tenant_1", "tenant_2", "tenant_3"));
+
+        assertEquals(3, results.size());
+        assertTrue(results.stream().allMatch(MigrationResult::isSuccess));
+        assertEquals("tenant_2", results.get(1).getTarget());
+        assertEquals(List.of(1, 2), results.get(0).getAppliedVersions());
+        verify(fileReader, times(2)).streamDbMigrationStatements(any(File.class));
+        verify(fileReader, times(2)).readDbMigrationHeader(any(File.class));
+        for (String schema : List.of("tenant_1", "tenant_2", "tenant_3")) {
+            verify(statements.get(schema)).execute("SET search_path TO \"" + schema + "\"");
+            verify(statements.get(schema)).addBatch("CREATE TABLE users (id INT)");
+            verify(statements.get(schema)).execute("RESET search_path");
+            verify(lockProviders.get(schema)).release(any(Connection.class));
+        }
+    }
+
+    @Test
+    void testFailedSchemaDoesNotStopOthers() throws Exception {
+        MultiSchemaMigrationRunner runner = runner(4);
+
+        List<MigrationResult> results = runner.migrate(directory.toString(), List.of("tenant_1", "broken"));
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("boom", results.get(1).getFailureCause().getMessage());
+        verify(statements.get("broken")).execute("RESET search_path");
+        verify(lockProviders.get("broken"), never()).release(any(Connection.class));
+    }
+
+    @Test
+    void testParallelismLimitsConcurrentSchemas() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        LockProvider lockProvider = new LockProvider() {
+            @Override
+            public void acquire(Connection connection) {
+                threadNames.add(Thread.currentThread().getName());
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void release(Connection connection) {
+                running.decrementAndGet();
+            }
+        };
+        MultiSchemaMigrationRunner runner = new MultiSchemaMigrationRunner(fileReader,
+                new MigrationManager(fileReader, null), 2, this::connection, schema -> lockProvider);
+
+        List<MigrationResult> results = runner.migrate(directory.toString(),
+                List.of("tenant_1", "tenant_2", "tenant_3", "tenant_4", "tenant_5"));
+
+        assertTrue(results.stream().allMatch(MigrationResult::isSuccess));
+        assertEquals(2, maxRunning.get());
+        assertTrue(threadNames.stream().allMatch(name -> name.startsWith("schema-migration-worker-")));
+    }
+
+    @Test
+    void testSchemaNameIsQuoted() throws Exception {
+        runner(1).migrate(directory.toString(), List.of("Tenant\"1"));
+
+        verify(statements.get("Tenant\"1")).execute("SET search_path TO \"Tenant\"\"1\"");
+    }
+
+    @Test
+    void testChunkedMigrationsAreRejected() throws IOException {
+        Files.writeString(directory.resolve("V3__backfill.sql"),
+                "--Alex--Backfill\n-- @chunk-key: users.id\nUPDATE users SET name = '' WHERE id >= :chunk_start"
+                        + " AND id < :chunk_end;\n");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> runner(1).migrate(directory.toString(), List.of("tenant_1")));
+    }
+
+    private MultiSchemaMigrationRunner runner(int parallelism) {
+        return new MultiSchemaMigrationRunner(fileReader, new MigrationManager(fileReader, null), parallelism,
+                this::connection, schema -> lockProviders.computeIfAbsent(schema, this::lockProvider));
+    }
+
+    private LockProvider lockProvider(String schema) {
+        LockProvider lockProvider = mock(LockProvider.class);
+        if (schema.equals("broken")) {
+            try {
+                doThrow(new LockException("boom")).when(lockProvider).acquire(any(Connection.class));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return lockProvider;
+    }
+
+    // Схема определяется по выражению SET search_path, выполненному на соединении
+    private Connection connection() {
+        try {
+            Connection connection = mock(Connection.class);
+            Statement statement = mock(Statement.class);
+            ResultSet versionResultSet = mock(ResultSet.class);
+            PreparedStatement preparedStatement = mock(PreparedStatement.class);
+            PreparedStatement appliedStatement = mock(PreparedStatement.class);
+            ResultSet emptyResultSet = mock(ResultSet.class);
+            ResultSet appliedResultSet = mock(ResultSet.class);
+
+            when(connection.createStatement()).thenReturn(statement);
+            when(statement.executeQuery(anyString())).thenReturn(emptyResultSet);
+            when(statement.executeQuery(contains("MAX(version)"))).thenReturn(versionResultSet);
+            when(versionResultSet.next()).thenReturn(true);
+            when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+            when(connection.prepareStatement(contains("SELECT version FROM schema_history_table")))
+                    .thenReturn(appliedStatement);
+            when(appliedStatement.executeQuery()).thenReturn(emptyResultSet, appliedResultSet);
+            when(appliedResultSet.next()).thenReturn(true, true, false);
+            when(appliedResultSet.getInt(1)).thenReturn(2, 1);
+            when(statement.execute(anyString())).thenAnswer(invocation -> {
+                String sql = invocation.getArgument(0);
+                if (sql.startsWith("SET search_path TO ")) {
+                    String schema = sql.substring("SET search_path TO ".length() + 1, sql.length() - 1)
+                            .replace("\"\"", "\"");
+                    statements.put(schema, statement);
+                }
+                return false;
+            });
+            return connection;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
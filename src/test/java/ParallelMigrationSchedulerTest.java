@@ -0,0 +1,160 @@
+import executor.ParallelMigrationScheduler;
+import executor.ParallelMigrationScheduler.MigrationNode;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import parser.MigrationMetadata;
+import parser.MigrationMetadataParser;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParallelMigrationSchedulerTest {
+
+    private final Connection connection = mock(Connection.class);
+
+    @Test
+    void testParseDependencyDirectives() {
+        MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata("""
+                --Alex--Create index
+                -- @depends: V3, 5
+                CREATE INDEX a_idx ON a (id);
+                """);
+
+        assertEquals("Alex", metadata.getInstalledBy());
+        assertEquals("Create index", metadata.getDescription());
+        assertEquals(List.of(3, 5), metadata.getDependsOn());
+        assertFalse(metadata.isIndependent());
+        assertThrows(IllegalArgumentException.class,
+                () -> MigrationMetadataParser.parseMigrationMetadata("--Alex--Test\n-- @depends: next"));
+    }
+
+    @Test
+    void testUnknownDirectivesAreTreatedAsComments() {
+        MigrationMetadata metadata = MigrationMetadataParser.parseMigrationMetadata("""
+                -- @john -- fix index
+                -- @TODO drop the old index
+                -- @author: x
+                CREATE INDEX a_idx ON a (id);
+                """);
+
+        assertEquals("@john", metadata.getInstalledBy());
+        assertEquals("fix index", metadata.getDescription());
+        assertTrue(metadata.getDependsOn().isEmpty());
+    }
+
+    @Test
+    void testIndependentMigrationsRunConcurrently() throws InterruptedException {
+        // Обе миграции ждут друг друга - тест завершится, только если они выполняются одновременно
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ParallelMigrationScheduler scheduler = new ParallelMigrationScheduler(2, (connection, file, version) -> {
+            bothStarted.countDown();
+            try {
+                return bothStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }, () -> connection);
+
+        assertTrue(scheduler.run(List.of(node(1, independent()), node(2, independent())), Set.of()));
+    }
+
+    @Test
+    void testDependenciesAreAppliedFirst() throws InterruptedException {
+        Queue<Integer> order = new ConcurrentLinkedQueue<>();
+        ParallelMigrationScheduler scheduler = new ParallelMigrationScheduler(4, (connection, file, version) -> {
+            order.add(version);
+            return true;
+        }, () -> connection);
+
+        MigrationMetadata dependsOnFirst = new MigrationMetadata();
+        dependsOnFirst.setDependsOn(List.of(1));
+        assertTrue(scheduler.run(List.of(node(1, new MigrationMetadata()), node(2, new MigrationMetadata()),
+                node(3, dependsOnFirst)), Set.of()));
+
+        List<Integer> applied = List.copyOf(order);
+        assertEquals(3, applied.size());
+        assertTrue(applied.indexOf(1) < applied.indexOf(2));
+        assertTrue(applied.indexOf(1) < applied.indexOf(3));
+    }
+
+    @Test
+    void testFailureStopsDependentMigrations() throws Exception {
+        Queue<Integer> order = new ConcurrentLinkedQueue<>();
+        ParallelMigrationScheduler scheduler = new ParallelMigrationScheduler(2, (connection, file, version) -> {
+            order.add(version);
+            return version != 1;
+        }, () -> connection);
+
+        assertFalse(scheduler.run(List.of(node(1, new MigrationMetadata()), node(2, new MigrationMetadata())),
+                Set.of()));
+        assertEquals(List.of(1), List.copyOf(order));
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void testUnexpectedWorkerErrorCancelsRunningMigrations() throws Exception {
+        Connection runningConnection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        when(runningConnection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            cancelled.countDown();
+            return null;
+        }).when(pgConnection).cancelQuery();
+        ParallelMigrationScheduler scheduler = new ParallelMigrationScheduler(2, (connection, file, version) -> {
+            try {
+                if (version == 1) {
+                    secondStarted.await(5, TimeUnit.SECONDS);
+                    throw new IllegalStateException("Unexpected");
+                }
+                secondStarted.countDown();
+                return !cancelled.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }, () -> runningConnection);
+
+        assertThrows(IllegalStateException.class,
+                () -> scheduler.run(List.of(node(1, independent()), node(2, independent())), Set.of()));
+        verify(pgConnection).cancelQuery();
+    }
+
+    @Test
+    void testUnknownDependencyIsRejected() {
+        ParallelMigrationScheduler scheduler = new ParallelMigrationScheduler(1,
+                (connection, file, version) -> true, () -> connection);
+        MigrationMetadata metadata = new MigrationMetadata();
+        metadata.setDependsOn(List.of(7));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> scheduler.run(List.of(node(8, metadata)), Set.of(1, 2)));
+    }
+
+    private static MigrationMetadata independent() {
+        MigrationMetadata metadata = new MigrationMetadata();
+        metadata.setIndependent(true);
+        return metadata;
+    }
+
+    private static MigrationNode node(int version, MigrationMetadata metadata) {
+        return new MigrationNode(new File("V" + version + "__test.sql"), version, metadata);
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import utils.PooledConnection;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PooledConnectionTest {
+
+    @Mock
+    private Connection physicalConnection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Mock
+    private CallableStatement callableStatement;
+
+    @Mock
+    private Executor executor;
+
+    private final AtomicInteger releases = new AtomicInteger();
+    private PooledConnection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(physicalConnection.createStatement()).thenReturn(statement);
+        when(physicalConnection.prepareStatement("SELECT 1")).thenReturn(preparedStatement);
+        when(physicalConnection.prepareCall("CALL refresh()")).thenReturn(callableStatement);
+        connection = new PooledConnection(physicalConnection, pooled -> releases.incrementAndGet());
+    }
+
+    @Test
+    void testCloseReleasesConnectionOnce() {
+        connection.close();
+        connection.close();
+
+        assertEquals(1, releases.get());
+    }
+
+    @Test
+    void testAbortAfterCloseDoesNotReleaseAgain() throws SQLException {
+        connection.close();
+        connection.abort(executor);
+
+        assertEquals(1, releases.get());
+        verify(physicalConnection, never()).abort(executor);
+    }
+
+    @Test
+    void testRepeatedAbortReleasesOnce() throws SQLException {
+        connection.abort(executor);
+        connection.abort(executor);
+        connection.close();
+
+        assertEquals(1, releases.get());
+        verify(physicalConnection, times(1)).abort(executor);
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    void testOpenStatementsAreClosedOnReturnToPool() throws SQLException {
+        Statement pooledStatement = connection.createStatement();
+        connection.prepareStatement("SELECT 1");
+        connection.prepareCall("CALL refresh()");
+        assertEquals(3, connection.getOpenStatementCount());
+
+        connection.close();
+
+        verify(statement).close();
+        verify(preparedStatement).close();
+        verify(callableStatement).close();
+        assertEquals(0, connection.getOpenStatementCount());
+        assertThrows(SQLException.class, () -> pooledStatement.execute("SELECT 1"));
+    }
+
+    @Test
+    void testClosedStatementsAreNoLongerTracked() throws SQLException {
+        connection.createStatement().close();
+        connection.prepareStatement("SELECT 1").close();
+        CallableStatement call = connection.prepareCall("CALL refresh()");
+        call.close();
+        call.close();
+
+        assertEquals(0, connection.getOpenStatementCount());
+        verify(callableStatement, times(1)).close();
+    }
+
+    @Test
+    void testStatementsReturnPooledConnection() throws SQLException {
+        assertSame(connection, connection.createStatement().getConnection());
+        assertSame(connection, connection.prepareStatement("SELECT 1").getConnection());
+        assertSame(connection, connection.prepareCall("CALL refresh()").getConnection());
+    }
+
+    @Test
+    void testClosedConnectionRejectsCalls() {
+        connection.close();
+
+        assertThrows(SQLException.class, () -> connection.createStatement());
+        assertThrows(SQLException.class, () -> connection.setAutoCommit(false));
+    }
+}
@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reader.RollbackFileIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RollbackFileIndexTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testRollbacksAreIndexedByTargetVersion() throws IOException {
+        createFiles("U1__rollback_V1__init.sql", "U3__rollback_V2__users.sql", "U2__rollback_V2__users.sql",
+                "V1__init.sql", "notes.txt");
+
+        RollbackFileIndex index = RollbackFileIndex.build(directory.toFile());
+
+        assertEquals(2, index.size());
+        assertEquals("U1__rollback_V1__init.sql", index.get(1).getName());
+        // Из нескольких файлов отката одной миграции выбирается файл с наибольшей версией
+        assertEquals("U3__rollback_V2__users.sql", index.get(2).getName());
+        assertNull(index.get(3));
+        assertEquals(1, index.getRollbacks().get(0).getTargetVersion());
+        assertEquals(2, index.getRollbacks().get(1).getTargetVersion());
+    }
+
+    @Test
+    void testManyVersions() throws IOException {
+        for (int version = 1; version <= 100; version++) {
+            createFiles("U" + version + "__rollback_V" + (version * 7) + "__change.sql");
+        }
+
+        RollbackFileIndex index = RollbackFileIndex.build(directory.toFile());
+
+        for (int version = 1; version <= 100; version++) {
+            assertEquals(version, index.get(version * 7).getVersion());
+            assertNull(index.get(version * 7 + 1));
+        }
+    }
+
+    @Test
+    void testIndexIsRebuiltAfterDirectoryChanges() throws IOException {
+        createFiles("U1__rollback_V1__init.sql");
+        File dir = directory.toFile();
+        assertTrue(dir.setLastModified(System.currentTimeMillis() - 60_000));
+
+        RollbackFileIndex index = RollbackFileIndex.forDirectory(dir.getPath());
+        assertSame(index, RollbackFileIndex.forDirectory(dir.getPath()));
+
+        createFiles("U2__rollback_V2__users.sql");
+        assertTrue(dir.setLastModified(System.currentTimeMillis() - 30_000));
+
+        RollbackFileIndex rebuilt = RollbackFileIndex.forDirectory(dir.getPath());
+        assertNotSame(index, rebuilt);
+        assertEquals(2, rebuilt.size());
+    }
+
+    @Test
+    void testMissingDirectoryGivesEmptyIndex() {
+        RollbackFileIndex index = RollbackFileIndex.forDirectory(directory.resolve("missing").toString());
+
+        assertEquals(0, index.size());
+        assertNull(index.get(1));
+    }
+
+    private void createFiles(String... names) throws IOException {
+        for (String name : names) {
+            Files.createFile(directory.resolve(name));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import utils.SchemaHistoryWriter;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchemaHistoryWriterTest {
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Mock
+    private Array versions;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(connection.createArrayOf(eq("integer"), any())).thenReturn(versions);
+    }
+
+    @Test
+    void testRecordsAreWrittenInOneBatch() throws SQLException {
+        try (SchemaHistoryWriter writer = new SchemaHistoryWriter(connection)) {
+            writer.addRecord(1, "Init", "V1__init.sql", 10, "Alex", 5, true, "applied");
+            writer.addRecord(2, "Users", "V2__users.sql", 20, "Alex", 7, true, "applied");
+            verify(preparedStatement, never()).executeBatch();
+
+            writer.flush();
+        }
+
+        verify(connection, times(1)).prepareStatement(contains("INSERT INTO schema_history_table"));
+        verify(preparedStatement, times(2)).setString(9, "migration");
+        verify(preparedStatement, times(2)).addBatch();
+        verify(preparedStatement, times(1)).executeBatch();
+        verify(preparedStatement).close();
+    }
+
+    @Test
+    void testRollbackRecordsHaveRollbackKind() throws SQLException {
+        try (SchemaHistoryWriter writer = new SchemaHistoryWriter(connection)) {
+            writer.addRecord(2, "Drop users", "U2__rollback_V2__users.sql", 30, "Alex", 3, true, "applied");
+            writer.flush();
+        }
+
+        verify(preparedStatement).setString(9, "rollback");
+    }
+
+    @Test
+    void testStatusUpdatesAreGroupedByStatus() throws SQLException {
+        try (SchemaHistoryWriter writer = new SchemaHistoryWriter(connection)) {
+            writer.updateStatus(4, "rolled_back");
+            writer.updateStatus(3, "rolled_back");
+            writer.flush();
+            // Повторный flush без новых изменений не обращается к базе
+            writer.flush();
+        }
+
+        verify(connection).createArrayOf("integer", new Object[]{4, 3});
+        verify(preparedStatement).setString(1, "rolled_back");
+        verify(preparedStatement).setArray(2, versions);
+        verify(preparedStatement, times(1)).executeUpdate();
+        verify(preparedStatement, never()).executeBatch();
+    }
+}
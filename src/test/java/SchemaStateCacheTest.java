@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import utils.SchemaStateCache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchemaStateCacheTest {
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement versionsStatement;
+
+    @Mock
+    private ResultSet versionsResult;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.prepareStatement(contains("ORDER BY version"))).thenReturn(versionsStatement);
+        when(versionsStatement.executeQuery()).thenReturn(versionsResult);
+        when(versionsResult.next()).thenReturn(true, true, true, false);
+        when(versionsResult.getInt(1)).thenReturn(1, 2, 5);
+    }
+
+    @Test
+    void testStateIsLoadedOnceWithinTtl() throws SQLException {
+        SchemaStateCache cache = new SchemaStateCache(() -> connection, 60_000);
+
+        assertEquals(5, cache.getCurrentVersion());
+        assertTrue(cache.isApplied(2));
+        assertFalse(cache.isApplied(3));
+        assertEquals(3, cache.getAppliedCount());
+        assertArrayEquals(new int[]{1, 2, 5}, cache.getAppliedVersions());
+
+        verify(versionsStatement, times(1)).executeQuery();
+    }
+
+    @Test
+    void testExpiredStateIsReloaded() throws SQLException {
+        SchemaStateCache cache = new SchemaStateCache(() -> connection, 0);
+        assertEquals(5, cache.getCurrentVersion());
+
+        // Другой процесс откатил миграцию 5 (UPDATE статуса, новых строк в истории нет)
+        when(versionsResult.next()).thenReturn(true, true, false);
+        when(versionsResult.getInt(1)).thenReturn(1, 2);
+        assertEquals(2, cache.getCurrentVersion());
+        assertFalse(cache.isApplied(5));
+        verify(versionsStatement, atLeast(2)).executeQuery();
+    }
+
+    @Test
+    void testInvalidatedStateIsReloaded() throws SQLException {
+        SchemaStateCache cache = new SchemaStateCache(() -> connection, 60_000);
+        assertEquals(5, cache.getCurrentVersion());
+
+        when(versionsResult.next()).thenReturn(true, true, false);
+        when(versionsResult.getInt(1)).thenReturn(1, 2);
+        cache.invalidate();
+
+        assertEquals(2, cache.getCurrentVersion());
+        verify(versionsStatement, times(2)).executeQuery();
+    }
+}
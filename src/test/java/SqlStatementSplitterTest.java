@@ -0,0 +1,60 @@
+import executor.SqlBatchExecutor;
+import org.junit.jupiter.api.Test;
+import parser.SqlStatementSplitter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqlStatementSplitterTest {
+
+    @Test
+    void testSplitSimpleStatements() {
+        List<String> statements = SqlStatementSplitter.split("""
+                -- user -- create tables
+                CREATE TABLE a (id INT);
+                CREATE TABLE b (id INT);
+                INSERT INTO a VALUES (1)
+                """);
+
+        assertEquals(List.of("CREATE TABLE a (id INT)", "CREATE TABLE b (id INT)", "INSERT INTO a VALUES (1)"),
+                statements);
+    }
+
+    @Test
+    void testSplitIgnoresSemicolonsInLiteralsAndComments() {
+        List<String> statements = SqlStatementSplitter.split("""
+                INSERT INTO a VALUES ('x;y', 'it''s; fine', E'\\'; still');
+                /* block; /* nested; */ comment; */
+                SELECT "odd;name" FROM a; -- trailing; comment
+                """);
+
+        assertEquals(2, statements.size());
+        assertEquals("INSERT INTO a VALUES ('x;y', 'it''s; fine', E'\\'; still')", statements.get(0));
+        assertEquals("SELECT \"odd;name\" FROM a", statements.get(1));
+    }
+
+    @Test
+    void testSplitDollarQuotedBodies() {
+        List<String> statements = SqlStatementSplitter.split("""
+                CREATE FUNCTION f() RETURNS INT AS $$ BEGIN RETURN 1; END; $$ LANGUAGE plpgsql;
+                DO $body$ BEGIN PERFORM 1; $$ not a delimiter; $$ END $body$;
+                PREPARE p AS SELECT $1;
+                """);
+
+        assertEquals(3, statements.size());
+        assertTrue(statements.get(0).endsWith("LANGUAGE plpgsql"));
+        assertTrue(statements.get(1).endsWith("END $body$"));
+        assertEquals("PREPARE p AS SELECT $1", statements.get(2));
+    }
+
+    @Test
+    void testIsBatchable() {
+        assertTrue(SqlBatchExecutor.isBatchable("CREATE INDEX idx ON a (id)"));
+        assertTrue(SqlBatchExecutor.isBatchable("UPDATE a SET id = 2"));
+        assertFalse(SqlBatchExecutor.isBatchable("SELECT setval('a_id_seq', 10)"));
+        assertFalse(SqlBatchExecutor.isBatchable("INSERT INTO a VALUES (1) RETURNING id"));
+    }
+}